@@ -0,0 +1,307 @@
+package com.example.webrtc_p2p;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+// 分级、延迟格式化的日志管道
+// 日志以模板 + 参数的形式存入固定容量的环形缓冲区，只有需要输出（logcat 或界面）时才格式化；
+// 模板中的 {} 依次替换为参数。参数在写入时截断（SDP、Candidate、原始 JSON 只保留前 maxArgChars 个字符），
+// 缓冲区不持有调用方的大字符串或对象；格式化都在锁外进行。
+// logcat 默认只输出 WARN 及以上：INFO 级别的 SDP 日志输出到 logcat 时每条都要立即格式化，调试时再用 setLogcatLevel 放开；
+// 界面按批次接收：同一个刷新间隔内产生的日志合并为一次主线程回调，在主线程上格式化
+public final class AppLog {
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+
+    public static final int DEFAULT_CAPACITY = 500;
+    public static final int DEFAULT_MAX_ARG_CHARS = 200;
+    private static final long UI_FLUSH_INTERVAL_MS = 100;
+
+    public interface LogListener {
+        // 主线程回调；lines 会被复用，只在回调期间有效
+        void onLogBatch(List<String> lines);
+    }
+
+    // 写入后不再修改；参数已截断为字符串（数字、布尔值和枚举保持原样）
+    private static final class Entry {
+        final int level;
+        final String tag;
+        final String template;
+        final Object arg0;
+        final Object arg1;
+        final Object[] args;
+        final int argCount;
+        // 输出到 logcat 时在写入前生成，否则在界面取用时生成；String 不可变，并发生成两次也无妨
+        String formatted;
+
+        Entry(int level, String tag, String template, int argCount, Object arg0, Object arg1, Object[] args) {
+            this.level = level;
+            this.tag = tag;
+            this.template = template;
+            this.argCount = argCount;
+            this.arg0 = arg0;
+            this.arg1 = arg1;
+            this.args = args;
+        }
+
+        String format() {
+            String result = formatted;
+            if (result == null) {
+                result = AppLog.format(template, argCount, arg0, arg1, args);
+                formatted = result;
+            }
+            return result;
+        }
+    }
+
+    // 异常堆栈在写入时转为字符串，不受 maxArgChars 截断，缓冲区中不持有异常对象
+    private static final class StackTrace {
+        final String text;
+
+        StackTrace(Throwable error) {
+            StringWriter writer = new StringWriter();
+            error.printStackTrace(new PrintWriter(writer));
+            text = writer.toString();
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private static final Object lock = new Object();
+    private static Entry[] entries = new Entry[DEFAULT_CAPACITY];
+    // 已写入的日志总数，entries[seq % capacity] 为对应条目
+    private static long nextSeq = 0;
+    private static long lastDeliveredSeq = 0;
+
+    private static volatile int logcatLevel = WARN;
+    private static volatile int uiLevel = INFO;
+    private static volatile int maxArgChars = DEFAULT_MAX_ARG_CHARS;
+    private static volatile LogListener listener;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 以下两个列表只在主线程上使用
+    private static final List<Entry> pending = new ArrayList<>();
+    private static final List<String> batch = new ArrayList<>();
+    private static boolean flushScheduled = false;
+    private static final Runnable flushTask = AppLog::deliverBatch;
+
+    private AppLog() {
+    }
+
+    // 调整环形缓冲区容量，已有日志会被清空
+    public static void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("日志容量必须大于 0");
+        }
+        synchronized (lock) {
+            entries = new Entry[capacity];
+            lastDeliveredSeq = nextSeq;
+        }
+    }
+
+    public static void setLogcatLevel(int level) {
+        logcatLevel = level;
+    }
+
+    public static void setUiLevel(int level) {
+        uiLevel = level;
+    }
+
+    public static void setMaxArgChars(int chars) {
+        maxArgChars = chars;
+    }
+
+    // 设置界面监听；新监听只会收到之后产生的日志
+    public static void setLogListener(LogListener logListener) {
+        synchronized (lock) {
+            listener = logListener;
+            lastDeliveredSeq = nextSeq;
+        }
+    }
+
+    public static void v(String tag, String template, Object arg0) {
+        log(VERBOSE, tag, template, 1, arg0, null, null);
+    }
+
+    public static void v(String tag, String template, Object arg0, Object arg1) {
+        log(VERBOSE, tag, template, 2, arg0, arg1, null);
+    }
+
+    public static void v(String tag, String template, Object... args) {
+        log(VERBOSE, tag, template, args.length, null, null, args);
+    }
+
+    public static void d(String tag, String message) {
+        log(DEBUG, tag, message, 0, null, null, null);
+    }
+
+    public static void d(String tag, String template, Object arg0) {
+        log(DEBUG, tag, template, 1, arg0, null, null);
+    }
+
+    public static void d(String tag, String template, Object arg0, Object arg1) {
+        log(DEBUG, tag, template, 2, arg0, arg1, null);
+    }
+
+    public static void d(String tag, String template, Object... args) {
+        log(DEBUG, tag, template, args.length, null, null, args);
+    }
+
+    public static void i(String tag, String message) {
+        log(INFO, tag, message, 0, null, null, null);
+    }
+
+    public static void i(String tag, String template, Object arg0) {
+        log(INFO, tag, template, 1, arg0, null, null);
+    }
+
+    public static void i(String tag, String template, Object arg0, Object arg1) {
+        log(INFO, tag, template, 2, arg0, arg1, null);
+    }
+
+    public static void i(String tag, String template, Object... args) {
+        log(INFO, tag, template, args.length, null, null, args);
+    }
+
+    public static void w(String tag, String message) {
+        log(WARN, tag, message, 0, null, null, null);
+    }
+
+    public static void w(String tag, String template, Object... args) {
+        log(WARN, tag, template, args.length, null, null, args);
+    }
+
+    // 在 message 后附带完整的异常堆栈
+    public static void w(String tag, String message, Throwable error) {
+        logThrowable(WARN, tag, message, error);
+    }
+
+    public static void e(String tag, String message) {
+        log(ERROR, tag, message, 0, null, null, null);
+    }
+
+    public static void e(String tag, String template, Object... args) {
+        log(ERROR, tag, template, args.length, null, null, args);
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        logThrowable(ERROR, tag, message, error);
+    }
+
+    private static void logThrowable(int level, String tag, String message, Throwable error) {
+        if (level < logcatLevel && (level < uiLevel || listener == null)) {
+            // 不输出时不生成堆栈
+            return;
+        }
+        log(level, tag, message + "\n{}", 1, new StackTrace(error), null, null);
+    }
+
+    private static void log(int level, String tag, String template, int argCount,
+                            Object arg0, Object arg1, Object[] args) {
+        boolean toLogcat = level >= logcatLevel;
+        boolean toUi = level >= uiLevel && listener != null;
+        if (!toLogcat && !toUi) {
+            // 两处都不输出时不格式化也不入缓冲区
+            return;
+        }
+        int limit = maxArgChars;
+        Object[] retainedArgs = null;
+        if (args != null) {
+            retainedArgs = new Object[argCount];
+            for (int i = 0; i < argCount; i++) {
+                retainedArgs[i] = retain(args[i], limit);
+            }
+        }
+        Entry entry = new Entry(level, tag, template, argCount,
+                retain(arg0, limit), retain(arg1, limit), retainedArgs);
+        if (toLogcat) {
+            Log.println(level, tag, entry.format());
+        }
+        synchronized (lock) {
+            entries[(int) (nextSeq % entries.length)] = entry;
+            nextSeq++;
+            if (toUi && !flushScheduled) {
+                flushScheduled = true;
+                mainHandler.postDelayed(flushTask, UI_FLUSH_INTERVAL_MS);
+            }
+        }
+    }
+
+    // 不可变的小值原样保留，其余转为字符串并截断，缓冲区中不留对调用方对象的引用
+    private static Object retain(Object arg, int limit) {
+        if (arg == null || arg instanceof Number || arg instanceof Boolean || arg instanceof Character
+                || arg instanceof Enum || arg instanceof StackTrace) {
+            return arg;
+        }
+        String value = String.valueOf(arg);
+        if (limit <= 0 || value.length() <= limit) {
+            return value;
+        }
+        return value.substring(0, limit) + "…（共 " + value.length() + " 字符）";
+    }
+
+    // 主线程：把上次投递之后的日志合并成一批回调给界面；锁内只取条目引用，格式化在锁外进行
+    private static void deliverBatch() {
+        LogListener l;
+        long skipped;
+        synchronized (lock) {
+            flushScheduled = false;
+            l = listener;
+            long oldest = Math.max(lastDeliveredSeq, nextSeq - entries.length);
+            skipped = oldest - lastDeliveredSeq;
+            int level = uiLevel;
+            for (long seq = oldest; seq < nextSeq; seq++) {
+                Entry entry = entries[(int) (seq % entries.length)];
+                if (entry.level >= level) {
+                    pending.add(entry);
+                }
+            }
+            lastDeliveredSeq = nextSeq;
+        }
+        batch.clear();
+        if (skipped > 0) {
+            batch.add("…（省略 " + skipped + " 条日志）");
+        }
+        for (Entry entry : pending) {
+            batch.add(entry.format());
+        }
+        pending.clear();
+        if (l != null && !batch.isEmpty()) {
+            l.onLogBatch(batch);
+        }
+    }
+
+    static String format(String template, int argCount, Object arg0, Object arg1, Object[] args) {
+        if (argCount == 0) {
+            return template;
+        }
+        StringBuilder sb = new StringBuilder(template.length() + 64);
+        int argIndex = 0;
+        int start = 0;
+        while (true) {
+            int pos = template.indexOf("{}", start);
+            if (pos < 0 || argIndex >= argCount) {
+                break;
+            }
+            sb.append(template, start, pos);
+            Object arg = args != null ? args[argIndex] : (argIndex == 0 ? arg0 : arg1);
+            sb.append(arg);
+            argIndex++;
+            start = pos + 2;
+        }
+        sb.append(template, start, template.length());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.webrtc_p2p;
+
+import org.webrtc.RtpParameters;
+import org.webrtc.RtpSender;
+
+// 音频发送码率自适应：根据 CallStatsSampler 的汇总统计（远端报告的丢包比例和 RTT）
+// 在固定的码率档位之间升降，并写入音频 RtpSender 的 Encoding.maxBitrateBps
+// 降档和升档使用不同的阈值，升档还需要连续多个窗口都良好，避免在临界状态来回切换
+public class AudioBitrateController {
+    private static final String TAG = "AudioBitrateController";
+
+    // 档位从高到低；高于初始上限的档位会被去掉
+    private static final int[] BITRATE_LADDER_BPS = {64000, 48000, 32000, 24000, 16000, 12000, 8000};
+    public static final int DEFAULT_MAX_BITRATE_BPS = 64000;
+
+    // 丢包或 RTT 达到降档阈值时立即降一档，丢包严重时降两档
+    static final double DOWN_LOSS = 0.08;
+    static final double SEVERE_LOSS = 0.20;
+    static final double DOWN_RTT_MS = 350;
+    // 丢包和 RTT 都低于升档阈值，且连续 UP_STABLE_SNAPSHOTS 个窗口，才升一档
+    static final double UP_LOSS = 0.02;
+    static final double UP_RTT_MS = 200;
+    static final int UP_STABLE_SNAPSHOTS = 3;
+    // 降档后至少等待的窗口数，期间不升档
+    static final int HOLD_AFTER_DOWN_SNAPSHOTS = 2;
+
+    public enum Reason {
+        LOSS,
+        RTT,
+        RECOVERED
+    }
+
+    public interface DecisionListener {
+        // 在 WebRTC 统计回调线程调用；decision 对象会被复用，只在回调期间有效
+        void onBitrateDecision(String peerId, Decision decision);
+    }
+
+    public static final class Decision {
+        public int previousBitrateBps;
+        public int bitrateBps;
+        public Reason reason;
+        // 触发决策的窗口统计值，无数据时为 -1
+        public double fractionLost;
+        public double rttMs;
+    }
+
+    private final String peerId;
+    private final RtpSender sender;
+    private final int[] ladder;
+    private volatile DecisionListener listener;
+    private final Decision decision = new Decision();
+
+    // 以下状态只在统计回调线程访问
+    private int level = 0;
+    private int goodSnapshots = 0;
+    private int holdSnapshots = 0;
+
+    public AudioBitrateController(String peerId, RtpSender sender, int maxBitrateBps) {
+        if (sender == null) {
+            throw new IllegalArgumentException("sender 不能为空");
+        }
+        this.peerId = peerId;
+        this.sender = sender;
+        this.ladder = buildLadder(maxBitrateBps > 0 ? maxBitrateBps : DEFAULT_MAX_BITRATE_BPS);
+    }
+
+    public void setDecisionListener(DecisionListener listener) {
+        this.listener = listener;
+    }
+
+    public int getCurrentBitrateBps() {
+        return ladder[level];
+    }
+
+    // 写入初始上限；连接建立时调用一次
+    public void start() {
+        applyBitrate(ladder[level]);
+    }
+
+    // 由 CallStatsSampler 的 StatsListener 调用
+    public void onStatsSnapshot(CallStatsSampler.StatsSnapshot snapshot) {
+        double loss = snapshot.remoteFractionLost;
+        double rtt = snapshot.avgRttMs;
+        if (loss < 0 && rtt < 0) {
+            return;
+        }
+
+        if (loss >= DOWN_LOSS || rtt >= DOWN_RTT_MS) {
+            goodSnapshots = 0;
+            holdSnapshots = HOLD_AFTER_DOWN_SNAPSHOTS;
+            int steps = loss >= SEVERE_LOSS ? 2 : 1;
+            int target = Math.min(level + steps, ladder.length - 1);
+            if (target != level) {
+                changeLevel(target, loss >= DOWN_LOSS ? Reason.LOSS : Reason.RTT, loss, rtt);
+            }
+            return;
+        }
+
+        if (holdSnapshots > 0) {
+            holdSnapshots--;
+            return;
+        }
+        boolean good = (loss < 0 || loss <= UP_LOSS) && (rtt < 0 || rtt <= UP_RTT_MS);
+        if (!good) {
+            // 介于升降阈值之间：保持当前档位
+            goodSnapshots = 0;
+            return;
+        }
+        if (++goodSnapshots >= UP_STABLE_SNAPSHOTS && level > 0) {
+            goodSnapshots = 0;
+            changeLevel(level - 1, Reason.RECOVERED, loss, rtt);
+        }
+    }
+
+    private void changeLevel(int target, Reason reason, double loss, double rtt) {
+        int previous = ladder[level];
+        if (!applyBitrate(ladder[target])) {
+            return;
+        }
+        level = target;
+        AppLog.i(TAG, "{} 音频码率 {} → {} bps（{}）", peerId, previous, ladder[target], reason);
+
+        DecisionListener l = listener;
+        if (l != null) {
+            decision.previousBitrateBps = previous;
+            decision.bitrateBps = ladder[target];
+            decision.reason = reason;
+            decision.fractionLost = loss;
+            decision.rttMs = rtt;
+            l.onBitrateDecision(peerId, decision);
+        }
+    }
+
+    private boolean applyBitrate(int bitrateBps) {
+        try {
+            RtpParameters parameters = sender.getParameters();
+            if (parameters == null || parameters.encodings.isEmpty()) {
+                return false;
+            }
+            for (RtpParameters.Encoding encoding : parameters.encodings) {
+                encoding.maxBitrateBps = bitrateBps;
+                // 低于最高档时允许 WebRTC 按码率加大打包时长，减少包头开销
+                encoding.adaptiveAudioPacketTime = bitrateBps < ladder[0];
+            }
+            if (!sender.setParameters(parameters)) {
+                AppLog.w(TAG, "{} 设置音频码率 {} bps 失败", peerId, bitrateBps);
+                return false;
+            }
+            return true;
+        } catch (IllegalStateException e) {
+            // 会话关闭后 sender 已释放，统计回调可能晚到一次
+            return false;
+        }
+    }
+
+    private static int[] buildLadder(int maxBitrateBps) {
+        int count = 0;
+        for (int bps : BITRATE_LADDER_BPS) {
+            if (bps < maxBitrateBps) {
+                count++;
+            }
+        }
+        int[] ladder = new int[count + 1];
+        ladder[0] = maxBitrateBps;
+        int i = 1;
+        for (int bps : BITRATE_LADDER_BPS) {
+            if (bps < maxBitrateBps) {
+                ladder[i++] = bps;
+            }
+        }
+        return ladder;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.webrtc_p2p;
+
+import android.content.Context;
+
+import org.webrtc.audio.JavaAudioDeviceModule;
+
+// JavaAudioDeviceModule 的配置：采集/播放采样率、硬件回声消除和降噪、低延迟播放、立体声，以及错误和状态回调
+// 采集数据始终转发给 CallRecorder，开始/停止录音不需要重建工厂
+// 音频设备模块属于 PeerConnectionFactory，配置变化时由 PeerConnectionFactoryHolder 重建工厂
+// 配置按引用比较，请复用同一个实例（例如 DEFAULT / LOW_LATENCY）
+public final class AudioDeviceConfig {
+    // WebRTC 默认行为：系统选择采样率，启用硬件 AEC/NS
+    public static final AudioDeviceConfig DEFAULT = builder().build();
+
+    // 低延迟：使用设备原生 48 kHz 避免重采样，播放端使用低延迟模式
+    public static final AudioDeviceConfig LOW_LATENCY = builder()
+            .setInputSampleRate(48000)
+            .setOutputSampleRate(48000)
+            .setUseLowLatency(true)
+            .build();
+
+    private static final String TAG = "AudioDeviceConfig";
+
+    // 采样率为 0 时使用系统默认
+    public final int inputSampleRate;
+    public final int outputSampleRate;
+    public final boolean useHardwareAcousticEchoCanceler;
+    public final boolean useHardwareNoiseSuppressor;
+    public final boolean useLowLatency;
+    public final boolean useStereoInput;
+    public final boolean useStereoOutput;
+    public final JavaAudioDeviceModule.AudioRecordErrorCallback audioRecordErrorCallback;
+    public final JavaAudioDeviceModule.AudioTrackErrorCallback audioTrackErrorCallback;
+    public final JavaAudioDeviceModule.AudioTrackStateCallback audioTrackStateCallback;
+
+    private AudioDeviceConfig(Builder builder) {
+        this.inputSampleRate = builder.inputSampleRate;
+        this.outputSampleRate = builder.outputSampleRate;
+        this.useHardwareAcousticEchoCanceler = builder.useHardwareAcousticEchoCanceler;
+        this.useHardwareNoiseSuppressor = builder.useHardwareNoiseSuppressor;
+        this.useLowLatency = builder.useLowLatency;
+        this.useStereoInput = builder.useStereoInput;
+        this.useStereoOutput = builder.useStereoOutput;
+        this.audioRecordErrorCallback = builder.audioRecordErrorCallback;
+        this.audioTrackErrorCallback = builder.audioTrackErrorCallback;
+        this.audioTrackStateCallback = builder.audioTrackStateCallback;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // 创建音频设备模块；错误和状态先写日志，再转给调用方设置的回调
+    JavaAudioDeviceModule createAudioDeviceModule(Context appContext) {
+        JavaAudioDeviceModule.Builder builder = JavaAudioDeviceModule.builder(appContext)
+                .setUseHardwareAcousticEchoCanceler(useHardwareAcousticEchoCanceler
+                        && JavaAudioDeviceModule.isBuiltInAcousticEchoCancelerSupported())
+                .setUseHardwareNoiseSuppressor(useHardwareNoiseSuppressor
+                        && JavaAudioDeviceModule.isBuiltInNoiseSuppressorSupported())
+                .setUseLowLatency(useLowLatency)
+                .setUseStereoInput(useStereoInput)
+                .setUseStereoOutput(useStereoOutput)
+                .setSamplesReadyCallback(CallRecorder::dispatchSamples)
+                .setAudioRecordErrorCallback(new JavaAudioDeviceModule.AudioRecordErrorCallback() {
+                    @Override
+                    public void onWebRtcAudioRecordInitError(String message) {
+                        AppLog.e(TAG, "音频采集初始化失败: {}", message);
+                        if (audioRecordErrorCallback != null) {
+                            audioRecordErrorCallback.onWebRtcAudioRecordInitError(message);
+                        }
+                    }
+
+                    @Override
+                    public void onWebRtcAudioRecordStartError(
+                            JavaAudioDeviceModule.AudioRecordStartErrorCode code, String message) {
+                        AppLog.e(TAG, "音频采集启动失败（{}）: {}", code, message);
+                        if (audioRecordErrorCallback != null) {
+                            audioRecordErrorCallback.onWebRtcAudioRecordStartError(code, message);
+                        }
+                    }
+
+                    @Override
+                    public void onWebRtcAudioRecordError(String message) {
+                        AppLog.e(TAG, "音频采集错误: {}", message);
+                        if (audioRecordErrorCallback != null) {
+                            audioRecordErrorCallback.onWebRtcAudioRecordError(message);
+                        }
+                    }
+                })
+                .setAudioTrackErrorCallback(new JavaAudioDeviceModule.AudioTrackErrorCallback() {
+                    @Override
+                    public void onWebRtcAudioTrackInitError(String message) {
+                        AppLog.e(TAG, "音频播放初始化失败: {}", message);
+                        if (audioTrackErrorCallback != null) {
+                            audioTrackErrorCallback.onWebRtcAudioTrackInitError(message);
+                        }
+                    }
+
+                    @Override
+                    public void onWebRtcAudioTrackStartError(
+                            JavaAudioDeviceModule.AudioTrackStartErrorCode code, String message) {
+                        AppLog.e(TAG, "音频播放启动失败（{}）: {}", code, message);
+                        if (audioTrackErrorCallback != null) {
+                            audioTrackErrorCallback.onWebRtcAudioTrackStartError(code, message);
+                        }
+                    }
+
+                    @Override
+                    public void onWebRtcAudioTrackError(String message) {
+                        AppLog.e(TAG, "音频播放错误: {}", message);
+                        if (audioTrackErrorCallback != null) {
+                            audioTrackErrorCallback.onWebRtcAudioTrackError(message);
+                        }
+                    }
+                })
+                .setAudioTrackStateCallback(new JavaAudioDeviceModule.AudioTrackStateCallback() {
+                    @Override
+                    public void onWebRtcAudioTrackStart() {
+                        AppLog.d(TAG, "音频播放已开始");
+                        if (audioTrackStateCallback != null) {
+                            audioTrackStateCallback.onWebRtcAudioTrackStart();
+                        }
+                    }
+
+                    @Override
+                    public void onWebRtcAudioTrackStop() {
+                        AppLog.d(TAG, "音频播放已停止");
+                        if (audioTrackStateCallback != null) {
+                            audioTrackStateCallback.onWebRtcAudioTrackStop();
+                        }
+                    }
+                });
+        if (inputSampleRate > 0) {
+            builder.setInputSampleRate(inputSampleRate);
+        }
+        if (outputSampleRate > 0) {
+            builder.setOutputSampleRate(outputSampleRate);
+        }
+        return builder.createAudioDeviceModule();
+    }
+
+    public static final class Builder {
+        private int inputSampleRate;
+        private int outputSampleRate;
+        private boolean useHardwareAcousticEchoCanceler = true;
+        private boolean useHardwareNoiseSuppressor = true;
+        private boolean useLowLatency;
+        private boolean useStereoInput;
+        private boolean useStereoOutput;
+        private JavaAudioDeviceModule.AudioRecordErrorCallback audioRecordErrorCallback;
+        private JavaAudioDeviceModule.AudioTrackErrorCallback audioTrackErrorCallback;
+        private JavaAudioDeviceModule.AudioTrackStateCallback audioTrackStateCallback;
+
+        private Builder() {
+        }
+
+        public Builder setInputSampleRate(int sampleRate) {
+            this.inputSampleRate = sampleRate;
+            return this;
+        }
+
+        public Builder setOutputSampleRate(int sampleRate) {
+            this.outputSampleRate = sampleRate;
+            return this;
+        }
+
+        // 设备不支持时自动回退到 WebRTC 软件实现
+        public Builder setUseHardwareAcousticEchoCanceler(boolean enabled) {
+            this.useHardwareAcousticEchoCanceler = enabled;
+            return this;
+        }
+
+        public Builder setUseHardwareNoiseSuppressor(boolean enabled) {
+            this.useHardwareNoiseSuppressor = enabled;
+            return this;
+        }
+
+        public Builder setUseLowLatency(boolean enabled) {
+            this.useLowLatency = enabled;
+            return this;
+        }
+
+        public Builder setUseStereoInput(boolean enabled) {
+            this.useStereoInput = enabled;
+            return this;
+        }
+
+        public Builder setUseStereoOutput(boolean enabled) {
+            this.useStereoOutput = enabled;
+            return this;
+        }
+
+        public Builder setAudioRecordErrorCallback(JavaAudioDeviceModule.AudioRecordErrorCallback callback) {
+            this.audioRecordErrorCallback = callback;
+            return this;
+        }
+
+        public Builder setAudioTrackErrorCallback(JavaAudioDeviceModule.AudioTrackErrorCallback callback) {
+            this.audioTrackErrorCallback = callback;
+            return this;
+        }
+
+        public Builder setAudioTrackStateCallback(JavaAudioDeviceModule.AudioTrackStateCallback callback) {
+            this.audioTrackStateCallback = callback;
+            return this;
+        }
+
+        public AudioDeviceConfig build() {
+            return new AudioDeviceConfig(this);
+        }
+    }
+}
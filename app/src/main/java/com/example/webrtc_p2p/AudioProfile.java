@@ -0,0 +1,133 @@
+package com.example.webrtc_p2p;
+
+// 通话音频配置：Opus 编码参数，以及是否精简 SDP 中用不到的编解码器和 RTP 头扩展
+// 在 createOffer / createAnswer 成功后、setLocalDescription 之前由 SdpMunger 写入本地 SDP；
+// 可同时指定采集/播放链路的 AudioDeviceConfig，在没有通话进行时生效
+public final class AudioProfile {
+    // 移动网络弱网：60 ms 打包、16 kbps、开启 FEC 和 DTX，只保留 Opus
+    public static final AudioProfile LOW_BANDWIDTH_CELLULAR = builder("low-bandwidth-cellular")
+            .setPtimeMs(60)
+            .setMaxAverageBitrate(16000)
+            .setUseInbandFec(true)
+            .setUseDtx(true)
+            .setStereo(false)
+            .setMaxPlaybackRate(16000)
+            .setStripUnusedCodecs(true)
+            .setStripHeaderExtensions(true)
+            .setAudioDeviceConfig(AudioDeviceConfig.DEFAULT)
+            .build();
+
+    // 局域网低延迟：10 ms 打包、全带宽，局域网丢包少，关闭 FEC 和 DTX 以减少额外延迟
+    public static final AudioProfile LOW_LATENCY_LAN = builder("low-latency-lan")
+            .setPtimeMs(10)
+            .setMaxAverageBitrate(64000)
+            .setUseInbandFec(false)
+            .setUseDtx(false)
+            .setStereo(false)
+            .setMaxPlaybackRate(48000)
+            .setAudioDeviceConfig(AudioDeviceConfig.LOW_LATENCY)
+            .build();
+
+    // 未设置的数值参数为 0，对应的 SDP 参数保持 WebRTC 默认值
+    public final String name;
+    public final int ptimeMs;
+    public final int maxAverageBitrate;
+    public final Boolean useInbandFec;
+    public final Boolean useDtx;
+    public final Boolean stereo;
+    public final int maxPlaybackRate;
+    public final boolean stripUnusedCodecs;
+    public final boolean stripHeaderExtensions;
+    // 为 null 时沿用当前的音频设备配置
+    public final AudioDeviceConfig audioDeviceConfig;
+
+    private AudioProfile(Builder builder) {
+        this.name = builder.name;
+        this.ptimeMs = builder.ptimeMs;
+        this.maxAverageBitrate = builder.maxAverageBitrate;
+        this.useInbandFec = builder.useInbandFec;
+        this.useDtx = builder.useDtx;
+        this.stereo = builder.stereo;
+        this.maxPlaybackRate = builder.maxPlaybackRate;
+        this.stripUnusedCodecs = builder.stripUnusedCodecs;
+        this.stripHeaderExtensions = builder.stripHeaderExtensions;
+        this.audioDeviceConfig = builder.audioDeviceConfig;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    public static final class Builder {
+        private final String name;
+        private int ptimeMs;
+        private int maxAverageBitrate;
+        private Boolean useInbandFec;
+        private Boolean useDtx;
+        private Boolean stereo;
+        private int maxPlaybackRate;
+        private boolean stripUnusedCodecs;
+        private boolean stripHeaderExtensions;
+        private AudioDeviceConfig audioDeviceConfig;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder setPtimeMs(int ptimeMs) {
+            this.ptimeMs = ptimeMs;
+            return this;
+        }
+
+        public Builder setMaxAverageBitrate(int maxAverageBitrate) {
+            this.maxAverageBitrate = maxAverageBitrate;
+            return this;
+        }
+
+        public Builder setUseInbandFec(boolean useInbandFec) {
+            this.useInbandFec = useInbandFec;
+            return this;
+        }
+
+        public Builder setUseDtx(boolean useDtx) {
+            this.useDtx = useDtx;
+            return this;
+        }
+
+        public Builder setStereo(boolean stereo) {
+            this.stereo = stereo;
+            return this;
+        }
+
+        public Builder setMaxPlaybackRate(int maxPlaybackRate) {
+            this.maxPlaybackRate = maxPlaybackRate;
+            return this;
+        }
+
+        // 音频 m 行只保留 Opus 和 telephone-event
+        public Builder setStripUnusedCodecs(boolean stripUnusedCodecs) {
+            this.stripUnusedCodecs = stripUnusedCodecs;
+            return this;
+        }
+
+        // 只保留音量电平和 transport-cc 两个 RTP 头扩展
+        public Builder setStripHeaderExtensions(boolean stripHeaderExtensions) {
+            this.stripHeaderExtensions = stripHeaderExtensions;
+            return this;
+        }
+
+        public Builder setAudioDeviceConfig(AudioDeviceConfig audioDeviceConfig) {
+            this.audioDeviceConfig = audioDeviceConfig;
+            return this;
+        }
+
+        public AudioProfile build() {
+            return new AudioProfile(this);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.webrtc_p2p;
+
+import android.media.AudioFormat;
+
+import org.webrtc.audio.JavaAudioDeviceModule;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// 通话录音：把 JavaAudioDeviceModule 采集回调中的 16 位 PCM 写入 WAV 文件
+// - 音频线程只把一帧数据拷贝进预分配的堆外环形缓冲区（单生产者/单消费者），不加锁、不分配对象、不做磁盘 I/O
+// - 写入线程定期把缓冲区中的数据通过 FileChannel 写入文件，停止时回填 WAV 头中的长度；
+//   stop 只发出信号不等待，写入线程收尾后通过 StopListener 通知调用方
+// - 缓冲区放不下一帧时整帧丢弃并计入溢出，写入线程发现新的溢出时输出警告，停止时汇总
+// SamplesReadyCallback 只提供本端麦克风采集的音频，远端播放的音频不在录音中
+public class CallRecorder {
+    private static final String TAG = "CallRecorder";
+
+    // 48 kHz 立体声 16 位约 2 秒
+    public static final int DEFAULT_BUFFER_BYTES = 384 * 1024;
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int WAV_HEADER_SIZE = 44;
+    // WAV 的长度字段为 32 位
+    private static final long MAX_DATA_BYTES = 0xFFFFFFFFL - (WAV_HEADER_SIZE - 8);
+
+    // AudioDeviceConfig 创建的音频设备模块始终把采集数据转发到这里，没有录音时只读取这一个 volatile 字段
+    private static volatile CallRecorder active;
+
+    private final File file;
+    private final int capacity;
+    private final ByteBuffer ring;
+    // 生产者和消费者各自使用一个视图，互不修改对方的 position/limit
+    private final ByteBuffer producerView;
+    private final ByteBuffer consumerView;
+    // 累计写入/读出的字节数，分别只由音频线程/写入线程修改
+    private volatile long writePosition = 0;
+    private volatile long readPosition = 0;
+
+    // 以第一帧的格式为准；由音频线程写入，写入线程读取
+    private volatile int sampleRate = 0;
+    private volatile int channelCount = 0;
+    // 以下计数只由音频线程修改
+    private volatile long overrunFrames = 0;
+    private volatile long overrunBytes = 0;
+    private volatile long rejectedFrames = 0;
+
+    public interface StopListener {
+        // 在写入线程上回调，此时文件已保存（或写入失败已关闭），溢出计数不再变化
+        void onStopped(CallRecorder recorder);
+    }
+
+    private volatile boolean running = false;
+    // 在 running 置为 false 之前写入，写入线程退出循环后读取
+    private volatile StopListener stopListener;
+    private FileChannel channel;
+    private Thread writerThread;
+    // 只在写入线程上访问
+    private long dataBytes = 0;
+    private long startedAtNanos;
+
+    public CallRecorder(File file) {
+        this(file, DEFAULT_BUFFER_BYTES);
+    }
+
+    public CallRecorder(File file, int bufferBytes) {
+        if (bufferBytes <= 0) {
+            throw new IllegalArgumentException("录音缓冲区大小无效");
+        }
+        this.file = file;
+        this.capacity = bufferBytes;
+        this.ring = ByteBuffer.allocateDirect(bufferBytes);
+        this.producerView = ring.duplicate();
+        this.consumerView = ring.duplicate();
+    }
+
+    // 由音频设备模块在音频采集线程回调
+    static void dispatchSamples(JavaAudioDeviceModule.AudioSamples samples) {
+        CallRecorder recorder = active;
+        if (recorder != null) {
+            recorder.onSamples(samples);
+        }
+    }
+
+    // 每个实例只能录一次；同一时间只能有一个录音
+    public synchronized void start() throws IOException {
+        if (running || channel != null) {
+            throw new IllegalStateException("录音已开始");
+        }
+        synchronized (CallRecorder.class) {
+            if (active != null) {
+                throw new IllegalStateException("已有其他录音在进行");
+            }
+            File parent = file.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("无法创建目录: " + parent);
+            }
+            FileChannel opened = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            try {
+                // 先占位，停止时回填长度
+                opened.write(ByteBuffer.allocate(WAV_HEADER_SIZE));
+            } catch (IOException e) {
+                closeQuietly(opened);
+                throw e;
+            }
+            channel = opened;
+            startedAtNanos = System.nanoTime();
+            running = true;
+            writerThread = new Thread(this::writeLoop, "call-recorder");
+            writerThread.setDaemon(true);
+            writerThread.start();
+            active = this;
+        }
+        AppLog.i(TAG, "开始录音: {}", file);
+    }
+
+    // 停止录音，不等待写入线程：写入线程写完剩余数据、回填 WAV 头后回调 listener（可为 null）。
+    // 未开始或写入已失败时不回调；不要在音频线程上调用
+    public synchronized void stop(StopListener listener) {
+        synchronized (CallRecorder.class) {
+            if (active == this) {
+                active = null;
+            }
+        }
+        Thread thread = writerThread;
+        if (!running || thread == null) {
+            return;
+        }
+        stopListener = listener;
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    public boolean isRecording() {
+        return running;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // 缓冲区已满而丢弃的帧数
+    public long getOverrunCount() {
+        return overrunFrames;
+    }
+
+    public long getDroppedBytes() {
+        return overrunBytes;
+    }
+
+    private void onSamples(JavaAudioDeviceModule.AudioSamples samples) {
+        if (!running) {
+            return;
+        }
+        int rate = samples.getSampleRate();
+        int channels = samples.getChannelCount();
+        if (samples.getAudioFormat() != AudioFormat.ENCODING_PCM_16BIT) {
+            rejectedFrames++;
+            return;
+        }
+        if (sampleRate == 0) {
+            channelCount = channels;
+            sampleRate = rate;
+        } else if (rate != sampleRate || channels != channelCount) {
+            // 录音中途采集格式变化（重启采集），WAV 只能有一种格式
+            rejectedFrames++;
+            return;
+        }
+        byte[] data = samples.getData();
+        long write = writePosition;
+        if (data.length > capacity - (write - readPosition)) {
+            overrunFrames++;
+            overrunBytes += data.length;
+            return;
+        }
+        int offset = (int) (write % capacity);
+        int first = Math.min(data.length, capacity - offset);
+        producerView.limit(capacity);
+        producerView.position(offset);
+        producerView.put(data, 0, first);
+        if (first < data.length) {
+            producerView.position(0);
+            producerView.put(data, first, data.length - first);
+        }
+        writePosition = write + data.length;
+    }
+
+    private void writeLoop() {
+        long reportedOverruns = 0;
+        try {
+            while (running) {
+                LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+                drain();
+                long overruns = overrunFrames;
+                if (overruns != reportedOverruns) {
+                    AppLog.w(TAG, "录音缓冲区溢出，累计丢弃 {} 帧（{} 字节）", overruns, overrunBytes);
+                    reportedOverruns = overruns;
+                }
+            }
+            drain();
+            finish();
+        } catch (IOException e) {
+            AppLog.e(TAG, "写入录音失败: {}", e.getMessage());
+            running = false;
+            synchronized (CallRecorder.class) {
+                if (active == this) {
+                    active = null;
+                }
+            }
+            closeQuietly(channel);
+        }
+        StopListener listener = stopListener;
+        if (listener != null) {
+            listener.onStopped(this);
+        }
+    }
+
+    private void drain() throws IOException {
+        long read = readPosition;
+        long available = writePosition - read;
+        while (available > 0) {
+            int offset = (int) (read % capacity);
+            int chunk = (int) Math.min(available, capacity - offset);
+            consumerView.limit(offset + chunk);
+            consumerView.position(offset);
+            if (dataBytes + chunk > MAX_DATA_BYTES) {
+                throw new IOException("录音超过 WAV 文件大小上限");
+            }
+            while (consumerView.hasRemaining()) {
+                channel.write(consumerView);
+            }
+            dataBytes += chunk;
+            read += chunk;
+            available -= chunk;
+            readPosition = read;
+        }
+    }
+
+    private void finish() throws IOException {
+        // 一帧都没有收到时按 48 kHz 单声道写出空文件
+        int rate = sampleRate > 0 ? sampleRate : 48000;
+        int channels = channelCount > 0 ? channelCount : 1;
+        channel.write(wavHeader(rate, channels, dataBytes), 0);
+        channel.force(false);
+        channel.close();
+        long bytesPerSecond = (long) rate * channels * 2;
+        AppLog.i(TAG, "录音已保存: {}，{} Hz {} 声道，音频 {} ms，录制 {} ms，溢出丢弃 {} 帧（{} 字节），格式不符丢弃 {} 帧",
+                file, rate, channels, dataBytes * 1000 / bytesPerSecond,
+                (System.nanoTime() - startedAtNanos) / 1_000_000, overrunFrames, overrunBytes, rejectedFrames);
+    }
+
+    private static ByteBuffer wavHeader(int sampleRate, int channels, long dataBytes) {
+        int blockAlign = channels * 2;
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'R', 'I', 'F', 'F'});
+        header.putInt((int) (dataBytes + WAV_HEADER_SIZE - 8));
+        header.put(new byte[]{'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+        header.putInt(16);
+        // PCM
+        header.putShort((short) 1);
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign);
+        header.putShort((short) blockAlign);
+        header.putShort((short) 16);
+        header.put(new byte[]{'d', 'a', 't', 'a'});
+        header.putInt((int) dataBytes);
+        header.flip();
+        return header;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // 已经在报告写入失败
+        }
+    }
+}
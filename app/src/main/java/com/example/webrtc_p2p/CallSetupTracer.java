@@ -0,0 +1,352 @@
+package com.example.webrtc_p2p;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 通话建立过程的阶段追踪：各阶段用 System.nanoTime 打点，相对通话开始（点击通话或收到对方的首个 Offer）计时
+// - 每次通话生成一条时间线，收到对方的首个音频后（或通话结束时）归档，保留最近 MAX_TIMELINES 条
+// - 归档时把各阶段耗时计入对应的固定桶直方图，跨通话汇总
+// - 同一次通话中每个阶段只记录第一次（多人通话时为最先到达的会话）
+// - ICE 收集耗时按 IceConfig 分别汇总，导出时给出各模式相对 default 节省的时间
+// 关闭时 mark 只读取一个 volatile 标志，不加锁也不分配对象
+public class CallSetupTracer {
+    private static final String TAG = "CallSetupTracer";
+
+    static final int MAX_TIMELINES = 16;
+    // 直方图桶上界（毫秒），最后一个桶收集所有更大的值
+    private static final long[] BUCKET_BOUNDS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    // 比较 ICE 收集耗时的基准，即 IceConfig.DEFAULT 的名称
+    static final String BASELINE_ICE_CONFIG = "default";
+
+    public enum Phase {
+        // 工厂初始化和信令连接可能早于通话开始，此时时间线中的值为负
+        FACTORY_INIT("factoryInit"),
+        SIGNALING_OPEN("signalingOpen"),
+        OFFER_CREATED("offerCreated"),
+        // 应答方收到 Offer
+        OFFER_RECEIVED("offerReceived"),
+        LOCAL_DESCRIPTION_SET("localDescriptionSet"),
+        // 实际写入 WebSocket 的时间，包含信令未连接时的排队等待
+        OFFER_SENT("offerSent"),
+        ANSWER_SENT("answerSent"),
+        ANSWER_RECEIVED("answerReceived"),
+        FIRST_LOCAL_CANDIDATE("firstLocalCandidate"),
+        FIRST_REMOTE_CANDIDATE("firstRemoteCandidate"),
+        ICE_CONNECTED("iceConnected"),
+        FIRST_REMOTE_TRACK("firstRemoteTrack"),
+        // 统计中出现对方的音频样本，即可以听到对方
+        FIRST_AUDIO("firstAudio");
+
+        public final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    // 一次通话的时间线；offsetNanos 中 Long.MIN_VALUE 表示该阶段未到达
+    private static final class Timeline {
+        final long startedAtMs;
+        final boolean initiator;
+        final long[] offsetNanos = new long[PHASES.length];
+        boolean complete;
+
+        Timeline(long startedAtMs, boolean initiator) {
+            this.startedAtMs = startedAtMs;
+            this.initiator = initiator;
+        }
+    }
+
+    private static final class Histogram {
+        final long[] counts = new long[BUCKET_BOUNDS_MS.length + 1];
+        long count;
+        long sumNanos;
+        long maxNanos;
+
+        void record(long nanos) {
+            long ms = nanos / 1_000_000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && ms > BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+            count++;
+            sumNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        // 取第 ceil(p * count) 个样本所在桶的上界；落在最后一个桶时用最大值
+        double percentileMs(double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS_MS[i], maxNanos / 1e6);
+                }
+            }
+            return maxNanos / 1e6;
+        }
+    }
+
+    private volatile boolean enabled = false;
+
+    // 以下状态由 this 保护
+    private long callStartNanos;
+    private Timeline current;
+    // 通话开始前就已完成的阶段（工厂初始化、信令连接），通话开始时带入时间线
+    private final long[] preCallNanos = new long[PHASES.length];
+    private final ArrayDeque<Timeline> timelines = new ArrayDeque<>();
+    private final Histogram[] histograms = new Histogram[PHASES.length];
+    // key 为 IceConfig 名称，按首次出现的顺序导出
+    private final Map<String, Histogram> iceGathering = new LinkedHashMap<>();
+
+    public CallSetupTracer() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            synchronized (this) {
+                current = null;
+                Arrays.fill(preCallNanos, 0);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 通话开始：发起方点击通话，或应答方收到新通话的 Offer；已有进行中的时间线时忽略
+    public void beginCall(boolean initiator) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (current != null) {
+                return;
+            }
+            callStartNanos = System.nanoTime();
+            current = new Timeline(System.currentTimeMillis(), initiator);
+            for (int i = 0; i < PHASES.length; i++) {
+                current.offsetNanos[i] = preCallNanos[i] != 0 ? preCallNanos[i] - callStartNanos : Long.MIN_VALUE;
+            }
+        }
+    }
+
+    public void mark(Phase phase) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            int i = phase.ordinal();
+            if (current == null) {
+                if (phase == Phase.FACTORY_INIT || phase == Phase.SIGNALING_OPEN) {
+                    preCallNanos[i] = now;
+                }
+                return;
+            }
+            if (current.offsetNanos[i] != Long.MIN_VALUE) {
+                return;
+            }
+            current.offsetNanos[i] = now - callStartNanos;
+            if (phase == Phase.FIRST_AUDIO) {
+                finish(true);
+            }
+        }
+    }
+
+    // 信令断开后之前的连接时间不再有效
+    public void clear(Phase phase) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            preCallNanos[phase.ordinal()] = 0;
+        }
+    }
+
+    // 记录一次 ICE 收集耗时；持续收集模式下为连接建立时最后一个 Candidate 的时间
+    public void recordIceGathering(String iceConfigName, long elapsedMs) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            Histogram histogram = iceGathering.get(iceConfigName);
+            if (histogram == null) {
+                histogram = new Histogram();
+                iceGathering.put(iceConfigName, histogram);
+            }
+            histogram.record(elapsedMs * 1_000_000);
+        }
+    }
+
+    // 该模式的平均 ICE 收集耗时（毫秒），没有记录时为 -1
+    public synchronized double meanIceGatheringMs(String iceConfigName) {
+        Histogram histogram = iceGathering.get(iceConfigName);
+        return histogram == null || histogram.count == 0 ? -1 : histogram.sumNanos / 1e6 / histogram.count;
+    }
+
+    // 通话结束：未完成的时间线也归档，未到达的阶段不计入直方图
+    public void endCall() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (current != null) {
+                finish(false);
+            }
+        }
+    }
+
+    // 调用方需持有 this 锁
+    private void finish(boolean complete) {
+        Timeline timeline = current;
+        current = null;
+        timeline.complete = complete;
+        for (int i = 0; i < PHASES.length; i++) {
+            long offset = timeline.offsetNanos[i];
+            if (offset != Long.MIN_VALUE) {
+                // 通话开始前就已完成的阶段不占用建立时间，按 0 计
+                histograms[i].record(Math.max(0, offset));
+            }
+        }
+        if (timelines.size() >= MAX_TIMELINES) {
+            timelines.pollFirst();
+        }
+        timelines.addLast(timeline);
+        AppLog.i(TAG, "通话建立时间线（{}{}）: {}", timeline.initiator ? "发起方" : "应答方",
+                complete ? "" : "，未完成", summary(timeline));
+    }
+
+    private static String summary(Timeline timeline) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < PHASES.length; i++) {
+            long offset = timeline.offsetNanos[i];
+            if (offset == Long.MIN_VALUE) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(PHASES[i].key).append('=').append(offset / 1_000_000).append("ms");
+        }
+        return builder.toString();
+    }
+
+    public String toJson() {
+        StringWriter out = new StringWriter();
+        try {
+            writeJson(out);
+        } catch (IOException e) {
+            // StringWriter 不会抛出 IOException
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    // 最近的时间线（各阶段相对通话开始的毫秒数）、每个阶段的直方图，
+    // 以及按 IceConfig 分别统计的 ICE 收集耗时和相对 default 节省的毫秒数（平均值和 p50，负数表示更慢）
+    public void writeJson(Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        synchronized (this) {
+            writer.beginObject();
+            writer.name("enabled").value(enabled);
+
+            writer.name("timelines").beginArray();
+            for (Timeline timeline : timelines) {
+                writer.beginObject();
+                writer.name("startedAt").value(timeline.startedAtMs);
+                writer.name("initiator").value(timeline.initiator);
+                writer.name("complete").value(timeline.complete);
+                writer.name("phasesMs").beginObject();
+                for (int i = 0; i < PHASES.length; i++) {
+                    long offset = timeline.offsetNanos[i];
+                    if (offset != Long.MIN_VALUE) {
+                        writer.name(PHASES[i].key).value(offset / 1e6);
+                    }
+                }
+                writer.endObject();
+                writer.endObject();
+            }
+            writer.endArray();
+
+            writer.name("bucketBoundsMs").beginArray();
+            for (long bound : BUCKET_BOUNDS_MS) {
+                writer.value(bound);
+            }
+            writer.endArray();
+
+            writer.name("histograms").beginObject();
+            for (int i = 0; i < PHASES.length; i++) {
+                Histogram histogram = histograms[i];
+                if (histogram.count == 0) {
+                    continue;
+                }
+                writer.name(PHASES[i].key);
+                writeHistogram(writer, histogram);
+            }
+            writer.endObject();
+
+            writer.name("iceGathering").beginObject();
+            for (Map.Entry<String, Histogram> entry : iceGathering.entrySet()) {
+                writer.name(entry.getKey());
+                writeHistogram(writer, entry.getValue());
+            }
+            writer.endObject();
+
+            writer.name("iceGatheringSavingsMs").beginObject();
+            Histogram baseline = iceGathering.get(BASELINE_ICE_CONFIG);
+            if (baseline != null) {
+                for (Map.Entry<String, Histogram> entry : iceGathering.entrySet()) {
+                    if (entry.getKey().equals(BASELINE_ICE_CONFIG)) {
+                        continue;
+                    }
+                    Histogram histogram = entry.getValue();
+                    writer.name(entry.getKey()).beginObject();
+                    writer.name("mean").value(baseline.sumNanos / 1e6 / baseline.count
+                            - histogram.sumNanos / 1e6 / histogram.count);
+                    writer.name("p50").value(baseline.percentileMs(0.50) - histogram.percentileMs(0.50));
+                    writer.endObject();
+                }
+            }
+            writer.endObject();
+
+            writer.endObject();
+        }
+        writer.flush();
+    }
+
+    private static void writeHistogram(JsonWriter writer, Histogram histogram) throws IOException {
+        writer.beginObject();
+        writer.name("count").value(histogram.count);
+        writer.name("meanMs").value(histogram.sumNanos / 1e6 / histogram.count);
+        writer.name("p50").value(histogram.percentileMs(0.50));
+        writer.name("p95").value(histogram.percentileMs(0.95));
+        writer.name("p99").value(histogram.percentileMs(0.99));
+        writer.name("maxMs").value(histogram.maxNanos / 1e6);
+        writer.name("counts").beginArray();
+        for (long count : histogram.counts) {
+            writer.value(count);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.webrtc_p2p;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsCollectorCallback;
+import org.webrtc.RTCStatsReport;
+
+import java.util.Map;
+
+// 定期调用 PeerConnection.getStats，提取音频 RTT、抖动、丢包、码率和丢包隐藏计数，
+// 有视频轨道时还提取编码/解码帧数和耗时、发送分辨率及受限原因，并记录进程 CPU 时间
+// 样本存放在固定大小的基本类型环形缓冲区中，每 snapshotEvery 个样本汇总一次并回调
+// 稳定运行时每次采样不分配对象（RTCStatsReport 本身由 WebRTC 分配，不计在内）
+public class CallStatsSampler {
+    public static final long DEFAULT_INTERVAL_MS = 1000;
+    public static final int DEFAULT_CAPACITY = 60;
+    public static final int DEFAULT_SNAPSHOT_EVERY = 5;
+
+    public interface StatsListener {
+        // snapshot 对象会被复用，只在回调期间有效，需要保留时请拷贝字段
+        void onStatsSnapshot(String peerId, StatsSnapshot snapshot);
+    }
+
+    // 最近一个汇总窗口的统计值；无数据的字段为 -1
+    public static final class StatsSnapshot {
+        public int sampleCount;
+        public long windowMs;
+        public double avgRttMs;
+        public double maxRttMs;
+        public double avgJitterMs;
+        public double maxJitterMs;
+        // 窗口内丢包率（0~1），由收包和丢包计数的增量计算
+        public double packetLossRate;
+        public double sendBitrateKbps;
+        public double receiveBitrateKbps;
+        public long concealedSamples;
+        public long concealmentEvents;
+        // 远端报告的发送丢包比例（0~1），供码率自适应使用
+        public double remoteFractionLost;
+        // 视频：窗口内的编码/解码帧率和平均每帧耗时，没有视频时为 -1
+        public double encodeFps;
+        public double decodeFps;
+        public double avgEncodeMs;
+        public double avgDecodeMs;
+        // 当前发送分辨率和 WebRTC 下调分辨率/帧率的原因（none、cpu、bandwidth），没有视频时为 -1 / null
+        public int sendFrameWidth;
+        public int sendFrameHeight;
+        public String qualityLimitationReason;
+        // 窗口内整个进程的 CPU 时间占比（%，多核时可超过 100）
+        public double processCpuPercent;
+    }
+
+    private final String peerId;
+    private final PeerConnection peerConnection;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final long intervalMs;
+    private final int snapshotEvery;
+    private volatile StatsListener listener;
+
+    // 环形缓冲区：每个指标一个基本类型数组，下标相同的元素属于同一个样本
+    private final int capacity;
+    private final long[] timestampMs;
+    private final double[] rttMs;
+    private final double[] jitterMs;
+    private final long[] packetsReceived;
+    private final long[] packetsLost;
+    private final long[] bytesSent;
+    private final long[] bytesReceived;
+    private final long[] concealedSamples;
+    private final long[] concealmentEvents;
+    private final double[] remoteFractionLost;
+    private final long[] framesEncoded;
+    private final long[] framesDecoded;
+    private final double[] encodeTimeMs;
+    private final double[] decodeTimeMs;
+    private final long[] processCpuMs;
+    // 只取最新样本的值，不需要按下标保存
+    private int lastFrameWidth = -1;
+    private int lastFrameHeight = -1;
+    private String lastQualityLimitationReason;
+    private int head = 0;
+    private int size = 0;
+    private int samplesSinceSnapshot = 0;
+
+    private final StatsSnapshot snapshot = new StatsSnapshot();
+    private final RTCStatsCollectorCallback statsCallback = this::onStatsDelivered;
+    private final Runnable sampleTask = this::sample;
+    private volatile boolean running = false;
+
+    public CallStatsSampler(String peerId, PeerConnection peerConnection) {
+        this(peerId, peerConnection, DEFAULT_INTERVAL_MS, DEFAULT_CAPACITY, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    public CallStatsSampler(String peerId, PeerConnection peerConnection,
+                            long intervalMs, int capacity, int snapshotEvery) {
+        if (intervalMs <= 0 || capacity <= 0 || snapshotEvery <= 0 || snapshotEvery > capacity) {
+            throw new IllegalArgumentException("采样参数无效");
+        }
+        this.peerId = peerId;
+        this.peerConnection = peerConnection;
+        this.intervalMs = intervalMs;
+        this.capacity = capacity;
+        this.snapshotEvery = snapshotEvery;
+        timestampMs = new long[capacity];
+        rttMs = new double[capacity];
+        jitterMs = new double[capacity];
+        packetsReceived = new long[capacity];
+        packetsLost = new long[capacity];
+        bytesSent = new long[capacity];
+        bytesReceived = new long[capacity];
+        concealedSamples = new long[capacity];
+        concealmentEvents = new long[capacity];
+        remoteFractionLost = new double[capacity];
+        framesEncoded = new long[capacity];
+        framesDecoded = new long[capacity];
+        encodeTimeMs = new double[capacity];
+        decodeTimeMs = new double[capacity];
+        processCpuMs = new long[capacity];
+    }
+
+    public void setStatsListener(StatsListener listener) {
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        handler.post(sampleTask);
+    }
+
+    public void stop() {
+        running = false;
+        handler.removeCallbacks(sampleTask);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void sample() {
+        if (!running) {
+            return;
+        }
+        peerConnection.getStats(statsCallback);
+        handler.postDelayed(sampleTask, intervalMs);
+    }
+
+    // 在 WebRTC 信令线程回调
+    private void onStatsDelivered(RTCStatsReport report) {
+        if (!running) {
+            return;
+        }
+        double rtt = -1;
+        double candidatePairRtt = -1;
+        double jitter = -1;
+        long received = -1;
+        long lost = -1;
+        long sent = -1;
+        long receivedBytes = -1;
+        long concealed = -1;
+        long concealEvents = -1;
+        double fractionLost = -1;
+        long encoded = -1;
+        long decoded = -1;
+        double encodeMs = -1;
+        double decodeMs = -1;
+        int frameWidth = -1;
+        int frameHeight = -1;
+        String limitationReason = null;
+
+        for (RTCStats stats : report.getStatsMap().values()) {
+            Map<String, Object> members = stats.getMembers();
+            switch (stats.getType()) {
+                case "inbound-rtp":
+                    if ("video".equals(members.get("kind"))) {
+                        decoded = longValue(members.get("framesDecoded"), decoded);
+                        decodeMs = secondsToMs(members.get("totalDecodeTime"), decodeMs);
+                        break;
+                    }
+                    if (!"audio".equals(members.get("kind"))) {
+                        break;
+                    }
+                    jitter = secondsToMs(members.get("jitter"), jitter);
+                    received = longValue(members.get("packetsReceived"), received);
+                    lost = longValue(members.get("packetsLost"), lost);
+                    receivedBytes = longValue(members.get("bytesReceived"), receivedBytes);
+                    concealed = longValue(members.get("concealedSamples"), concealed);
+                    concealEvents = longValue(members.get("concealmentEvents"), concealEvents);
+                    break;
+                case "outbound-rtp":
+                    if ("audio".equals(members.get("kind"))) {
+                        sent = longValue(members.get("bytesSent"), sent);
+                    } else if ("video".equals(members.get("kind"))) {
+                        encoded = longValue(members.get("framesEncoded"), encoded);
+                        encodeMs = secondsToMs(members.get("totalEncodeTime"), encodeMs);
+                        frameWidth = (int) longValue(members.get("frameWidth"), frameWidth);
+                        frameHeight = (int) longValue(members.get("frameHeight"), frameHeight);
+                        Object reason = members.get("qualityLimitationReason");
+                        limitationReason = reason instanceof String ? (String) reason : limitationReason;
+                    }
+                    break;
+                case "remote-inbound-rtp":
+                    if ("audio".equals(members.get("kind"))) {
+                        rtt = secondsToMs(members.get("roundTripTime"), rtt);
+                        fractionLost = doubleValue(members.get("fractionLost"), fractionLost);
+                    }
+                    break;
+                case "candidate-pair":
+                    if (Boolean.TRUE.equals(members.get("nominated"))) {
+                        candidatePairRtt = secondsToMs(members.get("currentRoundTripTime"), candidatePairRtt);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        synchronized (this) {
+            int i = head;
+            timestampMs[i] = SystemClock.elapsedRealtime();
+            // 远端还没有 RTCP 报告时用候选对的 STUN RTT 代替
+            rttMs[i] = rtt >= 0 ? rtt : candidatePairRtt;
+            jitterMs[i] = jitter;
+            packetsReceived[i] = received;
+            packetsLost[i] = lost;
+            bytesSent[i] = sent;
+            bytesReceived[i] = receivedBytes;
+            concealedSamples[i] = concealed;
+            concealmentEvents[i] = concealEvents;
+            remoteFractionLost[i] = fractionLost;
+            framesEncoded[i] = encoded;
+            framesDecoded[i] = decoded;
+            encodeTimeMs[i] = encodeMs;
+            decodeTimeMs[i] = decodeMs;
+            processCpuMs[i] = Process.getElapsedCpuTime();
+            lastFrameWidth = frameWidth;
+            lastFrameHeight = frameHeight;
+            lastQualityLimitationReason = limitationReason;
+            head = (head + 1) % capacity;
+            if (size < capacity) {
+                size++;
+            }
+            if (++samplesSinceSnapshot < snapshotEvery) {
+                return;
+            }
+            samplesSinceSnapshot = 0;
+            aggregate(snapshotEvery);
+        }
+        StatsListener l = listener;
+        if (l != null) {
+            l.onStatsSnapshot(peerId, snapshot);
+        }
+    }
+
+    // 汇总最近 count 个样本到 snapshot；调用方持有锁
+    private void aggregate(int count) {
+        int n = Math.min(count, size);
+        int newest = index(0);
+        // 增量类指标需要窗口之前的一个样本作为基准，没有时用窗口内最早的样本
+        int base = index(Math.min(n, size - 1));
+
+        double rttSum = 0;
+        double rttMax = -1;
+        int rttCount = 0;
+        double jitterSum = 0;
+        double jitterMax = -1;
+        int jitterCount = 0;
+        double fractionLostMax = -1;
+        for (int k = 0; k < n; k++) {
+            int i = index(k);
+            if (rttMs[i] >= 0) {
+                rttSum += rttMs[i];
+                rttMax = Math.max(rttMax, rttMs[i]);
+                rttCount++;
+            }
+            if (jitterMs[i] >= 0) {
+                jitterSum += jitterMs[i];
+                jitterMax = Math.max(jitterMax, jitterMs[i]);
+                jitterCount++;
+            }
+            fractionLostMax = Math.max(fractionLostMax, remoteFractionLost[i]);
+        }
+
+        long windowMs = timestampMs[newest] - timestampMs[base];
+        snapshot.sampleCount = n;
+        snapshot.windowMs = windowMs;
+        snapshot.avgRttMs = rttCount > 0 ? rttSum / rttCount : -1;
+        snapshot.maxRttMs = rttMax;
+        snapshot.avgJitterMs = jitterCount > 0 ? jitterSum / jitterCount : -1;
+        snapshot.maxJitterMs = jitterMax;
+        snapshot.remoteFractionLost = fractionLostMax;
+
+        long receivedDelta = delta(packetsReceived, newest, base);
+        long lostDelta = delta(packetsLost, newest, base);
+        if (receivedDelta >= 0 && lostDelta >= 0 && receivedDelta + lostDelta > 0) {
+            snapshot.packetLossRate = (double) lostDelta / (receivedDelta + lostDelta);
+        } else {
+            snapshot.packetLossRate = -1;
+        }
+        snapshot.sendBitrateKbps = bitrateKbps(delta(bytesSent, newest, base), windowMs);
+        snapshot.receiveBitrateKbps = bitrateKbps(delta(bytesReceived, newest, base), windowMs);
+        snapshot.concealedSamples = concealedSamples[newest];
+        snapshot.concealmentEvents = concealmentEvents[newest];
+
+        long encodedDelta = delta(framesEncoded, newest, base);
+        long decodedDelta = delta(framesDecoded, newest, base);
+        snapshot.encodeFps = rate(encodedDelta, windowMs);
+        snapshot.decodeFps = rate(decodedDelta, windowMs);
+        snapshot.avgEncodeMs = perFrameMs(encodeTimeMs, newest, base, encodedDelta);
+        snapshot.avgDecodeMs = perFrameMs(decodeTimeMs, newest, base, decodedDelta);
+        snapshot.sendFrameWidth = lastFrameWidth;
+        snapshot.sendFrameHeight = lastFrameHeight;
+        snapshot.qualityLimitationReason = lastQualityLimitationReason;
+        long cpuDelta = delta(processCpuMs, newest, base);
+        snapshot.processCpuPercent = cpuDelta >= 0 && windowMs > 0 ? cpuDelta * 100.0 / windowMs : -1;
+    }
+
+    // 第 k 新的样本下标（k = 0 为最新）
+    private int index(int k) {
+        return (head - 1 - k + capacity) % capacity;
+    }
+
+    private static long delta(long[] values, int newest, int base) {
+        if (values[newest] < 0 || values[base] < 0) {
+            return -1;
+        }
+        return values[newest] - values[base];
+    }
+
+    private static double rate(long count, long windowMs) {
+        if (count < 0 || windowMs <= 0) {
+            return -1;
+        }
+        return count * 1000.0 / windowMs;
+    }
+
+    private static double perFrameMs(double[] totalMs, int newest, int base, long frames) {
+        if (frames <= 0 || totalMs[newest] < 0 || totalMs[base] < 0) {
+            return -1;
+        }
+        return (totalMs[newest] - totalMs[base]) / frames;
+    }
+
+    private static double bitrateKbps(long bytes, long windowMs) {
+        if (bytes < 0 || windowMs <= 0) {
+            return -1;
+        }
+        return bytes * 8.0 / windowMs;
+    }
+
+    private static double secondsToMs(Object value, double fallback) {
+        return value instanceof Number ? ((Number) value).doubleValue() * 1000 : fallback;
+    }
+
+    private static double doubleValue(Object value, double fallback) {
+        return value instanceof Number ? ((Number) value).doubleValue() : fallback;
+    }
+
+    // 音频 inbound-rtp 已解码出样本（旧版本没有 totalSamplesReceived 时看 packetsReceived），即对方的声音已到达
+    static boolean hasReceivedAudio(RTCStatsReport report) {
+        for (RTCStats stats : report.getStatsMap().values()) {
+            Map<String, Object> members = stats.getMembers();
+            if (!"inbound-rtp".equals(stats.getType()) || !"audio".equals(members.get("kind"))) {
+                continue;
+            }
+            if (longValue(members.get("totalSamplesReceived"), longValue(members.get("packetsReceived"), 0)) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // getStats 中计数类字段可能是 Integer、Long 或 BigInteger
+    private static long longValue(Object value, long fallback) {
+        return value instanceof Number ? ((Number) value).longValue() : fallback;
+    }
+}
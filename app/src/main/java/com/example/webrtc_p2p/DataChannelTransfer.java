@@ -0,0 +1,518 @@
+package com.example.webrtc_p2p;
+
+import org.webrtc.DataChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 基于 DataChannel 的批量数据传输，支持多个传输并发、进度回调和流量控制
+// 帧格式: [帧类型 1B][传输 ID 4B][内容]
+//   START:  内容为 [总长度 8B（未知时为 -1）][名称（UTF-8）]
+//   DATA:   内容为数据块
+//   END / CANCEL / REJECT: 无内容
+// 双方的传输 ID 各自从 1 编号，同一个 ID 可能同时指两个方向的传输：START / DATA / END / CANCEL 由发送方发出，
+// 指发送方的传输；REJECT 由接收方发出（拒收或写入失败），指对方发给本端的传输
+// 发送端根据 bufferedAmount 控制发送：超过高水位暂停，onBufferedAmountChange 降到低水位后继续
+// 接收端在网络线程上只把帧拷贝进缓冲区排队，写入目标（磁盘 I/O）和回调都在 pumpExecutor 上按到达顺序进行
+public class DataChannelTransfer {
+    private static final String TAG = "DataChannelTransfer";
+
+    public static final String CHANNEL_LABEL = "transfer";
+    // 双方各自创建 negotiated 通道，不依赖 onDataChannel 和重新协商
+    public static final int CHANNEL_ID = 0;
+
+    static final byte FRAME_START = 1;
+    static final byte FRAME_DATA = 2;
+    static final byte FRAME_END = 3;
+    static final byte FRAME_CANCEL = 4;
+    static final byte FRAME_REJECT = 5;
+
+    private static final int HEADER_SIZE = 5;
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final long HIGH_WATERMARK = 1024 * 1024;
+    static final long LOW_WATERMARK = 256 * 1024;
+    // 复用的接收缓冲区个数，超出时按需分配
+    private static final int MAX_FREE_RECEIVE_BUFFERS = 8;
+
+    public interface TransferListener {
+        // 对方发起传输，返回写入目标；返回 null 表示拒绝
+        WritableByteChannel onIncomingTransfer(String peerId, int transferId, String name, long size);
+        void onProgress(String peerId, int transferId, boolean outgoing, long transferred, long total);
+        void onCompleted(String peerId, int transferId, boolean outgoing);
+        void onFailed(String peerId, int transferId, boolean outgoing, String reason);
+    }
+
+    private static final class OutgoingTransfer {
+        final int id;
+        final String name;
+        final ReadableByteChannel source;
+        final long size;
+        boolean started = false;
+        long sent = 0;
+        // 由 outgoing 锁保护：正在发送时被取消，由 pump 发完当前帧后收尾
+        String cancelReason;
+        boolean notifyPeer;
+
+        OutgoingTransfer(int id, String name, ReadableByteChannel source, long size) {
+            this.id = id;
+            this.name = name;
+            this.source = source;
+            this.size = size;
+        }
+    }
+
+    private static final class IncomingTransfer {
+        final WritableByteChannel target;
+        final long size;
+        long received = 0;
+
+        IncomingTransfer(WritableByteChannel target, long size) {
+            this.target = target;
+            this.size = size;
+        }
+    }
+
+    private volatile String peerId;
+    private final DataChannel channel;
+    private final Executor pumpExecutor;
+    private volatile TransferListener listener;
+
+    private final AtomicInteger nextTransferId = new AtomicInteger(1);
+    // 发送队列，每轮每个传输发送一个数据块，多个传输轮流发送
+    private final ArrayDeque<OutgoingTransfer> outgoing = new ArrayDeque<>();
+    // pump 已从队列取出、正在发送的传输，由 outgoing 锁保护
+    private OutgoingTransfer sending;
+    private final Map<Integer, IncomingTransfer> incoming = new HashMap<>();
+    // DataChannel.send 会同步把数据拷贝到 native 层，因此一个 direct 缓冲区可以在所有数据块间复用
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(HEADER_SIZE + CHUNK_SIZE);
+    private final Runnable pumpTask = this::pump;
+    private boolean pumpScheduled = false;
+    // 收到的帧（拷贝），由 received 锁保护
+    private final ArrayDeque<ByteBuffer> received = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> freeReceiveBuffers = new ArrayDeque<>();
+    private final Runnable drainTask = this::drainReceived;
+    private boolean drainScheduled = false;
+    private volatile boolean closed = false;
+
+    public DataChannelTransfer(String peerId, DataChannel channel, Executor pumpExecutor) {
+        this.peerId = peerId;
+        this.channel = channel;
+        this.pumpExecutor = pumpExecutor;
+        channel.registerObserver(new DataChannel.Observer() {
+            @Override
+            public void onBufferedAmountChange(long previousAmount) {
+                if (channel.bufferedAmount() <= LOW_WATERMARK) {
+                    schedulePump();
+                }
+            }
+
+            @Override
+            public void onStateChange() {
+                DataChannel.State state = channel.state();
+                AppLog.d(TAG, "数据通道状态变化（{}）: {}", DataChannelTransfer.this.peerId, state);
+                if (state == DataChannel.State.OPEN) {
+                    schedulePump();
+                } else if (state == DataChannel.State.CLOSED) {
+                    failAll("数据通道已关闭");
+                }
+            }
+
+            @Override
+            public void onMessage(DataChannel.Buffer buffer) {
+                enqueueReceived(buffer.data);
+            }
+        });
+    }
+
+    public void setTransferListener(TransferListener listener) {
+        this.listener = listener;
+    }
+
+    public String getPeerId() {
+        return peerId;
+    }
+
+    // 广播会话绑定到具体客户端时同步更新
+    void setPeerId(String peerId) {
+        this.peerId = peerId;
+    }
+
+    public int sendFile(File file) throws IOException {
+        FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        return sendStream(source, file.getName(), source.size());
+    }
+
+    // size 未知时传 -1，进度回调中的 total 同样为 -1
+    public int sendStream(ReadableByteChannel source, String name, long size) {
+        if (closed) {
+            throw new IllegalStateException("数据通道已关闭");
+        }
+        int id = nextTransferId.getAndIncrement();
+        synchronized (outgoing) {
+            outgoing.addLast(new OutgoingTransfer(id, name, source, size));
+        }
+        AppLog.d(TAG, "开始发送 {}（{} 字节）到 {}，传输 ID: {}", name, size, peerId, id);
+        schedulePump();
+        return id;
+    }
+
+    public void cancel(int transferId) {
+        cancelOutgoing(transferId, "已取消", true);
+    }
+
+    // notifyPeer 为 false 时对方已放弃接收（REJECT），不再发送 CANCEL
+    private void cancelOutgoing(int transferId, String reason, boolean notifyPeer) {
+        OutgoingTransfer cancelled = null;
+        synchronized (outgoing) {
+            for (OutgoingTransfer transfer : outgoing) {
+                if (transfer.id == transferId) {
+                    cancelled = transfer;
+                    break;
+                }
+            }
+            if (cancelled != null) {
+                outgoing.remove(cancelled);
+            } else if (sending != null && sending.id == transferId && sending.cancelReason == null) {
+                // pump 正在发送这个传输，发完当前帧后由 pump 收尾
+                sending.cancelReason = reason;
+                sending.notifyPeer = notifyPeer;
+                return;
+            }
+        }
+        if (cancelled != null) {
+            cancelled.cancelReason = reason;
+            cancelled.notifyPeer = notifyPeer;
+            finishCancelled(cancelled);
+        }
+    }
+
+    private void finishCancelled(OutgoingTransfer transfer) {
+        if (transfer.started && transfer.notifyPeer) {
+            sendControlFrame(FRAME_CANCEL, transfer.id);
+        }
+        closeQuietly(transfer.source);
+        notifyFailed(transfer.id, true, transfer.cancelReason);
+    }
+
+    private void schedulePump() {
+        synchronized (outgoing) {
+            if (pumpScheduled || outgoing.isEmpty() || closed) {
+                return;
+            }
+            pumpScheduled = true;
+        }
+        pumpExecutor.execute(pumpTask);
+    }
+
+    // 在发送线程上运行：轮流为每个传输发送一个数据块，直到缓冲达到高水位
+    private void pump() {
+        synchronized (outgoing) {
+            pumpScheduled = false;
+        }
+        while (!closed && channel.state() == DataChannel.State.OPEN) {
+            if (channel.bufferedAmount() > HIGH_WATERMARK) {
+                // 等待 onBufferedAmountChange 降到低水位后再继续
+                return;
+            }
+            OutgoingTransfer transfer;
+            synchronized (outgoing) {
+                transfer = outgoing.pollFirst();
+                sending = transfer;
+            }
+            if (transfer == null) {
+                return;
+            }
+            boolean more = false;
+            String error = null;
+            try {
+                synchronized (sendBuffer) {
+                    more = sendNextFrame(transfer);
+                }
+            } catch (IOException e) {
+                error = e.getMessage();
+            }
+            boolean cancelled;
+            synchronized (outgoing) {
+                sending = null;
+                cancelled = transfer.cancelReason != null;
+                if (more && !cancelled && error == null) {
+                    outgoing.addLast(transfer);
+                }
+            }
+            if (cancelled) {
+                finishCancelled(transfer);
+            } else if (error != null) {
+                closeQuietly(transfer.source);
+                notifyFailed(transfer.id, true, error);
+            } else if (!more) {
+                closeQuietly(transfer.source);
+                notifyCompleted(transfer.id, true);
+            }
+        }
+    }
+
+    // 发送下一帧，返回 false 表示传输已结束
+    private boolean sendNextFrame(OutgoingTransfer transfer) throws IOException {
+        sendBuffer.clear();
+        if (!transfer.started) {
+            transfer.started = true;
+            sendBuffer.put(FRAME_START).putInt(transfer.id).putLong(transfer.size);
+            sendBuffer.put(transfer.name.getBytes(StandardCharsets.UTF_8));
+            sendFrame();
+            return true;
+        }
+
+        sendBuffer.put(FRAME_DATA).putInt(transfer.id);
+        int read = 0;
+        while (sendBuffer.hasRemaining()) {
+            int n = transfer.source.read(sendBuffer);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        if (read == 0) {
+            sendControlFrame(FRAME_END, transfer.id);
+            return false;
+        }
+        sendFrame();
+        transfer.sent += read;
+        TransferListener l = listener;
+        if (l != null) {
+            l.onProgress(peerId, transfer.id, true, transfer.sent, transfer.size);
+        }
+        return true;
+    }
+
+    private void sendControlFrame(byte type, int transferId) {
+        synchronized (sendBuffer) {
+            sendBuffer.clear();
+            sendBuffer.put(type).putInt(transferId);
+            try {
+                sendFrame();
+            } catch (IOException e) {
+                AppLog.w(TAG, "发送控制帧失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void sendFrame() throws IOException {
+        sendBuffer.flip();
+        if (!channel.send(new DataChannel.Buffer(sendBuffer, true))) {
+            throw new IOException("DataChannel 发送失败，状态: " + channel.state());
+        }
+    }
+
+    // 在 WebRTC 网络线程上回调：数据只在回调期间有效，拷贝到 direct 缓冲区后交给 pumpExecutor，不在这里写磁盘
+    private void enqueueReceived(ByteBuffer data) {
+        synchronized (received) {
+            if (closed) {
+                return;
+            }
+            ByteBuffer copy = freeReceiveBuffers.pollFirst();
+            if (copy == null || copy.capacity() < data.remaining()) {
+                copy = ByteBuffer.allocateDirect(Math.max(data.remaining(), HEADER_SIZE + CHUNK_SIZE));
+            }
+            copy.clear();
+            copy.put(data).flip();
+            received.addLast(copy);
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+        }
+        try {
+            pumpExecutor.execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            // 会话正在关闭
+            synchronized (received) {
+                received.clear();
+                drainScheduled = false;
+            }
+        }
+    }
+
+    // 在 pumpExecutor 上运行：按到达顺序处理排队的帧，处理完的缓冲区放回复用
+    private void drainReceived() {
+        while (true) {
+            ByteBuffer frame;
+            synchronized (received) {
+                frame = closed ? null : received.pollFirst();
+                if (frame == null) {
+                    received.clear();
+                    drainScheduled = false;
+                    return;
+                }
+            }
+            handleFrame(frame);
+            synchronized (received) {
+                if (frame.capacity() == HEADER_SIZE + CHUNK_SIZE
+                        && freeReceiveBuffers.size() < MAX_FREE_RECEIVE_BUFFERS) {
+                    freeReceiveBuffers.addLast(frame);
+                }
+            }
+        }
+    }
+
+    private void handleFrame(ByteBuffer frame) {
+        if (frame.remaining() < HEADER_SIZE) {
+            AppLog.w(TAG, "收到无效数据帧: {} 字节", frame.remaining());
+            return;
+        }
+        byte type = frame.get();
+        int transferId = frame.getInt();
+        IncomingTransfer transfer;
+        synchronized (incoming) {
+            transfer = incoming.get(transferId);
+        }
+
+        switch (type) {
+            case FRAME_START:
+                startIncoming(transferId, frame);
+                break;
+            case FRAME_DATA:
+                if (transfer == null) {
+                    return;
+                }
+                try {
+                    while (frame.hasRemaining()) {
+                        transfer.received += transfer.target.write(frame);
+                    }
+                    TransferListener l = listener;
+                    if (l != null) {
+                        l.onProgress(peerId, transferId, false, transfer.received, transfer.size);
+                    }
+                } catch (IOException e) {
+                    if (closed) {
+                        // close() 已关闭目标并通知失败，通道也已释放
+                        return;
+                    }
+                    removeIncoming(transferId);
+                    sendControlFrame(FRAME_REJECT, transferId);
+                    notifyFailed(transferId, false, e.getMessage());
+                }
+                break;
+            case FRAME_END:
+                if (transfer != null) {
+                    removeIncoming(transferId);
+                    notifyCompleted(transferId, false);
+                }
+                break;
+            case FRAME_CANCEL:
+                if (transfer != null) {
+                    removeIncoming(transferId);
+                    notifyFailed(transferId, false, "对方已取消");
+                }
+                break;
+            case FRAME_REJECT:
+                // 对方拒收或写入失败，停止本端对应的发送
+                cancelOutgoing(transferId, "对方已拒收", false);
+                break;
+            default:
+                AppLog.w(TAG, "未知的数据帧类型: {}", type);
+                break;
+        }
+    }
+
+    private void startIncoming(int transferId, ByteBuffer frame) {
+        long size = frame.getLong();
+        byte[] nameBytes = new byte[frame.remaining()];
+        frame.get(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+        TransferListener l = listener;
+        WritableByteChannel target = l != null ? l.onIncomingTransfer(peerId, transferId, name, size) : null;
+        if (target == null) {
+            AppLog.d(TAG, "拒绝接收 {}（来自 {}）", name, peerId);
+            sendControlFrame(FRAME_REJECT, transferId);
+            return;
+        }
+        synchronized (incoming) {
+            incoming.put(transferId, new IncomingTransfer(target, size));
+        }
+        AppLog.d(TAG, "开始接收 {}（{} 字节，来自 {}）", name, size, peerId);
+    }
+
+    private void removeIncoming(int transferId) {
+        IncomingTransfer transfer;
+        synchronized (incoming) {
+            transfer = incoming.remove(transferId);
+        }
+        if (transfer != null) {
+            closeQuietly(transfer.target);
+        }
+    }
+
+    private void failAll(String reason) {
+        ArrayDeque<OutgoingTransfer> pendingOut;
+        synchronized (outgoing) {
+            pendingOut = new ArrayDeque<>(outgoing);
+            outgoing.clear();
+            if (sending != null && sending.cancelReason == null) {
+                // 正在发送的传输由 pump 发完当前帧后收尾
+                sending.cancelReason = reason;
+                sending.notifyPeer = false;
+            }
+        }
+        for (OutgoingTransfer transfer : pendingOut) {
+            closeQuietly(transfer.source);
+            notifyFailed(transfer.id, true, reason);
+        }
+        Map<Integer, IncomingTransfer> pendingIn;
+        synchronized (incoming) {
+            pendingIn = new HashMap<>(incoming);
+            incoming.clear();
+        }
+        for (Map.Entry<Integer, IncomingTransfer> entry : pendingIn.entrySet()) {
+            closeQuietly(entry.getValue().target);
+            notifyFailed(entry.getKey(), false, reason);
+        }
+    }
+
+    private void notifyCompleted(int transferId, boolean outgoing) {
+        AppLog.d(TAG, "{}完成，传输 ID: {}（{}）", outgoing ? "发送" : "接收", transferId, peerId);
+        TransferListener l = listener;
+        if (l != null) {
+            l.onCompleted(peerId, transferId, outgoing);
+        }
+    }
+
+    private void notifyFailed(int transferId, boolean outgoing, String reason) {
+        AppLog.w(TAG, "{}失败，传输 ID: {}（{}）: {}", outgoing ? "发送" : "接收", transferId, peerId, reason);
+        TransferListener l = listener;
+        if (l != null) {
+            l.onFailed(peerId, transferId, outgoing, reason);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public void close() {
+        closed = true;
+        synchronized (received) {
+            received.clear();
+            freeReceiveBuffers.clear();
+        }
+        failAll("会话已结束");
+        channel.unregisterObserver();
+        channel.close();
+        channel.dispose();
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.webrtc_p2p;
+
+import org.webrtc.PeerConnection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// PeerConnection 的 ICE 相关配置：ICE 服务器列表、是否只用 host Candidate，以及 bundle、rtcp-mux、TCP Candidate、
+// 候选池和持续收集策略；由 WebRTCManager.setIceConfig 设置，对之后创建的 PeerConnection 生效
+public final class IceConfig {
+    public static final String GOOGLE_STUN_URL = "stun:stun.l.google.com:19302";
+
+    // 原有行为：公网 STUN，持续收集（网络切换后继续产生新的 Candidate）
+    public static final IceConfig DEFAULT = builder("default")
+            .addIceServer(GOOGLE_STUN_URL)
+            .build();
+
+    // 局域网快速路径：不访问 STUN/TURN，只收集 host Candidate；单个传输、强制 rtcp-mux、不收集 TCP Candidate，
+    // 收集一次即完成，不必等待不可达的 STUN 服务器超时
+    public static final IceConfig LAN = builder("lan")
+            .setHostOnly(true)
+            .setBundlePolicy(PeerConnection.BundlePolicy.MAXBUNDLE)
+            .setRtcpMuxPolicy(PeerConnection.RtcpMuxPolicy.REQUIRE)
+            .setTcpCandidatePolicy(PeerConnection.TcpCandidatePolicy.DISABLED)
+            .setContinualGatheringPolicy(PeerConnection.ContinualGatheringPolicy.GATHER_ONCE)
+            .build();
+
+    public final String name;
+    // ICE 服务器 URL 及凭据，hostOnly 时忽略
+    public final List<Server> iceServers;
+    public final boolean hostOnly;
+    // 为 null 时使用 WebRTC 默认值
+    public final PeerConnection.BundlePolicy bundlePolicy;
+    public final PeerConnection.RtcpMuxPolicy rtcpMuxPolicy;
+    public final PeerConnection.TcpCandidatePolicy tcpCandidatePolicy;
+    public final PeerConnection.ContinualGatheringPolicy continualGatheringPolicy;
+    // 预先收集的 Candidate 数，0 为不预收集；预热模式下至少为预热所需的大小
+    public final int candidatePoolSize;
+
+    public static final class Server {
+        public final String url;
+        public final String username;
+        public final String password;
+
+        Server(String url, String username, String password) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+        }
+    }
+
+    private IceConfig(Builder builder) {
+        this.name = builder.name;
+        this.iceServers = Collections.unmodifiableList(new ArrayList<>(builder.iceServers));
+        this.hostOnly = builder.hostOnly;
+        this.bundlePolicy = builder.bundlePolicy;
+        this.rtcpMuxPolicy = builder.rtcpMuxPolicy;
+        this.tcpCandidatePolicy = builder.tcpCandidatePolicy;
+        this.continualGatheringPolicy = builder.continualGatheringPolicy;
+        this.candidatePoolSize = builder.candidatePoolSize;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    // 逗号或空白分隔的 URL 列表，例如 "stun:192.168.0.105:3478, stun:host:3478"；没有任何 URL 时返回 DEFAULT
+    public static IceConfig fromServerList(String name, String urls) {
+        Builder builder = builder(name);
+        boolean any = false;
+        for (String url : urls.split("[,\\s]+")) {
+            if (!url.isEmpty()) {
+                builder.addIceServer(url);
+                any = true;
+            }
+        }
+        if (!any) {
+            return DEFAULT;
+        }
+        return builder.build();
+    }
+
+    List<PeerConnection.IceServer> createIceServers() {
+        List<PeerConnection.IceServer> servers = new ArrayList<>();
+        if (hostOnly) {
+            return servers;
+        }
+        for (Server server : iceServers) {
+            PeerConnection.IceServer.Builder builder = PeerConnection.IceServer.builder(server.url);
+            if (server.username != null) {
+                builder.setUsername(server.username);
+            }
+            if (server.password != null) {
+                builder.setPassword(server.password);
+            }
+            servers.add(builder.createIceServer());
+        }
+        return servers;
+    }
+
+    // 把配置写入 RTCConfiguration；warmPoolSize 为预热模式需要的候选池大小
+    void applyTo(PeerConnection.RTCConfiguration rtcConfig, int warmPoolSize) {
+        if (bundlePolicy != null) {
+            rtcConfig.bundlePolicy = bundlePolicy;
+        }
+        if (rtcpMuxPolicy != null) {
+            rtcConfig.rtcpMuxPolicy = rtcpMuxPolicy;
+        }
+        if (tcpCandidatePolicy != null) {
+            rtcConfig.tcpCandidatePolicy = tcpCandidatePolicy;
+        }
+        rtcConfig.continualGatheringPolicy = continualGatheringPolicy;
+        int poolSize = Math.max(candidatePoolSize, warmPoolSize);
+        if (poolSize > 0) {
+            rtcConfig.iceCandidatePoolSize = poolSize;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    public static final class Builder {
+        private final String name;
+        private final List<Server> iceServers = new ArrayList<>();
+        private boolean hostOnly;
+        private PeerConnection.BundlePolicy bundlePolicy;
+        private PeerConnection.RtcpMuxPolicy rtcpMuxPolicy;
+        private PeerConnection.TcpCandidatePolicy tcpCandidatePolicy;
+        private PeerConnection.ContinualGatheringPolicy continualGatheringPolicy =
+                PeerConnection.ContinualGatheringPolicy.GATHER_CONTINUALLY;
+        private int candidatePoolSize;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder addIceServer(String url) {
+            return addIceServer(url, null, null);
+        }
+
+        // TURN 服务器需要用户名和密码
+        public Builder addIceServer(String url, String username, String password) {
+            iceServers.add(new Server(url, username, password));
+            return this;
+        }
+
+        // 只收集 host Candidate，不访问任何 STUN/TURN 服务器
+        public Builder setHostOnly(boolean hostOnly) {
+            this.hostOnly = hostOnly;
+            return this;
+        }
+
+        public Builder setBundlePolicy(PeerConnection.BundlePolicy bundlePolicy) {
+            this.bundlePolicy = bundlePolicy;
+            return this;
+        }
+
+        public Builder setRtcpMuxPolicy(PeerConnection.RtcpMuxPolicy rtcpMuxPolicy) {
+            this.rtcpMuxPolicy = rtcpMuxPolicy;
+            return this;
+        }
+
+        public Builder setTcpCandidatePolicy(PeerConnection.TcpCandidatePolicy tcpCandidatePolicy) {
+            this.tcpCandidatePolicy = tcpCandidatePolicy;
+            return this;
+        }
+
+        public Builder setContinualGatheringPolicy(PeerConnection.ContinualGatheringPolicy policy) {
+            this.continualGatheringPolicy = policy;
+            return this;
+        }
+
+        public Builder setCandidatePoolSize(int candidatePoolSize) {
+            this.candidatePoolSize = Math.max(0, candidatePoolSize);
+            return this;
+        }
+
+        public IceConfig build() {
+            return new IceConfig(this);
+        }
+    }
+}
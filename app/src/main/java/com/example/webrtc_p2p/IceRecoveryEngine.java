@@ -0,0 +1,339 @@
+package com.example.webrtc_p2p;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.webrtc.PeerConnection;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// 连接中断后的自动恢复：保留现有的 PeerConnection 和 AudioTrack，只通过 ICE restart 重新建立传输
+// - DISCONNECTED 持续 gracePeriodMs 仍未恢复、或进入 FAILED 时，由发起方发送 ICE restart Offer；
+//   应答方多等一个 restartTimeoutMs 仍未恢复才自己发起，避免双方同时发 Offer
+// - 默认网络切换（Wi-Fi ↔ 移动网络）时，本端立即对所有通话中的会话 ICE restart
+// - 每次 restart 后 restartTimeoutMs 内没有恢复则重试，最多 maxAttempts 次；
+//   因协商未完成而没能发出 Offer 的轮次也计入，避免一直等不到协商结束时无限重试
+// 除网络回调和定时器外，所有方法都在 WebRTCManager 的 eventLoop 上调用；定时器和网络回调通过 Host.post 回到 eventLoop
+public class IceRecoveryEngine {
+    private static final String TAG = "IceRecoveryEngine";
+
+    public static final long DEFAULT_GRACE_PERIOD_MS = 1500;
+    public static final long DEFAULT_RESTART_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    public enum Event {
+        // 发出了第 attempt 次 ICE restart Offer
+        RESTARTING,
+        // 恢复连接，elapsedMs 为从中断（或网络切换）到恢复的时长
+        RECOVERED,
+        // 重试次数用完仍未恢复
+        GAVE_UP
+    }
+
+    public interface RecoveryListener {
+        // 在 eventLoop 上回调
+        void onRecoveryEvent(String peerId, Event event, int attempt, long elapsedMs);
+    }
+
+    interface Host {
+        void post(Runnable task);
+        Iterable<PeerSession> sessions();
+        // 发起 ICE restart Offer；当前不能发起（例如上一次协商还未完成）时返回 false，等下次重试
+        boolean restartIce(PeerSession session);
+        void onRecoveryFailed(PeerSession session);
+    }
+
+    // 单个会话的恢复进度
+    private static final class Recovery {
+        long startedAtNanos;
+        // 已发出的 ICE restart 次数
+        int attempts;
+        // 到点但 restartIce 返回 false、没有发出 Offer 的次数
+        int skipped;
+        Runnable timer;
+    }
+
+    private final Host host;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<PeerSession, Recovery> recoveries = new IdentityHashMap<>();
+    private long gracePeriodMs = DEFAULT_GRACE_PERIOD_MS;
+    private long restartTimeoutMs = DEFAULT_RESTART_TIMEOUT_MS;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private RecoveryListener listener;
+    private volatile long lastRecoveryMs = -1;
+
+    private ConnectivityManager connectivityManager;
+    private ConnectivityManager.NetworkCallback networkCallback;
+    // 当前默认网络，0 表示尚未收到回调
+    private long defaultNetworkHandle = 0;
+    private String defaultTransport;
+
+    IceRecoveryEngine(Host host) {
+        this.host = host;
+    }
+
+    void setGracePeriodMs(long gracePeriodMs) {
+        this.gracePeriodMs = Math.max(0, gracePeriodMs);
+    }
+
+    void setRestartTimeoutMs(long restartTimeoutMs) {
+        this.restartTimeoutMs = Math.max(1, restartTimeoutMs);
+    }
+
+    void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    void setRecoveryListener(RecoveryListener listener) {
+        this.listener = listener;
+    }
+
+    // 最近一次恢复所用的时长（毫秒），没有发生过恢复时为 -1
+    long getLastRecoveryMs() {
+        return lastRecoveryMs;
+    }
+
+    // 开始监听默认网络变化
+    void start(Context context) {
+        if (networkCallback != null) {
+            return;
+        }
+        connectivityManager = (ConnectivityManager) context.getApplicationContext()
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            AppLog.w(TAG, "无法获取 ConnectivityManager，不监听网络切换");
+            return;
+        }
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                long handle = network.getNetworkHandle();
+                String transport = transportName(capabilities);
+                host.post(() -> onDefaultNetwork(handle, transport));
+            }
+
+            @Override
+            public void onLost(Network network) {
+                long handle = network.getNetworkHandle();
+                host.post(() -> AppLog.i(TAG, "默认网络断开: {}", handle));
+            }
+        };
+        try {
+            connectivityManager.registerDefaultNetworkCallback(networkCallback, handler);
+        } catch (RuntimeException e) {
+            // 应用注册的网络回调数量有上限，超限时抛出异常
+            AppLog.w(TAG, "注册网络回调失败: {}", e.getMessage());
+            networkCallback = null;
+        }
+    }
+
+    void stop() {
+        if (networkCallback != null && connectivityManager != null) {
+            try {
+                connectivityManager.unregisterNetworkCallback(networkCallback);
+            } catch (RuntimeException e) {
+                AppLog.w(TAG, "注销网络回调失败: {}", e.getMessage());
+            }
+        }
+        networkCallback = null;
+        defaultNetworkHandle = 0;
+        clear();
+    }
+
+    // 通话结束时放弃所有进行中的恢复
+    void clear() {
+        for (Recovery recovery : recoveries.values()) {
+            cancelTimer(recovery);
+        }
+        recoveries.clear();
+    }
+
+    void onConnectionStateChanged(PeerSession session, PeerConnection.PeerConnectionState state) {
+        if (session.isWarm()) {
+            return;
+        }
+        switch (state) {
+            case CONNECTED:
+                onConnected(session);
+                break;
+            case DISCONNECTED:
+                onDisconnected(session);
+                break;
+            case FAILED:
+                onFailed(session);
+                break;
+            case CLOSED:
+                onSessionClosed(session);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // 网络切换时 PeerConnection 可能一直停留在 CONNECTED，restart 之后以 ICE 连接状态判断是否恢复
+    void onIceConnectionStateChanged(PeerSession session, PeerConnection.IceConnectionState state) {
+        Recovery recovery = recoveries.get(session);
+        if (recovery == null || recovery.attempts == 0) {
+            return;
+        }
+        if (state == PeerConnection.IceConnectionState.CONNECTED
+                || state == PeerConnection.IceConnectionState.COMPLETED) {
+            onConnected(session);
+        }
+    }
+
+    void onSessionClosed(PeerSession session) {
+        Recovery recovery = recoveries.remove(session);
+        if (recovery != null) {
+            cancelTimer(recovery);
+        }
+    }
+
+    private void onDefaultNetwork(long handle, String transport) {
+        long previousHandle = defaultNetworkHandle;
+        String previousTransport = defaultTransport;
+        defaultNetworkHandle = handle;
+        defaultTransport = transport;
+        if (previousHandle == 0 || previousHandle == handle) {
+            // 首次回调或同一网络的能力变化
+            return;
+        }
+        AppLog.i(TAG, "默认网络切换: {} → {}，对通话中的会话执行 ICE restart", previousTransport, transport);
+        for (PeerSession session : host.sessions()) {
+            if (session.isWarm() || session.getPeerConnection() == null) {
+                continue;
+            }
+            // 本端换了网络，对端无从得知，不论角色都立即发起
+            scheduleCheck(session, beginRecovery(session), 0);
+        }
+    }
+
+    // 短暂的 DISCONNECTED 常常会自行恢复，先等待宽限期；
+    // 反复抖动时保留已有的计时器，否则宽限期会被一再推迟，restart 迟迟不发
+    private void onDisconnected(PeerSession session) {
+        Recovery recovery = beginRecovery(session);
+        if (recovery.attempts == 0 && recovery.timer == null) {
+            scheduleCheck(session, recovery, gracePeriodFor(session));
+        }
+    }
+
+    // FAILED 不会自行恢复，发起方立即 restart（提前宽限期内的计时器）；已在 restart 中时保留等待结果的计时器
+    private void onFailed(PeerSession session) {
+        Recovery recovery = beginRecovery(session);
+        if (recovery.attempts > 0) {
+            return;
+        }
+        if (session.isInitiator()) {
+            scheduleCheck(session, recovery, 0);
+        } else if (recovery.timer == null) {
+            scheduleCheck(session, recovery, gracePeriodFor(session));
+        }
+    }
+
+    private void onConnected(PeerSession session) {
+        Recovery recovery = recoveries.remove(session);
+        if (recovery == null) {
+            return;
+        }
+        cancelTimer(recovery);
+        long elapsedMs = (System.nanoTime() - recovery.startedAtNanos) / 1_000_000;
+        lastRecoveryMs = elapsedMs;
+        AppLog.i(TAG, "与 {} 的连接已恢复，用时 {} ms，ICE restart {} 次",
+                session.getRemoteId(), elapsedMs, recovery.attempts);
+        notifyListener(session, Event.RECOVERED, recovery.attempts, elapsedMs);
+    }
+
+    // 同一次中断只记录第一次的开始时间
+    private Recovery beginRecovery(PeerSession session) {
+        Recovery recovery = recoveries.get(session);
+        if (recovery == null) {
+            recovery = new Recovery();
+            recovery.startedAtNanos = System.nanoTime();
+            recoveries.put(session, recovery);
+        }
+        return recovery;
+    }
+
+    private long gracePeriodFor(PeerSession session) {
+        return session.isInitiator() ? gracePeriodMs : gracePeriodMs + restartTimeoutMs;
+    }
+
+    private void scheduleCheck(PeerSession session, Recovery recovery, long delayMs) {
+        cancelTimer(recovery);
+        Runnable timer = () -> host.post(() -> onTimer(session, recovery));
+        recovery.timer = timer;
+        handler.postDelayed(timer, delayMs);
+    }
+
+    private void onTimer(PeerSession session, Recovery recovery) {
+        if (recoveries.get(session) != recovery) {
+            // 已恢复或会话已关闭
+            return;
+        }
+        recovery.timer = null;
+        PeerConnection pc = session.getPeerConnection();
+        if (pc == null) {
+            recoveries.remove(session);
+            return;
+        }
+        if (recovery.attempts > 0 && pc.connectionState() == PeerConnection.PeerConnectionState.CONNECTED
+                && pc.iceConnectionState() != PeerConnection.IceConnectionState.CHECKING) {
+            onConnected(session);
+            return;
+        }
+        if (recovery.attempts + recovery.skipped >= maxAttempts) {
+            recoveries.remove(session);
+            long elapsedMs = (System.nanoTime() - recovery.startedAtNanos) / 1_000_000;
+            AppLog.w(TAG, "与 {} 的连接在 {} 次 ICE restart 后仍未恢复（{} 次未能发起），用时 {} ms",
+                    session.getRemoteId(), recovery.attempts, recovery.skipped, elapsedMs);
+            notifyListener(session, Event.GAVE_UP, recovery.attempts, elapsedMs);
+            host.onRecoveryFailed(session);
+            return;
+        }
+        if (host.restartIce(session)) {
+            recovery.attempts++;
+            long elapsedMs = (System.nanoTime() - recovery.startedAtNanos) / 1_000_000;
+            AppLog.i(TAG, "与 {} 发起第 {} 次 ICE restart", session.getRemoteId(), recovery.attempts);
+            notifyListener(session, Event.RESTARTING, recovery.attempts, elapsedMs);
+        } else {
+            recovery.skipped++;
+            AppLog.i(TAG, "与 {} 的协商尚未完成，暂不发起 ICE restart（第 {} 次）", session.getRemoteId(), recovery.skipped);
+        }
+        scheduleCheck(session, recovery, restartTimeoutMs);
+    }
+
+    private void cancelTimer(Recovery recovery) {
+        if (recovery.timer != null) {
+            handler.removeCallbacks(recovery.timer);
+            recovery.timer = null;
+        }
+    }
+
+    private void notifyListener(PeerSession session, Event event, int attempt, long elapsedMs) {
+        RecoveryListener l = listener;
+        if (l != null) {
+            l.onRecoveryEvent(session.getRemoteId(), event, attempt, elapsedMs);
+        }
+    }
+
+    private static String transportName(NetworkCapabilities capabilities) {
+        if (capabilities == null) {
+            return "unknown";
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            return "wifi";
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return "cellular";
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            return "ethernet";
+        }
+        return "other";
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.webrtc_p2p;
+
+import android.content.Context;
+
+import org.webrtc.EglBase;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoCapturer;
+import org.webrtc.VideoSource;
+import org.webrtc.VideoTrack;
+
+import java.io.IOException;
+
+// 本地视频采集：VideoCapturer → VideoSource → VideoTrack，所有会话共享同一个视频轨道
+// 摄像头输出到 SurfaceTextureHelper 的 SurfaceTexture（与编解码器共享 EGL 上下文），帧以 OES 纹理交给硬件编码器，
+// 整个发送路径不拷贝到 CPU 内存；FileVideoCapturer 产生的是 I420 帧，只用于测试
+// 只在 WebRTCManager 的 eventLoop 上访问
+final class LocalVideoCapture {
+    private static final String TAG = "LocalVideoCapture";
+
+    private final VideoConfig config;
+    private final VideoCapturer capturer;
+    private final SurfaceTextureHelper textureHelper;
+    private final VideoSource source;
+    private final VideoTrack track;
+    private boolean capturing;
+
+    private LocalVideoCapture(VideoConfig config, VideoCapturer capturer, SurfaceTextureHelper textureHelper,
+                              VideoSource source, VideoTrack track) {
+        this.config = config;
+        this.capturer = capturer;
+        this.textureHelper = textureHelper;
+        this.source = source;
+        this.track = track;
+    }
+
+    // 创建采集器和轨道，但不开始采集（预热会话也会挂上这个轨道，摄像头等到通话开始再打开）
+    static LocalVideoCapture create(Context context, PeerConnectionFactory factory, EglBase.Context eglContext,
+                                    VideoConfig config) throws IOException {
+        VideoCapturer capturer = config.createCapturer(context);
+        SurfaceTextureHelper textureHelper = SurfaceTextureHelper.create("video-capture", eglContext);
+        VideoSource source = factory.createVideoSource(capturer.isScreencast());
+        capturer.initialize(textureHelper, context.getApplicationContext(), source.getCapturerObserver());
+        VideoTrack track = factory.createVideoTrack("video_track", source);
+        return new LocalVideoCapture(config, capturer, textureHelper, source, track);
+    }
+
+    VideoConfig getConfig() {
+        return config;
+    }
+
+    VideoTrack getTrack() {
+        return track;
+    }
+
+    void start() {
+        if (capturing) {
+            return;
+        }
+        capturer.startCapture(config.width, config.height, config.fps);
+        capturing = true;
+        AppLog.i(TAG, "开始视频采集: {}", config);
+    }
+
+    void stop() {
+        if (!capturing) {
+            return;
+        }
+        capturing = false;
+        try {
+            capturer.stopCapture();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        AppLog.i(TAG, "视频采集已停止");
+    }
+
+    // 调用前需先关闭使用该轨道的 PeerConnection
+    void dispose() {
+        stop();
+        capturer.dispose();
+        track.dispose();
+        source.dispose();
+        textureHelper.dispose();
+    }
+}
@@ -1,9 +1,11 @@
 package com.example.webrtc_p2p;
 
 import android.Manifest;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.EditText;
@@ -12,18 +14,38 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
     private static final int PERMISSION_REQUEST_CODE = 1001;
+    private static final int CAMERA_PERMISSION_REQUEST_CODE = 1002;
+    // 日志视图只保留最近的若干行，通话再长每批日志的刷新开销也不变
+    private static final int MAX_LOG_LINES = 200;
     
     private TextView tvStatus;
     private TextView tvLog;
     private Button btnCall;
     private Button btnConnect;
+    private Button btnRecord;
     private EditText etIp;
     private EditText etPort;
+    private CheckBox cbLanMode;
+    private CheckBox cbVideo;
+    private EditText etIceServers;
+    // 上次应用的 ICE 选择，未变化时不重复设置（避免重新创建预热的 PeerConnection）
+    private String appliedIceSelection;
     private TextView tvConnectionStatus;
     private WebRTCManager webRTCManager;
     private boolean isCallActive = false;
+    private boolean isRecording = false;
+    private final ArrayDeque<String> logLines = new ArrayDeque<>();
+    private final StringBuilder logText = new StringBuilder();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -40,12 +62,22 @@ public class MainActivity extends AppCompatActivity {
         tvLog = findViewById(R.id.tv_log);
         btnCall = findViewById(R.id.btn_call);
         btnConnect = findViewById(R.id.btn_connect);
+        btnRecord = findViewById(R.id.btn_record);
         etIp = findViewById(R.id.et_ip);
         etPort = findViewById(R.id.et_port);
+        cbLanMode = findViewById(R.id.cb_lan_mode);
+        cbVideo = findViewById(R.id.cb_video);
+        etIceServers = findViewById(R.id.et_ice_servers);
         tvConnectionStatus = findViewById(R.id.tv_connection_status);
         
+        // AppLog 在主线程按批次回调，每批只刷新一次 TextView
+        AppLog.setLogListener(this::appendLogLines);
+
         btnCall.setOnClickListener(v -> toggleCall());
         btnConnect.setOnClickListener(v -> connectToServer());
+        btnRecord.setOnClickListener(v -> toggleRecording());
+        cbLanMode.setOnClickListener(v -> applyIceConfig());
+        cbVideo.setOnClickListener(v -> applyVideoConfig());
         
         // 延迟显示项目状态，确保TextView布局完全初始化
         tvLog.post(() -> {
@@ -78,28 +110,34 @@ public class MainActivity extends AppCompatActivity {
         appendLog("连接服务器: " + serverIp + ":" + serverPort);
         
         webRTCManager = new WebRTCManager(this, serverIp, serverPort);
+        // 合并短时间内产生的 ICE Candidate，减少信令帧数
+        webRTCManager.setIceCandidateBatching(true);
+        // 服务端支持时使用压缩的二进制信令帧
+        webRTCManager.setBinarySignalingEnabled(true);
+        // 信令连接后预先准备 PeerConnection，缩短点击通话到出声的时间
+        webRTCManager.setWarmStandbyEnabled(true);
+        // 连接中断或切换 Wi-Fi/移动网络时自动 ICE restart，不必挂断重拨
+        webRTCManager.setIceRecoveryEnabled(true);
+        // 仅在可调试构建中记录通话建立各阶段耗时，汇总可通过 exportCallSetupTrace 导出为 JSON
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        webRTCManager.setCallSetupTracingEnabled(debuggable);
+        applyIceConfig();
         webRTCManager.setStatusCallback(new WebRTCManager.StatusCallback() {
             @Override
             public void onStatusChanged(String status) {
-                runOnUiThread(() -> {
-                    tvStatus.setText(status);
-                    // 更新连接状态显示
-                    if (status.contains("已连接")) {
-                        tvConnectionStatus.setText("已连接");
-                        tvConnectionStatus.setTextColor(getResources().getColor(android.R.color.holo_green_dark));
-                    } else if (status.contains("已断开")) {
-                        tvConnectionStatus.setText("未连接");
-                        tvConnectionStatus.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
-                    } else if (status.contains("连接中")) {
-                        tvConnectionStatus.setText("连接中...");
-                        tvConnectionStatus.setTextColor(getResources().getColor(android.R.color.holo_orange_dark));
-                    }
-                });
-            }
-
-            @Override
-            public void onLog(String message) {
-                runOnUiThread(() -> appendLog(message));
+                // WebRTCManager 已在主线程合并回调，这里直接更新界面
+                tvStatus.setText(status);
+                // 更新连接状态显示
+                if (status.contains("已连接")) {
+                    tvConnectionStatus.setText("已连接");
+                    tvConnectionStatus.setTextColor(getResources().getColor(android.R.color.holo_green_dark));
+                } else if (status.contains("已断开")) {
+                    tvConnectionStatus.setText("未连接");
+                    tvConnectionStatus.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
+                } else if (status.contains("连接中")) {
+                    tvConnectionStatus.setText("连接中...");
+                    tvConnectionStatus.setTextColor(getResources().getColor(android.R.color.holo_orange_dark));
+                }
             }
         });
         
@@ -117,6 +155,39 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // 局域网模式跳过 STUN/TURN；否则使用输入框中的服务器列表，留空为默认的公网 STUN
+    private void applyIceConfig() {
+        if (webRTCManager == null) {
+            return;
+        }
+        boolean lan = cbLanMode.isChecked();
+        String servers = etIceServers.getText().toString().trim();
+        etIceServers.setEnabled(!lan);
+        String selection = lan ? "lan" : servers;
+        if (selection.equals(appliedIceSelection)) {
+            return;
+        }
+        appliedIceSelection = selection;
+        IceConfig config = lan ? IceConfig.LAN : IceConfig.fromServerList("custom", servers);
+        appendLog("ICE 配置: " + config);
+        webRTCManager.setIceConfig(config);
+    }
+
+    // 视频通话使用前置摄像头，硬件编解码器与采集共享 EGL 上下文；编解码帧率和 CPU 占用定期输出到日志
+    private void applyVideoConfig() {
+        if (webRTCManager == null) {
+            return;
+        }
+        if (cbVideo.isChecked() && ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this,
+                    new String[]{Manifest.permission.CAMERA},
+                    CAMERA_PERMISSION_REQUEST_CODE);
+            return;
+        }
+        webRTCManager.setVideoConfig(cbVideo.isChecked() ? VideoConfig.DEFAULT : null);
+    }
+
     private void checkPermissions() {
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) 
                 != PackageManager.PERMISSION_GRANTED) {
@@ -142,6 +213,7 @@ public class MainActivity extends AppCompatActivity {
         }
         
         if (webRTCManager != null) {
+            applyIceConfig();
             webRTCManager.startCall();
             btnCall.setText(R.string.stop_call);
             isCallActive = true;
@@ -153,15 +225,50 @@ public class MainActivity extends AppCompatActivity {
             webRTCManager.stopCall();
             btnCall.setText(R.string.start_call);
             isCallActive = false;
+            btnRecord.setText(R.string.start_recording);
+            isRecording = false;
+        }
+    }
+
+    // 录音在通话结束时由 WebRTCManager 自动保存
+    private void toggleRecording() {
+        if (webRTCManager == null) {
+            return;
+        }
+        if (!isRecording) {
+            File dir = new File(getExternalFilesDir(null), "recordings");
+            String name = "call-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".wav";
+            webRTCManager.startRecording(new File(dir, name));
+            btnRecord.setText(R.string.stop_recording);
+            isRecording = true;
+        } else {
+            webRTCManager.stopRecording();
+            btnRecord.setText(R.string.start_recording);
+            isRecording = false;
         }
     }
 
     private void appendLog(String message) {
+        AppLog.i(TAG, message);
+    }
+
+    private void appendLogLines(List<String> lines) {
         if (tvLog == null) return;
-        
-        String currentLog = tvLog.getText().toString();
-        String newLog = currentLog + "\n" + message;
-        tvLog.setText(newLog);
+
+        for (String line : lines) {
+            logLines.addLast(line);
+        }
+        while (logLines.size() > MAX_LOG_LINES) {
+            logLines.removeFirst();
+        }
+        logText.setLength(0);
+        for (String line : logLines) {
+            if (logText.length() > 0) {
+                logText.append('\n');
+            }
+            logText.append(line);
+        }
+        tvLog.setText(logText);
         
         // 自动滚动到底部 - 添加空值检查
         if (tvLog.getLayout() != null) {
@@ -182,12 +289,21 @@ public class MainActivity extends AppCompatActivity {
                 appendLog("麦克风权限被拒绝");
                 Toast.makeText(this, R.string.permission_required, Toast.LENGTH_LONG).show();
             }
+        } else if (requestCode == CAMERA_PERMISSION_REQUEST_CODE) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                appendLog("摄像头权限已授予");
+                applyVideoConfig();
+            } else {
+                cbVideo.setChecked(false);
+                Toast.makeText(this, R.string.camera_permission_required, Toast.LENGTH_LONG).show();
+            }
         }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        AppLog.setLogListener(null);
         if (webRTCManager != null) {
             webRTCManager.cleanup();
         }
@@ -0,0 +1,244 @@
+package com.example.webrtc_p2p;
+
+import android.content.Context;
+
+import org.webrtc.DefaultVideoDecoderFactory;
+import org.webrtc.DefaultVideoEncoderFactory;
+import org.webrtc.EglBase;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.audio.JavaAudioDeviceModule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// 进程内共享的 PeerConnectionFactory
+// 首次 acquire 时在后台线程初始化，多个 WebRTCManager 通过引用计数共享；
+// 引用归零后延迟释放，Activity 重建时可以直接复用，无需重新加载 native 库和线程
+// 初始化失败时回调 onFactoryFailed，引用计数不变，再次 acquire 时重新初始化
+public final class PeerConnectionFactoryHolder {
+    private static final String TAG = "PCFactoryHolder";
+    private static final long IDLE_RELEASE_DELAY_MS = 30_000;
+
+    public interface FactoryCallback {
+        void onFactoryReady(PeerConnectionFactory factory);
+        // 在初始化线程回调；调用方持有的引用仍需 release
+        void onFactoryFailed(Throwable error);
+    }
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pcf-init");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static boolean nativeInitialized = false;
+    private static PeerConnectionFactory factory;
+    // 当前工厂（或正在初始化的工厂）使用的音频设备配置
+    private static AudioDeviceConfig factoryConfig;
+    // 当前工厂（或正在初始化的工厂）是否带视频编解码器
+    private static boolean factoryVideo;
+    private static EglBase eglBase;
+    private static int refCount = 0;
+    private static boolean initializing = false;
+    // 初始化期间有调用方要求其他配置：工厂还没交给任何调用方，完成后按 factoryConfig / factoryVideo 重建
+    private static boolean rebuildAfterInit = false;
+    private static ScheduledFuture<?> pendingRelease;
+    private static final List<FactoryCallback> pendingCallbacks = new ArrayList<>();
+
+    private PeerConnectionFactoryHolder() {
+    }
+
+    // 增加引用；工厂就绪后在初始化线程回调（已就绪时立即回调）
+    public static void acquire(Context context, FactoryCallback callback) {
+        acquire(context, AudioDeviceConfig.DEFAULT, callback);
+    }
+
+    public static void acquire(Context context, AudioDeviceConfig config, FactoryCallback callback) {
+        acquire(context, config, false, callback);
+    }
+
+    // 指定音频设备配置，video 为 true 时需要带视频编解码器的工厂；
+    // 已有工厂不满足且没有其他引用时重建工厂，否则沿用已有工厂（带视频的工厂也可用于纯音频通话）
+    public static void acquire(Context context, AudioDeviceConfig config, boolean video, FactoryCallback callback) {
+        PeerConnectionFactory ready;
+        synchronized (PeerConnectionFactoryHolder.class) {
+            if (pendingRelease != null) {
+                pendingRelease.cancel(false);
+                pendingRelease = null;
+            }
+
+            ready = factory;
+            boolean mismatch = config != factoryConfig || (video && !factoryVideo);
+            if (ready != null && mismatch) {
+                if (refCount == 0) {
+                    PeerConnectionFactory stale = factory;
+                    factory = null;
+                    ready = null;
+                    executor.execute(() -> {
+                        stale.dispose();
+                        AppLog.d(TAG, "音频设备配置变化，已释放旧的 PeerConnectionFactory");
+                    });
+                } else {
+                    AppLog.w(TAG, "工厂仍被其他通话使用，沿用当前配置");
+                }
+            } else if (ready == null && initializing && mismatch) {
+                // 以最新的音频设备配置为准；已有调用方要求视频编解码器时保留
+                rebuildAfterInit = true;
+                factoryConfig = config;
+                factoryVideo = factoryVideo || video;
+                AppLog.i(TAG, "工厂正在按其他配置初始化，完成后按新配置重建");
+            }
+            refCount++;
+
+            if (ready == null) {
+                pendingCallbacks.add(callback);
+                if (!initializing) {
+                    initializing = true;
+                    factoryConfig = config;
+                    factoryVideo = video;
+                    Context appContext = context.getApplicationContext();
+                    executor.execute(() -> initialize(appContext, config, video));
+                }
+            }
+        }
+        if (ready != null) {
+            callback.onFactoryReady(ready);
+        }
+    }
+
+    // 减少引用；归零后延迟释放，期间再次 acquire 会取消释放
+    public static synchronized void release() {
+        if (refCount == 0) {
+            AppLog.w(TAG, "release 调用次数多于 acquire");
+            return;
+        }
+        refCount--;
+        if (refCount == 0) {
+            pendingRelease = executor.schedule(PeerConnectionFactoryHolder::disposeIfIdle,
+                    IDLE_RELEASE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 当前已就绪的工厂，未初始化完成时返回 null
+    public static synchronized PeerConnectionFactory getFactory() {
+        return factory;
+    }
+
+    // 当前工厂是否带视频编解码器，未初始化完成时返回 false
+    public static synchronized boolean isVideoEnabled() {
+        return factory != null && factoryVideo;
+    }
+
+    // EGL 上下文仅在视频功能需要时才创建
+    public static synchronized EglBase getEglBase() {
+        if (eglBase == null) {
+            eglBase = EglBase.create();
+            AppLog.d(TAG, "EglBase 已创建");
+        }
+        return eglBase;
+    }
+
+    private static void initialize(Context appContext, AudioDeviceConfig config, boolean video) {
+        long start = System.nanoTime();
+        PeerConnectionFactory created;
+        try {
+            created = createFactory(appContext, config, video);
+        } catch (RuntimeException | LinkageError e) {
+            // 例如 native 库加载失败（UnsatisfiedLinkError）或音频设备模块创建失败
+            AppLog.e(TAG, "PeerConnectionFactory 初始化失败", e);
+            List<FactoryCallback> callbacks;
+            synchronized (PeerConnectionFactoryHolder.class) {
+                initializing = false;
+                rebuildAfterInit = false;
+                callbacks = new ArrayList<>(pendingCallbacks);
+                pendingCallbacks.clear();
+            }
+            for (FactoryCallback callback : callbacks) {
+                callback.onFactoryFailed(e);
+            }
+            return;
+        }
+        AppLog.d(TAG, "PeerConnectionFactory 初始化耗时: {} ms{}", (System.nanoTime() - start) / 1_000_000,
+                video ? "（带视频编解码器）" : "");
+
+        List<FactoryCallback> callbacks;
+        synchronized (PeerConnectionFactoryHolder.class) {
+            if (rebuildAfterInit) {
+                rebuildAfterInit = false;
+                AudioDeviceConfig nextConfig = factoryConfig;
+                boolean nextVideo = factoryVideo;
+                executor.execute(() -> initialize(appContext, nextConfig, nextVideo));
+                callbacks = null;
+            } else {
+                factory = created;
+                initializing = false;
+                callbacks = new ArrayList<>(pendingCallbacks);
+                pendingCallbacks.clear();
+            }
+        }
+        if (callbacks == null) {
+            created.dispose();
+            AppLog.d(TAG, "初始化期间配置已变化，释放刚创建的工厂并重建");
+            return;
+        }
+        for (FactoryCallback callback : callbacks) {
+            callback.onFactoryReady(created);
+        }
+        // 初始化期间引用已全部释放时，按正常流程延迟释放
+        synchronized (PeerConnectionFactoryHolder.class) {
+            if (refCount == 0 && pendingRelease == null) {
+                pendingRelease = executor.schedule(PeerConnectionFactoryHolder::disposeIfIdle,
+                        IDLE_RELEASE_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static PeerConnectionFactory createFactory(Context appContext, AudioDeviceConfig config, boolean video) {
+        if (!nativeInitialized) {
+            PeerConnectionFactory.InitializationOptions initializationOptions =
+                    PeerConnectionFactory.InitializationOptions.builder(appContext)
+                            .createInitializationOptions();
+            PeerConnectionFactory.initialize(initializationOptions);
+            nativeInitialized = true;
+        }
+
+        PeerConnectionFactory.Options options = new PeerConnectionFactory.Options();
+        JavaAudioDeviceModule audioDeviceModule = config.createAudioDeviceModule(appContext);
+        PeerConnectionFactory.Builder builder = PeerConnectionFactory.builder()
+                .setOptions(options)
+                .setAudioDeviceModule(audioDeviceModule);
+        if (video) {
+            // 编解码器与采集共享 EGL 上下文：硬件编码器直接读取摄像头的纹理帧，硬件解码器输出纹理帧，
+            // 都不经过 CPU 内存；设备没有对应的硬件编解码器时回退到软件实现
+            EglBase.Context eglContext = getEglBase().getEglBaseContext();
+            builder.setVideoEncoderFactory(new DefaultVideoEncoderFactory(eglContext, true, true))
+                    .setVideoDecoderFactory(new DefaultVideoDecoderFactory(eglContext));
+        }
+        try {
+            return builder.createPeerConnectionFactory();
+        } finally {
+            // 工厂内部持有音频设备模块的引用，这里可以释放 Java 侧的引用；创建失败时同样释放
+            audioDeviceModule.release();
+        }
+    }
+
+    private static synchronized void disposeIfIdle() {
+        pendingRelease = null;
+        if (refCount > 0) {
+            return;
+        }
+        if (factory != null) {
+            factory.dispose();
+            factory = null;
+            AppLog.d(TAG, "PeerConnectionFactory 已释放");
+        }
+        if (eglBase != null) {
+            eglBase.release();
+            eglBase = null;
+        }
+    }
+}
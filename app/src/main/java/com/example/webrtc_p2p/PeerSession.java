@@ -0,0 +1,299 @@
+package com.example.webrtc_p2p;
+
+import org.webrtc.IceCandidate;
+import org.webrtc.PeerConnection;
+import org.webrtc.RtpSender;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 与单个远端客户端的会话：一个 PeerConnection 及其音频/视频发送端和数据传输通道
+public class PeerSession {
+    // 服务端没有提供客户端 ID 时使用的广播会话，信令不带 to 字段
+    public static final String BROADCAST_PEER_ID = "*";
+    // 远端描述设置前最多缓存的 Candidate 数，正常一次协商只有十几个
+    static final int MAX_PENDING_REMOTE_CANDIDATES = 64;
+
+    private volatile String remoteId;
+    private PeerConnection peerConnection;
+    private RtpSender audioSender;
+    private RtpSender videoSender;
+    private DataChannelTransfer transfer;
+    private CallStatsSampler statsSampler;
+    private AudioBitrateController bitrateController;
+    // 预热中：已创建并在收集 ICE，但还没有开始协商
+    private volatile boolean warm;
+    // 通话结束后保留待复用：发送端已摘下轨道，收发器为 inactive，ICE/DTLS 保持连接
+    private boolean parked;
+    private long parkedAtNanos;
+    // 复用后等待重新协商完成，用于统计复用路径的建立耗时
+    private boolean resumePending;
+    private int reuseCount;
+    // 是否已在统计中看到对方的音频，连接建立后开始检测，只检测一次
+    private boolean firstAudioProbed;
+    // 本端发出了首个 Offer；连接中断时由发起方负责 ICE restart
+    private boolean initiator;
+    // 远端描述设置成功前收到的 Candidate，按到达顺序缓存；只在 WebRTCManager 的 eventLoop 上访问
+    private final List<IceCandidate> pendingRemoteCandidates = new ArrayList<>();
+    private boolean remoteDescriptionSet;
+    // 完美协商（perfect negotiation）状态；只在 eventLoop 上访问
+    // makingOffer：从 createOffer 到本地 Offer 设置完成；settingLocalOffer：setLocalDescription(Offer) 已调用还未完成
+    private boolean makingOffer;
+    private boolean settingLocalOffer;
+    private boolean negotiationQueued;
+    // 每次接受远端 Offer 时递增，此前开始创建的本地 Offer 作废
+    private int negotiationEpoch;
+    // 本轮 ICE 收集的计时，用于比较不同 IceConfig 的收集耗时；只在 eventLoop 上访问
+    private long gatheringStartNanos;
+    private long firstCandidateNanos;
+    private long lastCandidateNanos;
+    private int gatheredCandidates;
+    private boolean gatheringReported;
+    private final long createdAtNanos = System.nanoTime();
+
+    public PeerSession(String remoteId) {
+        this.remoteId = remoteId;
+    }
+
+    public String getRemoteId() {
+        return remoteId;
+    }
+
+    // 广播会话收到带 from 的回应后绑定到具体客户端
+    void setRemoteId(String remoteId) {
+        this.remoteId = remoteId;
+        if (transfer != null) {
+            transfer.setPeerId(remoteId);
+        }
+    }
+
+    // 信令目标客户端 ID，广播会话返回 null
+    public String getSignalingTarget() {
+        return BROADCAST_PEER_ID.equals(remoteId) ? null : remoteId;
+    }
+
+    public PeerConnection getPeerConnection() {
+        return peerConnection;
+    }
+
+    void setPeerConnection(PeerConnection peerConnection) {
+        this.peerConnection = peerConnection;
+    }
+
+    public RtpSender getAudioSender() {
+        return audioSender;
+    }
+
+    void setAudioSender(RtpSender audioSender) {
+        this.audioSender = audioSender;
+    }
+
+    // 没有开启视频时为 null
+    public RtpSender getVideoSender() {
+        return videoSender;
+    }
+
+    void setVideoSender(RtpSender videoSender) {
+        this.videoSender = videoSender;
+    }
+
+    public DataChannelTransfer getTransfer() {
+        return transfer;
+    }
+
+    void setTransfer(DataChannelTransfer transfer) {
+        this.transfer = transfer;
+    }
+
+    public CallStatsSampler getStatsSampler() {
+        return statsSampler;
+    }
+
+    void setStatsSampler(CallStatsSampler statsSampler) {
+        this.statsSampler = statsSampler;
+    }
+
+    public AudioBitrateController getBitrateController() {
+        return bitrateController;
+    }
+
+    void setBitrateController(AudioBitrateController bitrateController) {
+        this.bitrateController = bitrateController;
+    }
+
+    public boolean isWarm() {
+        return warm;
+    }
+
+    void setWarm(boolean warm) {
+        this.warm = warm;
+    }
+
+    boolean isParked() {
+        return parked;
+    }
+
+    void setParked(boolean parked) {
+        this.parked = parked;
+        parkedAtNanos = parked ? System.nanoTime() : 0;
+    }
+
+    long getParkedMs() {
+        return parked ? (System.nanoTime() - parkedAtNanos) / 1_000_000 : 0;
+    }
+
+    boolean isResumePending() {
+        return resumePending;
+    }
+
+    void setResumePending(boolean resumePending) {
+        this.resumePending = resumePending;
+    }
+
+    // 返回这是第几次复用
+    int incrementReuseCount() {
+        return ++reuseCount;
+    }
+
+    // 首次调用返回 true
+    boolean beginFirstAudioProbe() {
+        if (firstAudioProbed) {
+            return false;
+        }
+        firstAudioProbed = true;
+        return true;
+    }
+
+    boolean isInitiator() {
+        return initiator;
+    }
+
+    void setInitiator(boolean initiator) {
+        this.initiator = initiator;
+    }
+
+    boolean isRemoteDescriptionSet() {
+        return remoteDescriptionSet;
+    }
+
+    void setRemoteDescriptionSet(boolean remoteDescriptionSet) {
+        this.remoteDescriptionSet = remoteDescriptionSet;
+    }
+
+    boolean isMakingOffer() {
+        return makingOffer;
+    }
+
+    void setMakingOffer(boolean makingOffer) {
+        this.makingOffer = makingOffer;
+    }
+
+    boolean isSettingLocalOffer() {
+        return settingLocalOffer;
+    }
+
+    void setSettingLocalOffer(boolean settingLocalOffer) {
+        this.settingLocalOffer = settingLocalOffer;
+    }
+
+    // 协商进行中又需要重新协商时排队，回到 STABLE 后再发起
+    boolean isNegotiationQueued() {
+        return negotiationQueued;
+    }
+
+    void setNegotiationQueued(boolean negotiationQueued) {
+        this.negotiationQueued = negotiationQueued;
+    }
+
+    int getNegotiationEpoch() {
+        return negotiationEpoch;
+    }
+
+    void advanceNegotiationEpoch() {
+        negotiationEpoch++;
+    }
+
+    // 队列已满时返回 false
+    boolean queueRemoteCandidate(IceCandidate candidate) {
+        if (pendingRemoteCandidates.size() >= MAX_PENDING_REMOTE_CANDIDATES) {
+            return false;
+        }
+        pendingRemoteCandidates.add(candidate);
+        return true;
+    }
+
+    // 取出并清空缓存的 Candidate
+    List<IceCandidate> drainRemoteCandidates() {
+        if (pendingRemoteCandidates.isEmpty()) {
+            return java.util.Collections.emptyList();
+        }
+        List<IceCandidate> drained = new ArrayList<>(pendingRemoteCandidates);
+        pendingRemoteCandidates.clear();
+        return drained;
+    }
+
+    // 进入 GATHERING 时开始计时（ICE restart 会重新开始）
+    void startGatheringTimer() {
+        gatheringStartNanos = System.nanoTime();
+        firstCandidateNanos = 0;
+        lastCandidateNanos = 0;
+        gatheredCandidates = 0;
+        gatheringReported = false;
+    }
+
+    void recordGatheredCandidate() {
+        long now = System.nanoTime();
+        if (gatheredCandidates++ == 0) {
+            firstCandidateNanos = now;
+        }
+        lastCandidateNanos = now;
+    }
+
+    // 每轮收集只报告一次；还没开始计时时返回 false
+    boolean markGatheringReported() {
+        if (gatheringStartNanos == 0 || gatheringReported) {
+            return false;
+        }
+        gatheringReported = true;
+        return true;
+    }
+
+    long getGatheringElapsedMs() {
+        return gatheringStartNanos == 0 ? -1 : (System.nanoTime() - gatheringStartNanos) / 1_000_000;
+    }
+
+    long getFirstCandidateMs() {
+        return firstCandidateNanos == 0 ? -1 : (firstCandidateNanos - gatheringStartNanos) / 1_000_000;
+    }
+
+    long getLastCandidateMs() {
+        return lastCandidateNanos == 0 ? -1 : (lastCandidateNanos - gatheringStartNanos) / 1_000_000;
+    }
+
+    int getGatheredCandidates() {
+        return gatheredCandidates;
+    }
+
+    public long getAgeMs() {
+        return (System.nanoTime() - createdAtNanos) / 1_000_000;
+    }
+
+    void close() {
+        if (statsSampler != null) {
+            statsSampler.stop();
+            statsSampler = null;
+        }
+        bitrateController = null;
+        if (transfer != null) {
+            transfer.close();
+            transfer = null;
+        }
+        if (peerConnection != null) {
+            peerConnection.close();
+            peerConnection = null;
+        }
+        audioSender = null;
+        videoSender = null;
+        pendingRemoteCandidates.clear();
+    }
+}
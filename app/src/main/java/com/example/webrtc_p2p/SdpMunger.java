@@ -0,0 +1,250 @@
+package com.example.webrtc_p2p;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// 按 AudioProfile 改写本地 SDP 的音频部分：
+// Opus 的 fmtp 参数（maxaveragebitrate、useinbandfec、usedtx、stereo、maxplaybackrate）、a=ptime，
+// 以及可选地删除 Opus / telephone-event 以外的编解码器和不需要的 RTP 头扩展
+public final class SdpMunger {
+    private static final Set<String> KEPT_HEADER_EXTENSIONS = new HashSet<>();
+
+    static {
+        KEPT_HEADER_EXTENSIONS.add("urn:ietf:params:rtp-hdrext:ssrc-audio-level");
+        KEPT_HEADER_EXTENSIONS.add("http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01");
+    }
+
+    private SdpMunger() {
+    }
+
+    public static String apply(String sdp, AudioProfile profile) {
+        if (profile == null) {
+            return sdp;
+        }
+        String separator = sdp.contains("\r\n") ? "\r\n" : "\n";
+        String[] lines = sdp.split(separator);
+
+        List<String> out = new ArrayList<>(lines.length + 4);
+        int sectionStart = -1;
+        for (int i = 0; i <= lines.length; i++) {
+            boolean sectionEnd = i == lines.length || lines[i].startsWith("m=");
+            if (sectionEnd && sectionStart >= 0) {
+                mungeSection(lines, sectionStart, i, profile, out);
+            }
+            if (i == lines.length) {
+                break;
+            }
+            if (lines[i].startsWith("m=")) {
+                sectionStart = i;
+            } else if (sectionStart < 0) {
+                // 会话级属性原样保留
+                out.add(lines[i]);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(sdp.length());
+        for (String line : out) {
+            sb.append(line).append(separator);
+        }
+        return sb.toString();
+    }
+
+    // o= 行中的会话 ID（同一个 PeerConnection 的每次协商保持不变），没有 o= 行时返回 null
+    static String originSessionId(String sdp) {
+        int start = sdp.startsWith("o=") ? 0 : sdp.indexOf("\no=");
+        if (start < 0) {
+            return null;
+        }
+        int end = sdp.indexOf('\n', start + 1);
+        String[] fields = sdp.substring(start, end < 0 ? sdp.length() : end).trim().split(" ");
+        return fields.length > 1 ? fields[1] : null;
+    }
+
+    // 是否有音频/视频 m 行收发媒体（端口不为 0 且方向不是 inactive）；复用的会话据此区分恢复通话和结束通话
+    static boolean hasActiveMedia(String sdp) {
+        boolean inMedia = false;
+        boolean active = false;
+        for (String raw : sdp.split("\r?\n")) {
+            String line = raw.trim();
+            if (line.startsWith("m=")) {
+                if (inMedia && active) {
+                    return true;
+                }
+                String[] fields = line.split(" ");
+                inMedia = (line.startsWith("m=audio") || line.startsWith("m=video"))
+                        && fields.length > 1 && !"0".equals(fields[1]);
+                // 没有方向属性时默认 sendrecv
+                active = inMedia;
+            } else if (inMedia && line.equals("a=inactive")) {
+                active = false;
+            }
+        }
+        return inMedia && active;
+    }
+
+    private static void mungeSection(String[] lines, int start, int end, AudioProfile profile, List<String> out) {
+        String opusPt = null;
+        Set<String> keptPts = new HashSet<>();
+        if (lines[start].startsWith("m=audio")) {
+            for (int i = start + 1; i < end; i++) {
+                String codec = rtpmapCodec(lines[i]);
+                if (codec == null) {
+                    continue;
+                }
+                String pt = payloadType(lines[i]);
+                if (codec.startsWith("opus/")) {
+                    opusPt = pt;
+                    keptPts.add(pt);
+                } else if (codec.startsWith("telephone-event/")) {
+                    keptPts.add(pt);
+                }
+            }
+        }
+        if (opusPt == null) {
+            // 非音频或没有 Opus 的 m 行不做修改
+            for (int i = start; i < end; i++) {
+                out.add(lines[i]);
+            }
+            return;
+        }
+
+        out.add(profile.stripUnusedCodecs ? filterMediaLine(lines[start], keptPts) : lines[start]);
+        boolean hasOpusFmtp = false;
+        for (int i = start + 1; i < end; i++) {
+            String line = lines[i];
+            if (line.startsWith("a=ptime:") && profile.ptimeMs > 0) {
+                continue;
+            }
+            if (profile.stripHeaderExtensions && line.startsWith("a=extmap:")
+                    && !KEPT_HEADER_EXTENSIONS.contains(extmapUri(line))) {
+                continue;
+            }
+            String pt = payloadType(line);
+            if (pt != null && !"*".equals(pt) && profile.stripUnusedCodecs && !keptPts.contains(pt)) {
+                continue;
+            }
+            if (opusPt.equals(pt) && line.startsWith("a=fmtp:")) {
+                out.add(mungeOpusFmtp(line, opusPt, profile));
+                hasOpusFmtp = true;
+                continue;
+            }
+            out.add(line);
+            if (opusPt.equals(pt) && line.startsWith("a=rtpmap:") && !hasFmtp(lines, start, end, opusPt)) {
+                out.add(mungeOpusFmtp("a=fmtp:" + opusPt + " ", opusPt, profile));
+                hasOpusFmtp = true;
+            }
+        }
+        if (profile.ptimeMs > 0) {
+            out.add("a=ptime:" + profile.ptimeMs);
+        }
+        if (!hasOpusFmtp) {
+            out.add(mungeOpusFmtp("a=fmtp:" + opusPt + " ", opusPt, profile));
+        }
+    }
+
+    private static String mungeOpusFmtp(String line, String opusPt, AudioProfile profile) {
+        String prefix = "a=fmtp:" + opusPt + " ";
+        Map<String, String> params = new LinkedHashMap<>();
+        String existing = line.length() > prefix.length() ? line.substring(prefix.length()) : "";
+        for (String param : existing.split(";")) {
+            String trimmed = param.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int eq = trimmed.indexOf('=');
+            if (eq < 0) {
+                params.put(trimmed, null);
+            } else {
+                params.put(trimmed.substring(0, eq), trimmed.substring(eq + 1));
+            }
+        }
+        if (profile.maxAverageBitrate > 0) {
+            params.put("maxaveragebitrate", String.valueOf(profile.maxAverageBitrate));
+        }
+        if (profile.useInbandFec != null) {
+            params.put("useinbandfec", profile.useInbandFec ? "1" : "0");
+        }
+        if (profile.useDtx != null) {
+            params.put("usedtx", profile.useDtx ? "1" : "0");
+        }
+        if (profile.stereo != null) {
+            params.put("stereo", profile.stereo ? "1" : "0");
+            params.put("sprop-stereo", profile.stereo ? "1" : "0");
+        }
+        if (profile.maxPlaybackRate > 0) {
+            params.put("maxplaybackrate", String.valueOf(profile.maxPlaybackRate));
+        }
+
+        StringBuilder sb = new StringBuilder(prefix);
+        boolean first = true;
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            if (!first) {
+                sb.append(';');
+            }
+            first = false;
+            sb.append(entry.getKey());
+            if (entry.getValue() != null) {
+                sb.append('=').append(entry.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    // m=audio 9 UDP/TLS/RTP/SAVPF 111 63 9 ... 只保留指定的 payload type，顺序不变
+    private static String filterMediaLine(String line, Set<String> keptPts) {
+        String[] parts = line.split(" ");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i >= 3 && !keptPts.contains(parts[i])) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(parts[i]);
+        }
+        return sb.toString();
+    }
+
+    private static boolean hasFmtp(String[] lines, int start, int end, String pt) {
+        String prefix = "a=fmtp:" + pt + " ";
+        for (int i = start + 1; i < end; i++) {
+            if (lines[i].startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // a=rtpmap:111 opus/48000/2 → "opus/48000/2"（小写）
+    private static String rtpmapCodec(String line) {
+        if (!line.startsWith("a=rtpmap:")) {
+            return null;
+        }
+        int space = line.indexOf(' ');
+        return space < 0 ? null : line.substring(space + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // a=rtpmap / a=fmtp / a=rtcp-fb 行的 payload type，其他行返回 null
+    private static String payloadType(String line) {
+        int colon;
+        if (line.startsWith("a=rtpmap:") || line.startsWith("a=fmtp:") || line.startsWith("a=rtcp-fb:")) {
+            colon = line.indexOf(':');
+        } else {
+            return null;
+        }
+        int space = line.indexOf(' ', colon);
+        return space < 0 ? null : line.substring(colon + 1, space);
+    }
+
+    // a=extmap:1 urn:... 或 a=extmap:1/sendrecv urn:... → URI
+    private static String extmapUri(String line) {
+        String[] parts = line.split(" ");
+        return parts.length > 1 ? parts[1] : "";
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.webrtc_p2p;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// 二进制信令编解码器，通过 WebSocket 二进制帧传输
+// 帧格式: [版本 1B][消息类型 1B][标志 1B][地址（可选）][消息体]
+//   带 FLAG_ADDRESSED 时头部后跟 [长度 1B][客户端 ID（UTF-8）]：
+//   客户端发出时表示目标（to），服务端转发时改写为发送方（from）
+//   offer/answer:   消息体为 SDP（UTF-8），带 FLAG_DEFLATE 时为 zlib 压缩（使用预置 SDP 字典）
+//   ice-candidate:  消息体为一条 candidate 记录
+//   ice-candidates: 重复的 [长度 2B][candidate 记录]
+//   candidate 记录: [sdpMLineIndex 1B，0xFF 表示未知][sdpMid 长度 1B][sdpMid（UTF-8）][candidate（UTF-8）]
+// 服务端 signaling-server/binary-protocol.js 使用同样的格式和字典，两边需同步修改
+public class SignalingBinaryCodec {
+    // 版本 2：candidate 记录带上 sdpMid / sdpMLineIndex
+    public static final int VERSION = 2;
+
+    static final byte TYPE_OFFER = 1;
+    static final byte TYPE_ANSWER = 2;
+    static final byte TYPE_ICE_CANDIDATE = 3;
+    static final byte TYPE_ICE_CANDIDATES = 4;
+
+    static final byte FLAG_DEFLATE = 0x01;
+    static final byte FLAG_ADDRESSED = 0x02;
+
+    private static final int HEADER_SIZE = 3;
+    private static final int UNKNOWN_MLINE_INDEX = 0xFF;
+    // 解压后的 SDP 上限，防止构造的压缩帧在读线程上无限膨胀；正常的音视频 SDP 在 10 KB 以内
+    static final int MAX_SDP_BYTES = 64 * 1024;
+
+    // SDP 常见片段，作为 deflate 预置字典；越常见的片段越靠后
+    private static final byte[] SDP_DICTIONARY = (
+            "a=extmap-allow-mixed\r\n"
+            + "a=msid-semantic: WMS\r\n"
+            + "a=group:BUNDLE 0\r\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111 63 9 0 8 13 110 126\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=rtcp:9 IN IP4 0.0.0.0\r\n"
+            + "a=ice-options:trickle renomination\r\n"
+            + "a=fingerprint:sha-256 \r\n"
+            + "a=setup:actpass\r\n"
+            + "a=setup:active\r\n"
+            + "a=mid:0\r\n"
+            + "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n"
+            + "a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n"
+            + "a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01\r\n"
+            + "a=extmap:4 urn:ietf:params:rtp-hdrext:sdes:mid\r\n"
+            + "a=sendrecv\r\n"
+            + "a=sendonly\r\n"
+            + "a=recvonly\r\n"
+            + "a=rtcp-mux\r\n"
+            + "a=rtcp-rsize\r\n"
+            + "a=rtpmap:111 opus/48000/2\r\n"
+            + "a=rtcp-fb:111 transport-cc\r\n"
+            + "a=fmtp:111 minptime=10;useinbandfec=1\r\n"
+            + "a=rtpmap:63 red/48000/2\r\n"
+            + "a=fmtp:63 111/111\r\n"
+            + "a=rtpmap:9 G722/8000\r\n"
+            + "a=rtpmap:0 PCMU/8000\r\n"
+            + "a=rtpmap:8 PCMA/8000\r\n"
+            + "a=rtpmap:13 CN/8000\r\n"
+            + "a=rtpmap:110 telephone-event/48000\r\n"
+            + "a=rtpmap:126 telephone-event/8000\r\n"
+            + "a=ssrc-group:FID \r\n"
+            + "a=ssrc:\r\n"
+            + " cname:\r\n"
+            + " msid:audio_stream audio_track\r\n"
+            + "a=msid:audio_stream audio_track\r\n"
+            + "a=ice-ufrag:\r\n"
+            + "a=ice-pwd:\r\n"
+            + "candidate:\r\n"
+            + " 1 udp 2122260223 \r\n"
+            + " 1 udp 1686052607 \r\n"
+            + " 1 tcp 1518280447 \r\n"
+            + " typ host\r\n"
+            + " typ srflx raddr \r\n"
+            + " rport \r\n"
+            + " tcptype passive\r\n"
+            + " generation 0 ufrag \r\n"
+            + " network-id \r\n"
+            + " network-cost 10\r\n"
+            + "v=0\r\n"
+            + "o=- \r\n"
+            + " 2 IN IP4 127.0.0.1\r\n"
+            + "s=-\r\n"
+            + "t=0 0\r\n"
+    ).getBytes(StandardCharsets.US_ASCII);
+
+    // 压缩器和缓冲区复用，避免每条消息重新分配
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final Inflater inflater = new Inflater();
+    private final byte[] chunk = new byte[4096];
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+
+    public synchronized byte[] encodeOffer(String to, String sdp) {
+        return encodeSdp(TYPE_OFFER, to, sdp);
+    }
+
+    public synchronized byte[] encodeAnswer(String to, String sdp) {
+        return encodeSdp(TYPE_ANSWER, to, sdp);
+    }
+
+    public synchronized byte[] encodeIceCandidate(String to, SignalingCodec.Candidate candidate) {
+        out.reset();
+        writeHeader(TYPE_ICE_CANDIDATE, (byte) 0, to);
+        byte[] mid = midBytes(candidate);
+        byte[] body = candidate.sdp.getBytes(StandardCharsets.UTF_8);
+        writeCandidate(candidate, mid, body);
+        return out.toByteArray();
+    }
+
+    public synchronized byte[] encodeIceCandidates(String to, List<SignalingCodec.Candidate> candidates) {
+        out.reset();
+        writeHeader(TYPE_ICE_CANDIDATES, (byte) 0, to);
+        for (SignalingCodec.Candidate candidate : candidates) {
+            byte[] mid = midBytes(candidate);
+            byte[] body = candidate.sdp.getBytes(StandardCharsets.UTF_8);
+            int length = 2 + mid.length + body.length;
+            out.write((length >>> 8) & 0xFF);
+            out.write(length & 0xFF);
+            writeCandidate(candidate, mid, body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] midBytes(SignalingCodec.Candidate candidate) {
+        if (candidate.sdpMid == null) {
+            return new byte[0];
+        }
+        byte[] mid = candidate.sdpMid.getBytes(StandardCharsets.UTF_8);
+        if (mid.length > 0xFF) {
+            throw new IllegalArgumentException("sdpMid 过长: " + candidate.sdpMid);
+        }
+        return mid;
+    }
+
+    private void writeCandidate(SignalingCodec.Candidate candidate, byte[] mid, byte[] body) {
+        int index = candidate.sdpMLineIndex;
+        out.write(index >= 0 && index < UNKNOWN_MLINE_INDEX ? index : UNKNOWN_MLINE_INDEX);
+        out.write(mid.length);
+        out.write(mid, 0, mid.length);
+        out.write(body, 0, body.length);
+    }
+
+    private byte[] encodeSdp(byte type, String to, String sdp) {
+        byte[] raw = sdp.getBytes(StandardCharsets.UTF_8);
+
+        out.reset();
+        writeHeader(type, FLAG_DEFLATE, to);
+        int headerSize = out.size();
+        deflater.reset();
+        deflater.setDictionary(SDP_DICTIONARY);
+        deflater.setInput(raw);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+
+        // 压缩后反而更大时（极短 SDP）直接发送原文
+        if (out.size() - headerSize >= raw.length) {
+            out.reset();
+            writeHeader(type, (byte) 0, to);
+            out.write(raw, 0, raw.length);
+        }
+        return out.toByteArray();
+    }
+
+    private void writeHeader(byte type, byte flags, String address) {
+        byte[] addressBytes = address != null ? address.getBytes(StandardCharsets.UTF_8) : null;
+        if (addressBytes != null && addressBytes.length > 0xFF) {
+            throw new IllegalArgumentException("客户端 ID 过长: " + address);
+        }
+        out.write(VERSION);
+        out.write(type);
+        out.write(addressBytes != null ? flags | FLAG_ADDRESSED : flags);
+        if (addressBytes != null) {
+            out.write(addressBytes.length);
+            out.write(addressBytes, 0, addressBytes.length);
+        }
+    }
+
+    public synchronized void decode(ByteBuffer frame, SignalingCodec.MessageHandler handler) throws IOException {
+        if (frame.remaining() < HEADER_SIZE) {
+            throw new IOException("二进制帧长度不足: " + frame.remaining());
+        }
+        int version = frame.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IOException("不支持的二进制协议版本: " + version);
+        }
+        byte type = frame.get();
+        byte flags = frame.get();
+        String from = null;
+        if ((flags & FLAG_ADDRESSED) != 0) {
+            int length = frame.hasRemaining() ? frame.get() & 0xFF : -1;
+            if (length < 0 || frame.remaining() < length) {
+                throw new IOException("二进制帧地址已截断");
+            }
+            from = readUtf8(frame, length);
+        }
+
+        switch (type) {
+            case TYPE_OFFER:
+                handler.onOffer(from, readSdp(frame, flags));
+                break;
+            case TYPE_ANSWER:
+                handler.onAnswer(from, readSdp(frame, flags));
+                break;
+            case TYPE_ICE_CANDIDATE:
+                handler.onIceCandidate(from, readCandidate(frame, frame.remaining()));
+                break;
+            case TYPE_ICE_CANDIDATES:
+                while (frame.hasRemaining()) {
+                    if (frame.remaining() < 2) {
+                        throw new IOException("ice-candidates 帧已截断");
+                    }
+                    int length = ((frame.get() & 0xFF) << 8) | (frame.get() & 0xFF);
+                    if (frame.remaining() < length) {
+                        throw new IOException("ice-candidates 帧已截断");
+                    }
+                    handler.onIceCandidate(from, readCandidate(frame, length));
+                }
+                break;
+            default:
+                handler.onUnknown("binary:" + type);
+                break;
+        }
+    }
+
+    // 空的 sdpMid 视为未知，与旧版消息一样由接收方决定默认值
+    private static SignalingCodec.Candidate readCandidate(ByteBuffer frame, int length) throws IOException {
+        if (length < 2) {
+            throw new IOException("candidate 记录已截断");
+        }
+        int index = frame.get() & 0xFF;
+        int midLength = frame.get() & 0xFF;
+        if (length - 2 < midLength) {
+            throw new IOException("candidate 记录已截断");
+        }
+        String mid = midLength > 0 ? readUtf8(frame, midLength) : null;
+        String sdp = readUtf8(frame, length - 2 - midLength);
+        return new SignalingCodec.Candidate(mid, index == UNKNOWN_MLINE_INDEX ? -1 : index, sdp);
+    }
+
+    private String readSdp(ByteBuffer frame, byte flags) throws IOException {
+        if ((flags & FLAG_DEFLATE) == 0) {
+            if (frame.remaining() > MAX_SDP_BYTES) {
+                throw new IOException("SDP 过长: " + frame.remaining() + " 字节");
+            }
+            return readUtf8(frame, frame.remaining());
+        }
+
+        byte[] compressed = new byte[frame.remaining()];
+        frame.get(compressed);
+        out.reset();
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(SDP_DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        throw new IOException("SDP 压缩数据已截断");
+                    }
+                }
+                if (out.size() + n > MAX_SDP_BYTES) {
+                    throw new IOException("解压后的 SDP 超过 " + MAX_SDP_BYTES + " 字节");
+                }
+                out.write(chunk, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("SDP 解压失败: " + e.getMessage(), e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String readUtf8(ByteBuffer frame, int length) {
+        String value;
+        if (frame.hasArray()) {
+            value = new String(frame.array(), frame.arrayOffset() + frame.position(), length, StandardCharsets.UTF_8);
+            frame.position(frame.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            frame.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
@@ -1,15 +1,18 @@
 package com.example.webrtc_p2p;
 
-import android.util.Log;
-
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import android.os.Handler;
 import android.os.Looper;
 
@@ -18,29 +21,113 @@ public class SignalingClient {
     // 移除硬编码的服务器地址
     // private static final String SIGNALING_SERVER_URL = "ws://192.168.1.100:8080";
     
-    private WebSocketClient webSocketClient;
+    private volatile WebSocketClient webSocketClient;
     private SignalingCallback signalingCallback;
-    private Gson gson;
-    private boolean isConnected = false;
+    private final SignalingCodec codec = new SignalingCodec();
+    private final SignalingBinaryCodec binaryCodec = new SignalingBinaryCodec();
+    private boolean binaryProtocolEnabled = false;
+    // 与服务端协商出的二进制协议版本，0 表示使用 JSON 文本帧
+    private volatile int binaryProtocolVersion = 0;
+    private volatile ConnectionState connectionState = ConnectionState.DISCONNECTED;
+    private volatile String localClientId;
     private String serverIp = "192.168.0.105"; // 默认IP
     private int serverPort = 8081; // 默认端口
 
+    // ICE Candidate 批量发送：在时间窗口或数量上限内合并为一个 ice-candidates 帧
+    public static final long DEFAULT_ICE_BATCH_WINDOW_MS = 50;
+    public static final int DEFAULT_ICE_BATCH_MAX_SIZE = 10;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 按目标客户端分组缓存（key 为 null 表示广播）
+    private final Map<String, List<SignalingCodec.Candidate>> pendingIceCandidates = new LinkedHashMap<>();
+    private final Runnable iceBatchFlushTask = this::flushIceCandidates;
+    private boolean iceBatchingEnabled = false;
+    private long iceBatchWindowMs = DEFAULT_ICE_BATCH_WINDOW_MS;
+    private int iceBatchMaxSize = DEFAULT_ICE_BATCH_MAX_SIZE;
+
+    // 断线重连：指数退避加抖动；断线期间的消息进入有界队列，连接建立后发出（Offer/Answer 优先，见 SignalingScheduler）
+    static final long RECONNECT_BASE_DELAY_MS = 500;
+    static final long RECONNECT_MAX_DELAY_MS = 30_000;
+    static final int OUTBOUND_QUEUE_CAPACITY = 64;
+    // 排队的 Candidate 每个会话每轮最多发送的字节数（约 8 个 Candidate），之后轮到其他会话
+    static final int SESSION_BYTE_BUDGET = 1024;
+    // 记录最近发出的 Candidate 指纹数，用于丢弃重复的 Candidate
+    static final int CANDIDATE_HISTORY_SIZE = 256;
+    private final Runnable reconnectTask = this::openSocket;
+    private final Random random = new Random();
+    private volatile boolean autoReconnect = false;
+    private int reconnectAttempt = 0;
+    private final SignalingScheduler outboundQueue =
+            new SignalingScheduler(OUTBOUND_QUEUE_CAPACITY, SESSION_BYTE_BUDGET, CANDIDATE_HISTORY_SIZE);
+    private boolean flushingOutboundQueue = false;
+    private int droppedOutboundCount = 0;
+    private int duplicateCandidateCount = 0;
+
+    // 会话恢复：服务端下发 sessionToken，连接异常断开后带 token 和已收到的消息数重连，保留原 clientId，
+    // 服务端补发断线期间的消息；服务端在 session-resumed 中告知已收到的本端消息数，本端重发其后的消息。
+    // 主动 disconnect 以正常关闭码（1000）关闭，服务端立即按离开处理
+    static final int SENT_REPLAY_CAPACITY = 64;
+    // 发送失败时主动断开所用的关闭码，服务端保留会话等待恢复
+    static final int CLOSE_CODE_RECONNECT = 4000;
+    private volatile String sessionToken;
+    // 本会话收到的消息数（包括控制消息），只在 WebSocket 读线程上修改
+    private volatile long receivedCount = 0;
+    // 已写入连接的消息及其序号，由 sentMessages 锁保护；写入和编号在同一把锁内完成，保证序号与线上顺序一致
+    private final ArrayDeque<SentMessage> sentMessages = new ArrayDeque<>();
+    private long sentCount = 0;
+    // 通话建立阶段打点，未设置或未开启时不记录
+    private volatile CallSetupTracer tracer;
+
+    public enum ConnectionState {
+        DISCONNECTED,
+        CONNECTING,
+        CONNECTED,
+        RECONNECTING
+    }
+
+    private static final class SentMessage {
+        final long seq;
+        final SignalingScheduler.Message message;
+
+        SentMessage(long seq, SignalingScheduler.Message message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+
+    // from 为发送方客户端 ID，旧版服务端不转发时为 null；
+    // onClientIdAssigned 的 peers 为 null 表示服务端不支持按客户端转发
     public interface SignalingCallback {
-        void onOfferReceived(String sdp);
-        void onAnswerReceived(String sdp);
-        void onIceCandidateReceived(String candidate);
+        void onOfferReceived(String from, String sdp);
+        void onAnswerReceived(String from, String sdp);
+        // sdpMid 为 null、sdpMLineIndex 为 -1 表示对端是只发送 candidate 字符串的旧版客户端
+        void onIceCandidateReceived(String from, String sdpMid, int sdpMLineIndex, String candidate);
+        void onClientIdAssigned(String clientId, List<String> peers);
+        void onPeerJoined(String clientId);
+        void onPeerLeft(String clientId);
         void onConnected();
+        // 断线重连后恢复了原会话，clientId 不变，断线期间的消息已由服务端补发
+        void onSessionResumed(String clientId);
         void onDisconnected();
     }
 
     public SignalingClient() {
-        gson = new Gson();
     }
 
     public void setSignalingCallback(SignalingCallback callback) {
         this.signalingCallback = callback;
     }
 
+    public void setCallSetupTracer(CallSetupTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    private void mark(CallSetupTracer.Phase phase) {
+        CallSetupTracer t = tracer;
+        if (t != null) {
+            t.mark(phase);
+        }
+    }
+
     // 设置服务器IP地址
     public void setServerIp(String ip) {
         this.serverIp = ip;
@@ -57,38 +144,122 @@ public class SignalingClient {
         this.serverPort = port;
     }
     
+    // 设置 ICE Candidate 批量发送（关闭时每个 Candidate 单独发送）
+    public void setIceBatching(boolean enabled) {
+        setIceBatching(enabled, DEFAULT_ICE_BATCH_WINDOW_MS, DEFAULT_ICE_BATCH_MAX_SIZE);
+    }
+
+    public void setIceBatching(boolean enabled, long windowMs, int maxSize) {
+        if (!enabled) {
+            // 关闭前先把已缓存的 Candidate 发出去
+            flushIceCandidates();
+        }
+        synchronized (pendingIceCandidates) {
+            this.iceBatchingEnabled = enabled;
+            this.iceBatchWindowMs = Math.max(0, windowMs);
+            this.iceBatchMaxSize = Math.max(1, maxSize);
+        }
+    }
+    
+    // 启用二进制信令协议（需服务端确认支持，否则继续使用 JSON 文本帧）
+    public void setBinaryProtocolEnabled(boolean enabled) {
+        this.binaryProtocolEnabled = enabled;
+        if (!enabled) {
+            binaryProtocolVersion = 0;
+        }
+    }
+
+    public boolean isBinaryProtocolActive() {
+        return binaryProtocolVersion > 0;
+    }
+
     public boolean isConnected() {
-        return isConnected && webSocketClient != null && webSocketClient.isOpen();
+        WebSocketClient socket = webSocketClient;
+        return connectionState == ConnectionState.CONNECTED && socket != null && socket.isOpen();
+    }
+
+    // 服务器分配的本端客户端 ID，尚未分配时为 null
+    public String getLocalClientId() {
+        return localClientId;
+    }
+
+    public ConnectionState getConnectionState() {
+        return connectionState;
+    }
+
+    // 断开后会带 token 重连并尝试恢复原会话（未被主动 disconnect，且服务端支持会话恢复）
+    public boolean hasResumableSession() {
+        return autoReconnect && sessionToken != null;
     }
 
     public void connect() {
-        if (isConnected && webSocketClient != null) {
-            Log.d(TAG, "WebSocket 已连接，无需重复连接");
+        mainHandler.removeCallbacks(reconnectTask);
+        autoReconnect = true;
+        if (connectionState == ConnectionState.CONNECTED || connectionState == ConnectionState.CONNECTING) {
+            AppLog.d(TAG, "WebSocket 已连接或正在连接，无需重复连接");
             return;
         }
-        
+        reconnectAttempt = 0;
+        openSocket();
+    }
+
+    private void openSocket() {
+        connectionState = ConnectionState.CONNECTING;
         try {
-            URI uri = new URI("ws://" + serverIp + ":" + serverPort);
+            String token = sessionToken;
+            String query = token != null ? "/?resume=" + token + "&received=" + receivedCount : "";
+            URI uri = new URI("ws://" + serverIp + ":" + serverPort + query);
             webSocketClient = new WebSocketClient(uri) {
                 @Override
                 public void onOpen(ServerHandshake handshakedata) {
-                    Log.d(TAG, "WebSocket 连接已建立");
-                    isConnected = true;
-                    if (signalingCallback != null) {
-                        signalingCallback.onConnected();
+                    if (webSocketClient != this) {
+                        return;
+                    }
+                    AppLog.d(TAG, "WebSocket 连接已建立");
+                    mark(CallSetupTracer.Phase.SIGNALING_OPEN);
+                    binaryProtocolVersion = 0;
+                    if (binaryProtocolEnabled) {
+                        sendProtocolHello();
                     }
+                    // 服务端的第一条消息（connection 或 session-resumed）到达后才算连接完成，
+                    // 在此之前的消息继续排队，恢复会话时需要重发的消息排在它们前面
                 }
 
                 @Override
                 public void onMessage(String message) {
-                    Log.d(TAG, "收到消息: " + message);
+                    receivedCount++;
+                    AppLog.v(TAG, "收到消息: {}", message);
                     handleMessage(message);
                 }
 
+                @Override
+                public void onMessage(ByteBuffer bytes) {
+                    receivedCount++;
+                    AppLog.d(TAG, "收到二进制消息: {} 字节", bytes.remaining());
+                    handleBinaryMessage(bytes);
+                }
+
                 @Override
                 public void onClose(int code, String reason, boolean remote) {
-                    Log.d(TAG, "WebSocket 连接已关闭: " + reason + " (code: " + code + ")");
-                    isConnected = false;
+                    if (webSocketClient != this) {
+                        return;
+                    }
+                    AppLog.d(TAG, "WebSocket 连接已关闭: {} (code: {})", reason, code);
+                    binaryProtocolVersion = 0;
+                    if (sessionToken == null) {
+                        // 可以恢复会话时沿用原 clientId
+                        localClientId = null;
+                    }
+                    CallSetupTracer t = tracer;
+                    if (t != null) {
+                        t.clear(CallSetupTracer.Phase.SIGNALING_OPEN);
+                    }
+                    if (autoReconnect) {
+                        connectionState = ConnectionState.RECONNECTING;
+                        scheduleReconnect();
+                    } else {
+                        connectionState = ConnectionState.DISCONNECTED;
+                    }
                     if (signalingCallback != null) {
                         signalingCallback.onDisconnected();
                     }
@@ -96,141 +267,435 @@ public class SignalingClient {
 
                 @Override
                 public void onError(Exception ex) {
-                    Log.e(TAG, "WebSocket 错误: " + ex.getMessage());
-                    isConnected = false;
+                    // 连接失败或异常断开后会继续回调 onClose，由 onClose 负责重连
+                    AppLog.e(TAG, "WebSocket 错误: {}", ex.getMessage());
                 }
             };
             
-            Log.d(TAG, "正在连接到: ws://" + serverIp + ":" + serverPort);
+            AppLog.d(TAG, "正在连接到: ws://{}:{}", serverIp, serverPort);
             webSocketClient.connect();
             
         } catch (URISyntaxException e) {
-            Log.e(TAG, "无效的 WebSocket URL: " + e.getMessage());
-            isConnected = false;
+            AppLog.e(TAG, "无效的 WebSocket URL: {}", e.getMessage());
+            autoReconnect = false;
+            connectionState = ConnectionState.DISCONNECTED;
         } catch (Exception e) {
-            Log.e(TAG, "连接失败: " + e.getMessage());
-            isConnected = false;
+            AppLog.e(TAG, "连接失败: {}", e.getMessage());
+            connectionState = ConnectionState.RECONNECTING;
+            scheduleReconnect();
         }
     }
 
+    // 指数退避 + 随机抖动，避免大量客户端同时重连
+    private void scheduleReconnect() {
+        long backoff = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_BASE_DELAY_MS << Math.min(reconnectAttempt, 16));
+        long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+        reconnectAttempt++;
+        AppLog.d(TAG, "第 {} 次重连将在 {} ms 后进行", reconnectAttempt, delay);
+        mainHandler.removeCallbacks(reconnectTask);
+        mainHandler.postDelayed(reconnectTask, delay);
+    }
+
     public void disconnect() {
-        if (webSocketClient != null && isConnected) {
-            webSocketClient.close();
-            webSocketClient = null;
-            isConnected = false;
+        autoReconnect = false;
+        sessionToken = null;
+        synchronized (sentMessages) {
+            sentMessages.clear();
+            sentCount = 0;
+        }
+        mainHandler.removeCallbacks(reconnectTask);
+        synchronized (pendingIceCandidates) {
+            pendingIceCandidates.clear();
+        }
+        mainHandler.removeCallbacks(iceBatchFlushTask);
+        synchronized (outboundQueue) {
+            outboundQueue.clear();
+            outboundQueue.clearCandidateHistory();
+        }
+        connectionState = ConnectionState.DISCONNECTED;
+        WebSocketClient socket = webSocketClient;
+        webSocketClient = null;
+        if (socket != null) {
+            // 正常关闭码，服务端立即释放会话并通知其他客户端
+            socket.close();
         }
     }
 
-    public void sendOffer(String sdp) {
-        if (!isConnected || webSocketClient == null) {
-            Log.w(TAG, "WebSocket 未连接，尝试重新连接...");
-            // 尝试重新连接
-            connect();
-            // 延迟发送，等待连接建立
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                if (isConnected && webSocketClient != null) {
-                    sendOfferInternal(sdp);
-                } else {
-                    Log.e(TAG, "重连失败，无法发送 Offer");
+    // to 为目标客户端 ID，为 null 时由服务端广播给其他所有客户端
+    public void sendOffer(String to, String sdp) {
+        sendOrQueue(sdpMessage("Offer", to, sdp, socket -> writeOffer(socket, to, sdp)));
+    }
+    
+    private void writeOffer(WebSocketClient socket, String to, String sdp) throws Exception {
+        if (isBinaryProtocolActive()) {
+            byte[] frame = binaryCodec.encodeOffer(to, sdp);
+            socket.send(frame);
+            mark(CallSetupTracer.Phase.OFFER_SENT);
+            AppLog.d(TAG, "发送 Offer（二进制）: {} 字节，SDP {} 字符", frame.length, sdp.length());
+            return;
+        }
+        String jsonMessage = codec.encodeOffer(to, sdp);
+        socket.send(jsonMessage);
+        mark(CallSetupTracer.Phase.OFFER_SENT);
+        AppLog.v(TAG, "发送 Offer: {}", jsonMessage);
+    }
+
+    public void sendAnswer(String to, String sdp) {
+        sendOrQueue(sdpMessage("Answer", to, sdp, socket -> writeAnswer(socket, to, sdp)));
+    }
+
+    private void writeAnswer(WebSocketClient socket, String to, String sdp) throws Exception {
+        if (isBinaryProtocolActive()) {
+            byte[] frame = binaryCodec.encodeAnswer(to, sdp);
+            socket.send(frame);
+            mark(CallSetupTracer.Phase.ANSWER_SENT);
+            AppLog.d(TAG, "发送 Answer（二进制）: {} 字节，SDP {} 字符", frame.length, sdp.length());
+            return;
+        }
+        String jsonMessage = codec.encodeAnswer(to, sdp);
+        socket.send(jsonMessage);
+        mark(CallSetupTracer.Phase.ANSWER_SENT);
+        AppLog.v(TAG, "发送 Answer: {}", jsonMessage);
+    }
+
+    public void sendIceCandidate(String to, String sdpMid, int sdpMLineIndex, String sdp) {
+        SignalingCodec.Candidate candidate = new SignalingCodec.Candidate(sdpMid, sdpMLineIndex, sdp);
+        String key = SignalingScheduler.candidateKey(to, candidate);
+        synchronized (outboundQueue) {
+            if (!outboundQueue.recordCandidate(key)) {
+                duplicateCandidateCount++;
+                AppLog.d(TAG, "丢弃重复的 ICE Candidate（累计 {} 个）: {}", duplicateCandidateCount, candidate);
+                return;
+            }
+        }
+        boolean batched;
+        boolean flushNow = false;
+        synchronized (pendingIceCandidates) {
+            batched = iceBatchingEnabled;
+            if (batched) {
+                if (pendingIceCandidates.isEmpty()) {
+                    // 窗口内第一个 Candidate 启动定时器
+                    mainHandler.postDelayed(iceBatchFlushTask, iceBatchWindowMs);
+                }
+                List<SignalingCodec.Candidate> pending = pendingIceCandidates.get(to);
+                if (pending == null) {
+                    pending = new ArrayList<>();
+                    pendingIceCandidates.put(to, pending);
                 }
-            }, 1000);
+                pending.add(candidate);
+                flushNow = pending.size() >= iceBatchMaxSize;
+            }
+        }
+        if (!batched) {
+            sendOrQueue(candidateMessage(to, Collections.singletonList(candidate)));
+        } else if (flushNow) {
+            flushIceCandidates();
+        }
+    }
+
+    // 立即发送已缓存的 Candidate（例如 ICE 收集完成时）
+    public void flushIceCandidates() {
+        mainHandler.removeCallbacks(iceBatchFlushTask);
+        List<Map.Entry<String, List<SignalingCodec.Candidate>>> batches;
+        synchronized (pendingIceCandidates) {
+            if (pendingIceCandidates.isEmpty()) {
+                return;
+            }
+            batches = new ArrayList<>(pendingIceCandidates.entrySet());
+            pendingIceCandidates.clear();
+        }
+
+        for (Map.Entry<String, List<SignalingCodec.Candidate>> entry : batches) {
+            String to = entry.getKey();
+            sendOrQueue(candidateMessage(to, entry.getValue()));
+        }
+    }
+
+    private static SignalingScheduler.Message sdpMessage(String label, String to, String sdp,
+                                                         SignalingScheduler.FrameWriter writer) {
+        return new SignalingScheduler.Message(label, SignalingScheduler.Priority.SDP, to, sdp.length(), null, writer);
+    }
+
+    // 单个 Candidate 使用 ice-candidate 帧，多个合并为 ice-candidates 帧
+    private SignalingScheduler.Message candidateMessage(String to, List<SignalingCodec.Candidate> batch) {
+        int sizeBytes = 0;
+        List<String> keys = new ArrayList<>(batch.size());
+        for (SignalingCodec.Candidate candidate : batch) {
+            // 字段名、sdpMid 等的开销按 32 字节估算
+            sizeBytes += candidate.sdp.length() + 32;
+            keys.add(SignalingScheduler.candidateKey(to, candidate));
+        }
+        if (batch.size() == 1) {
+            SignalingCodec.Candidate candidate = batch.get(0);
+            return new SignalingScheduler.Message("ICE Candidate", SignalingScheduler.Priority.CANDIDATE, to,
+                    sizeBytes, keys, socket -> writeIceCandidate(socket, to, candidate));
+        }
+        return new SignalingScheduler.Message("ICE Candidates", SignalingScheduler.Priority.CANDIDATE, to,
+                sizeBytes, keys, socket -> writeIceCandidates(socket, to, batch));
+    }
+
+    private void writeIceCandidates(WebSocketClient socket, String to, List<SignalingCodec.Candidate> batch)
+            throws Exception {
+        if (isBinaryProtocolActive()) {
+            byte[] frame = binaryCodec.encodeIceCandidates(to, batch);
+            socket.send(frame);
+            AppLog.d(TAG, "批量发送 {} 个 ICE Candidate（二进制）: {} 字节", batch.size(), frame.length);
             return;
         }
-        
-        sendOfferInternal(sdp);
+        String jsonMessage = codec.encodeIceCandidates(to, batch);
+        socket.send(jsonMessage);
+        AppLog.v(TAG, "批量发送 {} 个 ICE Candidate: {}", batch.size(), jsonMessage);
     }
-    
-    private void sendOfferInternal(String sdp) {
-        JsonObject message = new JsonObject();
-        message.addProperty("type", "offer");
-        message.addProperty("sdp", sdp);
-        
-        String jsonMessage = gson.toJson(message);
-        try {
-            webSocketClient.send(jsonMessage);
-            Log.d(TAG, "发送 Offer: " + jsonMessage);
-        } catch (Exception e) {
-            Log.e(TAG, "发送 Offer 失败: " + e.getMessage());
-            // 发送失败时尝试重连
-            isConnected = false;
+
+    private void writeIceCandidate(WebSocketClient socket, String to, SignalingCodec.Candidate candidate)
+            throws Exception {
+        if (isBinaryProtocolActive()) {
+            socket.send(binaryCodec.encodeIceCandidate(to, candidate));
+            AppLog.d(TAG, "发送 ICE Candidate（二进制）: {}", candidate);
+            return;
+        }
+        String jsonMessage = codec.encodeIceCandidate(to, candidate);
+        socket.send(jsonMessage);
+        AppLog.v(TAG, "发送 ICE Candidate: {}", jsonMessage);
+    }
+
+    // 已连接且没有积压时直接发送，否则进入发送队列，连接建立后按顺序发出
+    private void sendOrQueue(SignalingScheduler.Message message) {
+        WebSocketClient socket = null;
+        boolean needConnect = false;
+        synchronized (outboundQueue) {
+            if (connectionState == ConnectionState.CONNECTED && !flushingOutboundQueue && outboundQueue.isEmpty()) {
+                socket = webSocketClient;
+            }
+            if (socket == null) {
+                enqueueOutbound(message, false);
+                needConnect = connectionState == ConnectionState.DISCONNECTED;
+            }
+        }
+        if (socket != null) {
+            writeOrRequeue(socket, message);
+        } else if (needConnect) {
+            AppLog.w(TAG, "WebSocket 未连接，{} 已排队，开始连接...", message.label);
             connect();
         }
     }
 
-    public void sendAnswer(String sdp) {
-        if (!isConnected || webSocketClient == null) {
-            Log.w(TAG, "WebSocket 未连接，无法发送 Answer");
-            return;
+    private void flushOutboundQueue(WebSocketClient socket) {
+        synchronized (outboundQueue) {
+            if (outboundQueue.isEmpty()) {
+                return;
+            }
+            AppLog.d(TAG, "发送排队中的 {} 条消息", outboundQueue.size());
+            flushingOutboundQueue = true;
+        }
+        while (true) {
+            SignalingScheduler.Message message;
+            synchronized (outboundQueue) {
+                message = connectionState == ConnectionState.CONNECTED ? outboundQueue.poll() : null;
+                if (message == null) {
+                    flushingOutboundQueue = false;
+                    return;
+                }
+            }
+            if (!writeOrRequeue(socket, message)) {
+                synchronized (outboundQueue) {
+                    flushingOutboundQueue = false;
+                }
+                return;
+            }
         }
-        
-        JsonObject message = new JsonObject();
-        message.addProperty("type", "answer");
-        message.addProperty("sdp", sdp);
-        
-        String jsonMessage = gson.toJson(message);
+    }
+
+    private boolean writeOrRequeue(WebSocketClient socket, SignalingScheduler.Message message) {
         try {
-            webSocketClient.send(jsonMessage);
-            Log.d(TAG, "发送 Answer: " + jsonMessage);
+            synchronized (sentMessages) {
+                message.writer.writeTo(socket);
+                sentMessages.addLast(new SentMessage(++sentCount, message));
+                if (sentMessages.size() > SENT_REPLAY_CAPACITY) {
+                    sentMessages.pollFirst();
+                }
+            }
+            return true;
         } catch (Exception e) {
-            Log.e(TAG, "发送 Answer 失败: " + e.getMessage());
-            isConnected = false;
+            AppLog.e(TAG, "发送 {} 失败: {}", message.label, e.getMessage());
+            // 放回队首，关闭连接后由 onClose 触发重连，重连成功后重新发送
+            synchronized (outboundQueue) {
+                enqueueOutbound(message, true);
+            }
+            socket.close(CLOSE_CODE_RECONNECT, "发送失败");
+            return false;
         }
     }
 
-    public void sendIceCandidate(String candidate) {
-        if (!isConnected || webSocketClient == null) {
-            Log.w(TAG, "WebSocket 未连接，无法发送 ICE Candidate");
+    // 收到服务端的第一条消息：连接可用，按顺序发出排队的消息
+    private void onSessionEstablished(WebSocketClient socket) {
+        connectionState = ConnectionState.CONNECTED;
+        reconnectAttempt = 0;
+        flushOutboundQueue(socket);
+    }
+
+    // 服务端只收到了前 received 条消息，其后已写入旧连接的消息放回队首重发
+    private void requeueUnacknowledged(long received) {
+        synchronized (sentMessages) {
+            SentMessage oldest = sentMessages.peekFirst();
+            if (oldest != null && oldest.seq > received + 1) {
+                AppLog.w(TAG, "有 {} 条消息已不在重发缓存中，无法重发", oldest.seq - received - 1);
+            }
+            int requeued = 0;
+            synchronized (outboundQueue) {
+                // 从最新的开始放回各自队列的队首，保持同类消息的原顺序；重发数量不超过 SENT_REPLAY_CAPACITY，不受队列容量限制
+                while (!sentMessages.isEmpty() && sentMessages.peekLast().seq > received) {
+                    outboundQueue.addFirst(sentMessages.pollLast().message);
+                    requeued++;
+                }
+            }
+            sentCount = received;
+            if (requeued > 0) {
+                AppLog.d(TAG, "服务端未收到 {} 条消息，重新发送", requeued);
+            }
+        }
+    }
+
+    // 调用方需持有 outboundQueue 锁；队列满时由 SignalingScheduler 选择丢弃的消息并计数
+    private void enqueueOutbound(SignalingScheduler.Message message, boolean first) {
+        if (first) {
+            outboundQueue.addFirst(message);
             return;
         }
-        
-        JsonObject message = new JsonObject();
-        message.addProperty("type", "ice-candidate");
-        message.addProperty("candidate", candidate);
-        
-        String jsonMessage = gson.toJson(message);
+        SignalingScheduler.Message dropped = outboundQueue.add(message);
+        if (dropped != null) {
+            droppedOutboundCount++;
+            AppLog.w(TAG, "发送队列已满，丢弃 {}（累计丢弃 {} 条）", dropped.label, droppedOutboundCount);
+        }
+    }
+
+    public int getDroppedOutboundCount() {
+        synchronized (outboundQueue) {
+            return droppedOutboundCount;
+        }
+    }
+
+    // 因最近已发送过而被丢弃的 ICE Candidate 数
+    public int getDuplicateCandidateCount() {
+        synchronized (outboundQueue) {
+            return duplicateCandidateCount;
+        }
+    }
+
+    private void sendProtocolHello() {
         try {
-            webSocketClient.send(jsonMessage);
-            Log.d(TAG, "发送 ICE Candidate: " + jsonMessage);
+            webSocketClient.send(codec.encodeProtocolHello(SignalingBinaryCodec.VERSION));
+            AppLog.d(TAG, "发送二进制协议协商请求，版本: {}", SignalingBinaryCodec.VERSION);
         } catch (Exception e) {
-            Log.e(TAG, "发送 ICE Candidate 失败: " + e.getMessage());
-            isConnected = false;
+            AppLog.e(TAG, "发送协议协商请求失败: {}", e.getMessage());
+        }
+    }
+
+    private void handleBinaryMessage(ByteBuffer bytes) {
+        try {
+            binaryCodec.decode(bytes, messageHandler);
+        } catch (Exception e) {
+            AppLog.e(TAG, "解析二进制消息失败: {}", e.getMessage());
         }
     }
 
     private void handleMessage(String message) {
         try {
-            JsonObject jsonMessage = gson.fromJson(message, JsonObject.class);
-            String type = jsonMessage.get("type").getAsString();
-            
-            switch (type) {
-                case "offer":
-                    if (signalingCallback != null) {
-                        String sdp = jsonMessage.get("sdp").getAsString();
-                        signalingCallback.onOfferReceived(sdp);
-                    }
-                    break;
-                    
-                case "answer":
-                    if (signalingCallback != null) {
-                        String sdp = jsonMessage.get("sdp").getAsString();
-                        signalingCallback.onAnswerReceived(sdp);
-                    }
-                    break;
-                    
-                case "ice-candidate":
-                    if (signalingCallback != null) {
-                        String candidate = jsonMessage.get("candidate").getAsString();
-                        signalingCallback.onIceCandidateReceived(candidate);
-                    }
-                    break;
-                    
-                default:
-                    Log.w(TAG, "未知的消息类型: " + type);
-                    break;
-            }
-            
+            codec.decode(message, messageHandler);
         } catch (Exception e) {
-            Log.e(TAG, "解析消息失败: " + e.getMessage());
+            AppLog.e(TAG, "解析消息失败: {}", e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    // 解码后的消息分发到 SignalingCallback
+    private final SignalingCodec.MessageHandler messageHandler = new SignalingCodec.MessageHandler() {
+        @Override
+        public void onOffer(String from, String sdp) {
+            if (signalingCallback != null) {
+                signalingCallback.onOfferReceived(from, sdp);
+            }
+        }
+
+        @Override
+        public void onAnswer(String from, String sdp) {
+            mark(CallSetupTracer.Phase.ANSWER_RECEIVED);
+            if (signalingCallback != null) {
+                signalingCallback.onAnswerReceived(from, sdp);
+            }
+        }
+
+        @Override
+        public void onIceCandidate(String from, SignalingCodec.Candidate candidate) {
+            if (signalingCallback != null) {
+                signalingCallback.onIceCandidateReceived(from, candidate.sdpMid, candidate.sdpMLineIndex, candidate.sdp);
+            }
+        }
+
+        @Override
+        public void onConnection(String clientId, List<String> peers, String token) {
+            if (sessionToken != null) {
+                AppLog.w(TAG, "无法恢复会话，服务端分配了新的客户端ID");
+            }
+            // 新会话：connection 是服务端发来的第一条消息，旧连接上已发出的消息不再重发
+            sessionToken = token;
+            receivedCount = 1;
+            synchronized (sentMessages) {
+                sentMessages.clear();
+                sentCount = 0;
+            }
+            synchronized (outboundQueue) {
+                outboundQueue.clearCandidateHistory();
+            }
+            localClientId = clientId;
+            AppLog.d(TAG, "服务器分配的客户端ID: {}，在线客户端: {}", clientId, peers);
+            onSessionEstablished(webSocketClient);
+            if (signalingCallback != null) {
+                signalingCallback.onConnected();
+                signalingCallback.onClientIdAssigned(clientId, peers);
+            }
+        }
+
+        @Override
+        public void onSessionResumed(String clientId, long received, long seq) {
+            // 服务端补发的消息已在这条之前到达；丢失的控制消息不补发，按服务端的计数校准
+            receivedCount = seq;
+            localClientId = clientId;
+            AppLog.d(TAG, "已恢复会话，客户端ID: {}", clientId);
+            requeueUnacknowledged(received);
+            onSessionEstablished(webSocketClient);
+            if (signalingCallback != null) {
+                signalingCallback.onSessionResumed(clientId);
+            }
+        }
+
+        @Override
+        public void onPeerJoined(String clientId) {
+            if (signalingCallback != null) {
+                signalingCallback.onPeerJoined(clientId);
+            }
+        }
+
+        @Override
+        public void onPeerLeft(String clientId) {
+            if (signalingCallback != null) {
+                signalingCallback.onPeerLeft(clientId);
+            }
+        }
+
+        @Override
+        public void onProtocolAck(int binaryVersion) {
+            if (binaryProtocolEnabled && binaryVersion == SignalingBinaryCodec.VERSION) {
+                binaryProtocolVersion = binaryVersion;
+                AppLog.d(TAG, "已启用二进制信令协议，版本: {}", binaryVersion);
+            } else {
+                binaryProtocolVersion = 0;
+                AppLog.d(TAG, "服务端不支持二进制信令协议，继续使用 JSON");
+            }
+        }
+
+        @Override
+        public void onUnknown(String type) {
+            AppLog.w(TAG, "未知的消息类型: {}", type);
+        }
+    };
+}
@@ -0,0 +1,310 @@
+package com.example.webrtc_p2p;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+// 信令消息编解码器：基于 Gson 流式 API，不构建 JsonObject 树
+// 线上格式与原先 JsonObject + gson.toJson 的消息保持一致
+// 发送时可带 to（目标客户端 ID，为 null 时由服务端广播），服务端转发时会填入 from
+public class SignalingCodec {
+    public static final String TYPE_OFFER = "offer";
+    public static final String TYPE_ANSWER = "answer";
+    public static final String TYPE_ICE_CANDIDATE = "ice-candidate";
+    public static final String TYPE_ICE_CANDIDATES = "ice-candidates";
+    // 二进制协议版本协商：客户端发送 hello，服务端回复 ack（binaryVersion 为 0 表示不支持）
+    public static final String TYPE_PROTOCOL_HELLO = "protocol-hello";
+    public static final String TYPE_PROTOCOL_ACK = "protocol-ack";
+    // 服务端下发：分配的客户端 ID 和当前在线的其他客户端，以及之后的加入/离开通知
+    public static final String TYPE_CONNECTION = "connection";
+    public static final String TYPE_PEER_JOINED = "peer-joined";
+    public static final String TYPE_PEER_LEFT = "peer-left";
+    // 服务端下发：带 sessionToken 重连后恢复了原会话，received 为服务端已收到的本端消息数，
+    // seq 为连同这条在内本端应已收到的消息数
+    public static final String TYPE_SESSION_RESUMED = "session-resumed";
+
+    // 编码缓冲区复用，避免每条消息重新分配
+    private final StringWriter buffer = new StringWriter(4096);
+
+    // ICE Candidate 及其所属的 m 行；旧版客户端只发送 candidate 字符串，此时 sdpMid 为 null、sdpMLineIndex 为 -1
+    public static final class Candidate {
+        public final String sdpMid;
+        public final int sdpMLineIndex;
+        public final String sdp;
+
+        public Candidate(String sdpMid, int sdpMLineIndex, String sdp) {
+            this.sdpMid = sdpMid;
+            this.sdpMLineIndex = sdpMLineIndex;
+            this.sdp = sdp;
+        }
+
+        @Override
+        public String toString() {
+            return sdpMid + "/" + sdpMLineIndex + " " + sdp;
+        }
+    }
+
+    public interface MessageHandler {
+        void onOffer(String from, String sdp);
+        void onAnswer(String from, String sdp);
+        void onIceCandidate(String from, Candidate candidate);
+        void onProtocolAck(int binaryVersion);
+        // sessionToken 用于断线后恢复会话，旧版服务端不下发时为 null
+        void onConnection(String clientId, List<String> peers, String sessionToken);
+        void onSessionResumed(String clientId, long received, long seq);
+        void onPeerJoined(String clientId);
+        void onPeerLeft(String clientId);
+        void onUnknown(String type);
+    }
+
+    public synchronized String encodeOffer(String to, String sdp) throws IOException {
+        return encodeSdp(TYPE_OFFER, to, sdp);
+    }
+
+    public synchronized String encodeAnswer(String to, String sdp) throws IOException {
+        return encodeSdp(TYPE_ANSWER, to, sdp);
+    }
+
+    // 字段名与浏览器的 RTCIceCandidateInit 一致，网页端可直接传给 addIceCandidate
+    public synchronized String encodeIceCandidate(String to, Candidate candidate) throws IOException {
+        JsonWriter writer = beginMessage(TYPE_ICE_CANDIDATE, to);
+        writeCandidateFields(writer, candidate);
+        return endMessage(writer);
+    }
+
+    public synchronized String encodeIceCandidates(String to, List<Candidate> candidates) throws IOException {
+        JsonWriter writer = beginMessage(TYPE_ICE_CANDIDATES, to);
+        writer.name("candidates").beginArray();
+        for (Candidate candidate : candidates) {
+            writer.beginObject();
+            writeCandidateFields(writer, candidate);
+            writer.endObject();
+        }
+        writer.endArray();
+        return endMessage(writer);
+    }
+
+    private static void writeCandidateFields(JsonWriter writer, Candidate candidate) throws IOException {
+        writer.name("candidate").value(candidate.sdp);
+        if (candidate.sdpMid != null) {
+            writer.name("sdpMid").value(candidate.sdpMid);
+        }
+        if (candidate.sdpMLineIndex >= 0) {
+            writer.name("sdpMLineIndex").value(candidate.sdpMLineIndex);
+        }
+    }
+
+    public synchronized String encodeProtocolHello(int binaryVersion) throws IOException {
+        JsonWriter writer = beginMessage(TYPE_PROTOCOL_HELLO, null);
+        writer.name("binaryVersion").value(binaryVersion);
+        return endMessage(writer);
+    }
+
+    private String encodeSdp(String type, String to, String sdp) throws IOException {
+        JsonWriter writer = beginMessage(type, to);
+        writer.name("sdp").value(sdp);
+        return endMessage(writer);
+    }
+
+    private JsonWriter beginMessage(String type, String to) throws IOException {
+        buffer.getBuffer().setLength(0);
+        JsonWriter writer = new JsonWriter(buffer);
+        // SDP 中大量的 '=' 无需做 HTML 转义，接收端解析结果不变
+        writer.setHtmlSafe(false);
+        writer.beginObject();
+        writer.name("type").value(type);
+        if (to != null) {
+            writer.name("to").value(to);
+        }
+        return writer;
+    }
+
+    private String endMessage(JsonWriter writer) throws IOException {
+        writer.endObject();
+        writer.flush();
+        return buffer.toString();
+    }
+
+    // 逐个 token 读取顶层字段，读完后按 type 分发；未知字段直接跳过
+    public void decode(String message, MessageHandler handler) throws IOException {
+        String type = null;
+        String from = null;
+        String sdp = null;
+        String candidate = null;
+        String sdpMid = null;
+        int sdpMLineIndex = -1;
+        String clientId = null;
+        List<Candidate> candidates = null;
+        List<String> peers = null;
+        int binaryVersion = 0;
+        String sessionToken = null;
+        long received = 0;
+        long seq = 0;
+
+        JsonReader reader = new JsonReader(new StringReader(message));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    type = nextStringOrNull(reader);
+                    break;
+                case "from":
+                    // 服务端的客户端 ID 是数字，统一按字符串处理
+                    from = nextStringOrNull(reader);
+                    break;
+                case "sdp":
+                    sdp = nextStringOrNull(reader);
+                    break;
+                case "candidate":
+                    candidate = nextStringOrNull(reader);
+                    break;
+                case "sdpMid":
+                    sdpMid = nextStringOrNull(reader);
+                    break;
+                case "sdpMLineIndex":
+                    sdpMLineIndex = nextIntOrDefault(reader, -1);
+                    break;
+                case "candidates":
+                    candidates = nextCandidateArray(reader);
+                    break;
+                case "clientId":
+                    clientId = nextStringOrNull(reader);
+                    break;
+                case "peers":
+                    peers = nextStringArray(reader);
+                    break;
+                case "binaryVersion":
+                    binaryVersion = reader.nextInt();
+                    break;
+                case "sessionToken":
+                    sessionToken = nextStringOrNull(reader);
+                    break;
+                case "received":
+                    received = reader.nextLong();
+                    break;
+                case "seq":
+                    seq = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (type == null) {
+            throw new IOException("消息缺少 type 字段");
+        }
+
+        switch (type) {
+            case TYPE_OFFER:
+                handler.onOffer(from, require(sdp, "sdp"));
+                break;
+            case TYPE_ANSWER:
+                handler.onAnswer(from, require(sdp, "sdp"));
+                break;
+            case TYPE_ICE_CANDIDATE:
+                handler.onIceCandidate(from, new Candidate(sdpMid, sdpMLineIndex, require(candidate, "candidate")));
+                break;
+            case TYPE_ICE_CANDIDATES:
+                for (Candidate c : require(candidates, "candidates")) {
+                    handler.onIceCandidate(from, c);
+                }
+                break;
+            case TYPE_PROTOCOL_ACK:
+                handler.onProtocolAck(binaryVersion);
+                break;
+            case TYPE_CONNECTION:
+                // 旧版服务端不下发 peers，此时为 null（不支持按客户端转发）
+                handler.onConnection(require(clientId, "clientId"), peers, sessionToken);
+                break;
+            case TYPE_SESSION_RESUMED:
+                handler.onSessionResumed(require(clientId, "clientId"), received, seq);
+                break;
+            case TYPE_PEER_JOINED:
+                handler.onPeerJoined(require(clientId, "clientId"));
+                break;
+            case TYPE_PEER_LEFT:
+                handler.onPeerLeft(require(clientId, "clientId"));
+                break;
+            default:
+                handler.onUnknown(type);
+                break;
+        }
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static int nextIntOrDefault(JsonReader reader, int defaultValue) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return defaultValue;
+        }
+        return reader.nextInt();
+    }
+
+    // 数组元素为 {candidate, sdpMid, sdpMLineIndex}；旧版客户端发送的是 candidate 字符串
+    private static List<Candidate> nextCandidateArray(JsonReader reader) throws IOException {
+        List<Candidate> values = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.STRING) {
+                values.add(new Candidate(null, -1, reader.nextString()));
+                continue;
+            }
+            String sdp = null;
+            String sdpMid = null;
+            int sdpMLineIndex = -1;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "candidate":
+                        sdp = nextStringOrNull(reader);
+                        break;
+                    case "sdpMid":
+                        sdpMid = nextStringOrNull(reader);
+                        break;
+                    case "sdpMLineIndex":
+                        sdpMLineIndex = nextIntOrDefault(reader, -1);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            values.add(new Candidate(sdpMid, sdpMLineIndex, require(sdp, "candidate")));
+        }
+        reader.endArray();
+        return values;
+    }
+
+    private static List<String> nextStringArray(JsonReader reader) throws IOException {
+        List<String> values = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            values.add(reader.nextString());
+        }
+        reader.endArray();
+        return values;
+    }
+
+    private static <T> T require(T value, String field) throws IOException {
+        if (value == null) {
+            throw new IOException("消息缺少 " + field + " 字段");
+        }
+        return value;
+    }
+}
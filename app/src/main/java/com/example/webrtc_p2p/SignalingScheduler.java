@@ -0,0 +1,204 @@
+package com.example.webrtc_p2p;
+
+import org.java_websocket.client.WebSocketClient;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// SignalingClient 的发送队列：Offer/Answer 先于 ICE Candidate 发出；Candidate 按目标客户端分队列，
+// 以每轮 sessionByteBudget 字节轮流发送（deficit round robin），一个 Candidate 很多的会话不会长时间占住连接。
+// 另外记录最近发出的 Candidate 指纹，GATHER_CONTINUALLY 重新收集到的相同 Candidate 不再发送。
+// 非线程安全，由 SignalingClient 在持有本对象锁时访问
+final class SignalingScheduler {
+    // 枚举顺序即发送顺序
+    enum Priority {
+        SDP,
+        CANDIDATE
+    }
+
+    interface FrameWriter {
+        void writeTo(WebSocketClient socket) throws Exception;
+    }
+
+    static final class Message {
+        final String label;
+        final Priority priority;
+        // 目标客户端 ID，null 为广播
+        final String to;
+        // 估算的帧大小，用于按会话分配发送预算
+        final int sizeBytes;
+        // 消息包含的 Candidate 指纹，因队列满被丢弃时从去重记录中移除，之后重新收集到的相同 Candidate 仍会发送
+        final List<String> candidateKeys;
+        final FrameWriter writer;
+
+        Message(String label, Priority priority, String to, int sizeBytes, List<String> candidateKeys,
+                FrameWriter writer) {
+            this.label = label;
+            this.priority = priority;
+            this.to = to;
+            this.sizeBytes = sizeBytes;
+            this.candidateKeys = candidateKeys;
+            this.writer = writer;
+        }
+    }
+
+    private static final class TargetQueue {
+        final String to;
+        final ArrayDeque<Message> messages = new ArrayDeque<>();
+        int queuedBytes;
+        // 本轮剩余的发送预算
+        int deficit;
+
+        TargetQueue(String to) {
+            this.to = to;
+        }
+    }
+
+    private final int capacity;
+    private final int sessionByteBudget;
+    private final ArrayDeque<Message> sdpMessages = new ArrayDeque<>();
+    // key 为 null 表示广播
+    private final Map<String, TargetQueue> candidateQueues = new HashMap<>();
+    // 有待发 Candidate 的会话，队首为当前轮到的会话
+    private final ArrayDeque<TargetQueue> activeTargets = new ArrayDeque<>();
+    private final Map<String, Boolean> recentCandidates;
+    private int size;
+
+    SignalingScheduler(int capacity, int sessionByteBudget, int candidateHistorySize) {
+        this.capacity = capacity;
+        this.sessionByteBudget = sessionByteBudget;
+        this.recentCandidates = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > candidateHistorySize;
+            }
+        };
+    }
+
+    static String candidateKey(String to, SignalingCodec.Candidate candidate) {
+        return to + "\n" + candidate.sdpMid + "\n" + candidate.sdpMLineIndex + "\n" + candidate.sdp;
+    }
+
+    // 记录即将发送的 Candidate；最近已发送过（或已在队列中）时返回 false。
+    // Candidate 字符串带 ufrag，ICE restart 或新建 PeerConnection 后的 Candidate 不会被误判为重复
+    boolean recordCandidate(String key) {
+        return recentCandidates.put(key, Boolean.TRUE) == null;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // 队列满时先丢弃排队字节最多的会话中最旧的 Candidate，没有 Candidate 时丢弃最旧的 Offer/Answer；返回被丢弃的消息
+    Message add(Message message) {
+        Message dropped = null;
+        if (size >= capacity) {
+            dropped = dropOne();
+        }
+        enqueue(message, false);
+        return dropped;
+    }
+
+    // 放回队首（发送失败或服务端未收到后重发），不受容量限制
+    void addFirst(Message message) {
+        enqueue(message, true);
+    }
+
+    Message poll() {
+        if (size == 0) {
+            return null;
+        }
+        size--;
+        Message sdp = sdpMessages.pollFirst();
+        if (sdp != null) {
+            return sdp;
+        }
+        while (true) {
+            TargetQueue target = activeTargets.peekFirst();
+            Message head = target.messages.peekFirst();
+            if (target.deficit >= head.sizeBytes) {
+                target.deficit -= head.sizeBytes;
+                return removeHead(target);
+            }
+            // 本轮预算用完，轮到下一个会话；超过预算的大消息会在累积几轮后发出
+            activeTargets.pollFirst();
+            target.deficit += sessionByteBudget;
+            activeTargets.addLast(target);
+        }
+    }
+
+    void clear() {
+        sdpMessages.clear();
+        candidateQueues.clear();
+        activeTargets.clear();
+        size = 0;
+    }
+
+    // 新的信令会话开始时清空，之前发出的 Candidate 不一定被对方收到
+    void clearCandidateHistory() {
+        recentCandidates.clear();
+    }
+
+    private void enqueue(Message message, boolean first) {
+        size++;
+        if (message.priority == Priority.SDP) {
+            if (first) {
+                sdpMessages.addFirst(message);
+            } else {
+                sdpMessages.addLast(message);
+            }
+            return;
+        }
+        TargetQueue target = candidateQueues.get(message.to);
+        if (target == null) {
+            target = new TargetQueue(message.to);
+            candidateQueues.put(message.to, target);
+            activeTargets.addLast(target);
+        }
+        if (first) {
+            target.messages.addFirst(message);
+        } else {
+            target.messages.addLast(message);
+        }
+        target.queuedBytes += message.sizeBytes;
+    }
+
+    private Message dropOne() {
+        TargetQueue largest = null;
+        for (TargetQueue target : activeTargets) {
+            if (largest == null || target.queuedBytes > largest.queuedBytes) {
+                largest = target;
+            }
+        }
+        Message dropped;
+        if (largest != null) {
+            dropped = removeHead(largest);
+        } else {
+            dropped = sdpMessages.pollFirst();
+        }
+        size--;
+        if (dropped.candidateKeys != null) {
+            for (String key : dropped.candidateKeys) {
+                recentCandidates.remove(key);
+            }
+        }
+        return dropped;
+    }
+
+    private Message removeHead(TargetQueue target) {
+        Message message = target.messages.pollFirst();
+        target.queuedBytes -= message.sizeBytes;
+        if (target.messages.isEmpty()) {
+            activeTargets.remove(target);
+            candidateQueues.remove(target.to);
+        }
+        return message;
+    }
+}
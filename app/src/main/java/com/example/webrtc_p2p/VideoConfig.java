@@ -0,0 +1,143 @@
+package com.example.webrtc_p2p;
+
+import android.content.Context;
+
+import org.webrtc.Camera1Enumerator;
+import org.webrtc.Camera2Enumerator;
+import org.webrtc.CameraEnumerator;
+import org.webrtc.FileVideoCapturer;
+import org.webrtc.RtpParameters;
+import org.webrtc.VideoCapturer;
+
+import java.io.IOException;
+
+// 视频通话配置：采集源（前/后置摄像头或 y4m 文件）、采集分辨率和帧率、发送码率上限和降级策略
+// 采集值是上限，实际发送的分辨率和帧率由 WebRTC 按 CPU 负载和带宽估计自动下调（degradationPreference）；
+// 由 WebRTCManager.setVideoConfig 设置，为 null 时只有音频
+public final class VideoConfig {
+    public enum Source {
+        FRONT_CAMERA,
+        BACK_CAMERA,
+        // FileVideoCapturer 循环读取 y4m 文件，用于没有摄像头或需要可重复输入的测试
+        FILE
+    }
+
+    // 前置摄像头 640x480@30，最高 1 Mbps，分辨率和帧率都可以下调
+    public static final VideoConfig DEFAULT = builder().build();
+
+    public final Source source;
+    // source 为 FILE 时的 y4m 文件路径
+    public final String filePath;
+    public final int width;
+    public final int height;
+    public final int fps;
+    // 0 为不限制，由带宽估计决定
+    public final int maxBitrateBps;
+    public final RtpParameters.DegradationPreference degradationPreference;
+
+    private VideoConfig(Builder builder) {
+        this.source = builder.source;
+        this.filePath = builder.filePath;
+        this.width = builder.width;
+        this.height = builder.height;
+        this.fps = builder.fps;
+        this.maxBitrateBps = builder.maxBitrateBps;
+        this.degradationPreference = builder.degradationPreference;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // 用 y4m 文件代替摄像头，其余同 DEFAULT
+    public static VideoConfig fromFile(String path) {
+        return builder().setSource(Source.FILE).setFilePath(path).build();
+    }
+
+    // 摄像头采集到纹理（Camera2 总是如此，Camera1 指定 captureToTexture），之后由 SurfaceTextureHelper 交给编码器
+    VideoCapturer createCapturer(Context context) throws IOException {
+        if (source == Source.FILE) {
+            return new FileVideoCapturer(filePath);
+        }
+        CameraEnumerator enumerator = Camera2Enumerator.isSupported(context)
+                ? new Camera2Enumerator(context)
+                : new Camera1Enumerator(true);
+        String fallback = null;
+        for (String name : enumerator.getDeviceNames()) {
+            boolean front = enumerator.isFrontFacing(name);
+            if (front == (source == Source.FRONT_CAMERA)) {
+                return enumerator.createCapturer(name, null);
+            }
+            if (fallback == null) {
+                fallback = name;
+            }
+        }
+        if (fallback == null) {
+            throw new IOException("没有可用的摄像头");
+        }
+        AppLog.w("VideoConfig", "没有{}摄像头，使用 {}", source == Source.FRONT_CAMERA ? "前置" : "后置", fallback);
+        return enumerator.createCapturer(fallback, null);
+    }
+
+    @Override
+    public String toString() {
+        String input = source == Source.FILE ? filePath : source.name();
+        return input + " " + width + "x" + height + "@" + fps + "，" + degradationPreference;
+    }
+
+    public static final class Builder {
+        private Source source = Source.FRONT_CAMERA;
+        private String filePath;
+        private int width = 640;
+        private int height = 480;
+        private int fps = 30;
+        private int maxBitrateBps = 1_000_000;
+        private RtpParameters.DegradationPreference degradationPreference =
+                RtpParameters.DegradationPreference.BALANCED;
+
+        private Builder() {
+        }
+
+        public Builder setSource(Source source) {
+            this.source = source;
+            return this;
+        }
+
+        public Builder setFilePath(String filePath) {
+            this.filePath = filePath;
+            return this;
+        }
+
+        public Builder setResolution(int width, int height) {
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        public Builder setFps(int fps) {
+            this.fps = fps;
+            return this;
+        }
+
+        public Builder setMaxBitrateBps(int maxBitrateBps) {
+            this.maxBitrateBps = maxBitrateBps;
+            return this;
+        }
+
+        // BALANCED 同时下调分辨率和帧率；MAINTAIN_FRAMERATE 只降分辨率，MAINTAIN_RESOLUTION 只降帧率
+        public Builder setDegradationPreference(RtpParameters.DegradationPreference preference) {
+            this.degradationPreference = preference;
+            return this;
+        }
+
+        public VideoConfig build() {
+            if (source == Source.FILE && (filePath == null || filePath.isEmpty())) {
+                throw new IllegalArgumentException("文件采集需要指定 y4m 文件路径");
+            }
+            if (width <= 0 || height <= 0 || fps <= 0) {
+                throw new IllegalArgumentException("视频采集参数无效");
+            }
+            return new VideoConfig(this);
+        }
+    }
+}
@@ -1,44 +1,174 @@
 package com.example.webrtc_p2p;
 
 import android.content.Context;
-import android.util.Log;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Looper;
 
 import org.webrtc.AudioSource;
 import org.webrtc.AudioTrack;
 import org.webrtc.DataChannel;
-import org.webrtc.EglBase;
 import org.webrtc.IceCandidate;
 import org.webrtc.MediaConstraints;
+import org.webrtc.EglBase;
 import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
 import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpParameters;
+import org.webrtc.RtpSender;
+import org.webrtc.RtpTransceiver;
 import org.webrtc.SessionDescription;
-import org.webrtc.audio.JavaAudioDeviceModule;
+import org.webrtc.VideoSink;
+import org.webrtc.VideoTrack;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
+// 所有会话状态（PeerSession、音频轨道、通话标志等）只在 eventLoop 线程上读写：
+// 信令回调（WebSocket 读线程）、PeerConnection.Observer / SdpObserver 回调（WebRTC 信令线程）
+// 和公开方法（主线程）都投递到 eventLoop 串行执行，不再需要跨线程加锁
 public class WebRTCManager {
     private static final String TAG = "WebRTCManager";
     
     private Context context;
+    private final ExecutorService eventLoop = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "webrtc-manager");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 状态通知合并：每个刷新间隔（约一帧）内只保留最新的状态，最多投递一次
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable statusFlushTask = this::flushStatus;
+    private final Object statusLock = new Object();
+    private String pendingStatus;
+    private boolean statusFlushScheduled = false;
+    // 状态刷新间隔，约为 60Hz 下的一帧。updateStatus 可能在任意线程调用，
+    // 而 Choreographer 只能在主线程获取，这里用延迟投递实现按帧合并
+    private static final long STATUS_FLUSH_INTERVAL_MS = 16;
+
+    // 由 PeerConnectionFactoryHolder 在后台线程初始化后回填
     private PeerConnectionFactory peerConnectionFactory;
-    private PeerConnection peerConnection;
+    private boolean factoryAcquired = false;
+    // 获取当前工厂时是否要求了视频编解码器
+    private boolean factoryVideoRequested = false;
+    // 每次重新获取工厂时递增，丢弃旧请求迟到的 onFactoryReady
+    private int factoryGeneration = 0;
+    // 当前工厂使用的音频设备配置；通话进行中切换（或开启视频需要带视频编解码器的工厂）时记为 pending，通话结束后再重建工厂
+    private AudioDeviceConfig audioDeviceConfig = AudioDeviceConfig.DEFAULT;
+    private boolean factoryRebuildPending = false;
+    private boolean callPendingFactory = false;
+    // 多人通话：每个远端客户端一个 PeerSession，共享同一个本地 AudioTrack
+    // 只在 eventLoop 上修改；用 ConcurrentHashMap 是为了 getPeerSessionCount、sendFile 等可以从其他线程读取
+    public static final int MAX_PEER_SESSIONS = 7;
+    private final ConcurrentHashMap<String, PeerSession> peerSessions = new ConcurrentHashMap<>();
+    // 会话还没创建时就到达的 ICE Candidate（例如发送队列重排或信令恢复后重放，Candidate 先于 Offer 到达），
+    // 按远端 ID 缓存，收到 Offer 创建会话后移入会话的待添加队列；只在 eventLoop 上访问，按到达顺序淘汰最早的远端
+    private static final int MAX_ORPHAN_CANDIDATE_PEERS = MAX_PEER_SESSIONS + 1;
+    private final Map<String, List<IceCandidate>> orphanCandidates = new LinkedHashMap<>();
+    // 服务端通知的其他在线客户端；服务端不支持按客户端转发时 peerAddressing 为 false
+    private final Set<String> remotePeers = new HashSet<>();
+    private boolean peerAddressing = false;
+    private boolean callActive = false;
     private AudioSource audioSource;
     private AudioTrack audioTrack;
+    // 视频通话配置，为 null 时只有音频；本地视频轨道与音频轨道一样由所有会话共享，通话开始时才打开摄像头
+    private VideoConfig videoConfig;
+    private LocalVideoCapture localVideo;
+    private volatile VideoSink localVideoSink;
+    private volatile RemoteVideoListener remoteVideoListener;
     private SignalingClient signalingClient;
-    private StatusCallback statusCallback;
+    private volatile StatusCallback statusCallback;
     
-    private EglBase eglBase;
+    // 预热模式：信令连接后提前创建 PeerConnection、挂载音频轨道并预收集 ICE
+    private static final int WARM_STANDBY_CANDIDATE_POOL_SIZE = 2;
+    private boolean warmStandbyEnabled = false;
+    // 通话建立耗时统计（点击通话到连接建立），分冷启动和预热两条路径
+    private long callStartNanos = 0;
+    private boolean callStartedWarm = false;
+    private volatile long lastColdSetupMs = -1;
+    private volatile long lastWarmSetupMs = -1;
+    // 首个远端音频的检测间隔和超时
+    static final long FIRST_AUDIO_POLL_MS = 20;
+    static final long FIRST_AUDIO_TIMEOUT_MS = 10_000;
+    private volatile long lastReusedSetupMs = -1;
+    // 会话复用：通话结束后保留已连接的 PeerConnection、收发器和本地音视频轨道，下一次呼叫同一客户端时只需重新协商方向
+    static final long PARKED_SESSION_TTL_MS = 60_000;
+    private boolean sessionReuseEnabled = false;
+    private final Runnable parkedSessionExpiryTask = () -> post(this::closeExpiredParkedSessions);
+    // 通话建立各阶段打点（默认关闭），与 SignalingClient 共用
+    private final CallSetupTracer setupTracer = new CallSetupTracer();
+    // 本端麦克风录音，通话结束时自动停止；只在 eventLoop 上访问
+    private CallRecorder recorder;
+
+    // 数据传输：所有会话共用一个发送线程，按 bufferedAmount 控制发送节奏
+    private final ExecutorService transferExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "dc-transfer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile DataChannelTransfer.TransferListener transferListener;
+    // 媒体统计采样：连接建立后按固定间隔调用 getStats，未设置监听时不采样
+    private volatile CallStatsSampler.StatsListener statsListener;
+    private long statsIntervalMs = CallStatsSampler.DEFAULT_INTERVAL_MS;
+    // 音频码率自适应：开启后即使没有设置 statsListener 也会采样
+    private boolean adaptiveBitrateEnabled = false;
+    private volatile AudioBitrateController.DecisionListener bitrateDecisionListener;
+    // 连接中断和网络切换后的 ICE restart 恢复
+    private final IceRecoveryEngine iceRecovery = new IceRecoveryEngine(new IceRecoveryEngine.Host() {
+        @Override
+        public void post(Runnable task) {
+            WebRTCManager.this.post(task);
+        }
+
+        @Override
+        public Iterable<PeerSession> sessions() {
+            return peerSessions.values();
+        }
+
+        @Override
+        public boolean restartIce(PeerSession session) {
+            return WebRTCManager.this.restartIce(session);
+        }
+
+        @Override
+        public void onRecoveryFailed(PeerSession session) {
+            updateStatus("连接恢复失败");
+        }
+    });
+    private boolean iceRecoveryEnabled = false;
+    // ICE 服务器和传输策略，对之后创建的 PeerConnection 生效
+    private IceConfig iceConfig = IceConfig.DEFAULT;
+    // 最近一次 ICE 收集的耗时，用于比较不同 IceConfig
+    private volatile long lastIceGatheringMs = -1;
+    // 本地 SDP 的 Opus 参数配置，为 null 时不改写 SDP
+    private AudioProfile audioProfile;
+
     private boolean isInitiator = false;
     private String remoteSessionDescription;
     private String remoteSessionDescriptionType;
 
+    public interface RemoteVideoListener {
+        // 在 WebRTC 信令线程回调；可在此 addSink（例如用 getEglBaseContext 初始化的 SurfaceViewRenderer）
+        void onRemoteVideoTrack(String peerId, VideoTrack track);
+    }
+
     public interface StatusCallback {
+        // 在主线程回调；短时间内的多次状态变化只回调最后一次
         void onStatusChanged(String status);
-        void onLog(String message);
     }
 
     public WebRTCManager(Context context) {
@@ -55,20 +185,77 @@ public class WebRTCManager {
     }
 
     private void initPeerConnectionFactory() {
-        eglBase = EglBase.create();
-        
-        PeerConnectionFactory.InitializationOptions initializationOptions =
-                PeerConnectionFactory.InitializationOptions.builder(context)
-                        .createInitializationOptions();
-        PeerConnectionFactory.initialize(initializationOptions);
+        factoryAcquired = true;
+        int generation = ++factoryGeneration;
+        AudioDeviceConfig config = audioDeviceConfig;
+        factoryVideoRequested = videoConfig != null;
+        PeerConnectionFactoryHolder.acquire(context, config, factoryVideoRequested,
+                new PeerConnectionFactoryHolder.FactoryCallback() {
+                    @Override
+                    public void onFactoryReady(PeerConnectionFactory factory) {
+                        WebRTCManager.this.onFactoryReady(factory, generation);
+                    }
 
-        PeerConnectionFactory.Options options = new PeerConnectionFactory.Options();
-        
-        peerConnectionFactory = PeerConnectionFactory.builder()
-                .setOptions(options)
-                .createPeerConnectionFactory();
-        
-        log("PeerConnectionFactory 初始化完成");
+                    @Override
+                    public void onFactoryFailed(Throwable error) {
+                        WebRTCManager.this.onFactoryFailed(error, generation);
+                    }
+                });
+    }
+
+    // 释放这次获取的引用；下一次开始通话时重新初始化
+    private void onFactoryFailed(Throwable error, int generation) {
+        post(() -> {
+            if (!factoryAcquired || generation != factoryGeneration) {
+                return;
+            }
+            factoryAcquired = false;
+            PeerConnectionFactoryHolder.release();
+            boolean callWasPending = callPendingFactory;
+            callPendingFactory = false;
+            log("PeerConnectionFactory 初始化失败: {}", error.getMessage());
+            updateStatus(callWasPending ? "通话失败：WebRTC 初始化失败" : "WebRTC 初始化失败");
+        });
+    }
+
+    private void onFactoryReady(PeerConnectionFactory factory, int generation) {
+        post(() -> {
+            if (!factoryAcquired || generation != factoryGeneration) {
+                // 初始化完成前已 cleanup，或已按新的音频设备配置重新获取
+                return;
+            }
+            peerConnectionFactory = factory;
+            setupTracer.mark(CallSetupTracer.Phase.FACTORY_INIT);
+            if (videoConfig != null && !factoryVideoRequested) {
+                // 视频是在工厂初始化期间开启的，按带视频编解码器的配置重新获取（待开始的通话在新工厂就绪后继续）
+                factoryRebuildPending = true;
+                applyPendingFactoryConfig();
+                return;
+            }
+            boolean startPendingCall = callPendingFactory;
+            callPendingFactory = false;
+            log("PeerConnectionFactory 初始化完成");
+            if (startPendingCall) {
+                startCallOnLoop();
+            } else if (signalingClient != null && signalingClient.isConnected()) {
+                prepareWarmStandby();
+            }
+        });
+    }
+
+    // 投递到 eventLoop；cleanup 之后的回调直接丢弃
+    private void post(Runnable task) {
+        try {
+            eventLoop.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    AppLog.e(TAG, "事件处理失败", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            AppLog.d(TAG, "WebRTCManager 已释放，忽略事件");
+        }
     }
 
     private void initSignaling() {
@@ -83,23 +270,67 @@ public class WebRTCManager {
     }
 
     private void setupSignalingCallbacks() {
+        signalingClient.setCallSetupTracer(setupTracer);
         signalingClient.setSignalingCallback(new SignalingClient.SignalingCallback() {
             @Override
-            public void onOfferReceived(String sdp) {
-                log("收到 Offer: " + sdp);
-                handleRemoteDescription(sdp, "offer");
+            public void onOfferReceived(String from, String sdp) {
+                post(() -> {
+                    log("收到 Offer（来自 {}）: {}", from, sdp);
+                    handleRemoteDescription(from, sdp, "offer");
+                });
             }
 
             @Override
-            public void onAnswerReceived(String sdp) {
-                log("收到 Answer: " + sdp);
-                handleRemoteDescription(sdp, "answer");
+            public void onAnswerReceived(String from, String sdp) {
+                post(() -> {
+                    log("收到 Answer（来自 {}）: {}", from, sdp);
+                    handleRemoteDescription(from, sdp, "answer");
+                });
             }
 
             @Override
-            public void onIceCandidateReceived(String candidate) {
-                log("收到 ICE Candidate: " + candidate);
-                handleRemoteIceCandidate(candidate);
+            public void onIceCandidateReceived(String from, String sdpMid, int sdpMLineIndex, String candidate) {
+                post(() -> {
+                    log("收到 ICE Candidate（来自 {}）: {}", from, candidate);
+                    handleRemoteIceCandidate(from, sdpMid, sdpMLineIndex, candidate);
+                });
+            }
+
+            @Override
+            public void onClientIdAssigned(String clientId, List<String> peers) {
+                post(() -> {
+                    log("本端客户端ID: {}，在线客户端: {}", clientId, peers);
+                    remotePeers.clear();
+                    peerAddressing = peers != null;
+                    if (peers != null) {
+                        remotePeers.addAll(peers);
+                    }
+                    prepareWarmStandby();
+                });
+            }
+
+            @Override
+            public void onPeerJoined(String clientId) {
+                post(() -> {
+                    log("客户端加入: {}", clientId);
+                    remotePeers.add(clientId);
+                    if (callActive) {
+                        // 通话进行中有新成员加入，主动向其发起 Offer
+                        offerToPeer(clientId);
+                    } else {
+                        prepareWarmStandby();
+                    }
+                });
+            }
+
+            @Override
+            public void onPeerLeft(String clientId) {
+                post(() -> {
+                    log("客户端离开: {}", clientId);
+                    remotePeers.remove(clientId);
+                    orphanCandidates.remove(clientId);
+                    closeSession(clientId);
+                });
             }
 
             @Override
@@ -108,10 +339,25 @@ public class WebRTCManager {
                 updateStatus("信令已连接");
             }
 
+            @Override
+            public void onSessionResumed(String clientId) {
+                // 客户端ID和在线列表不变，断线期间的信令已补发，PeerConnection 不受影响
+                log("信令会话已恢复，客户端ID: {}", clientId);
+                updateStatus("信令已恢复");
+            }
+
             @Override
             public void onDisconnected() {
-                log("信令服务器断开连接");
-                updateStatus("信令已断开");
+                post(() -> {
+                    log("信令服务器断开连接");
+                    if (signalingClient != null && signalingClient.hasResumableSession()) {
+                        // 重连后恢复原会话，保留在线列表，期间其他客户端的加入/离开会补发
+                        updateStatus("信令中断，正在恢复");
+                        return;
+                    }
+                    updateStatus("信令已断开");
+                    remotePeers.clear();
+                });
             }
         });
     }
@@ -120,6 +366,303 @@ public class WebRTCManager {
         this.statusCallback = callback;
     }
 
+    // 开启/关闭 ICE Candidate 批量发送
+    public void setIceCandidateBatching(boolean enabled) {
+        if (signalingClient != null) {
+            signalingClient.setIceBatching(enabled);
+        }
+    }
+
+    public void setIceCandidateBatching(boolean enabled, long windowMs, int maxSize) {
+        if (signalingClient != null) {
+            signalingClient.setIceBatching(enabled, windowMs, maxSize);
+        }
+    }
+
+    // 开启二进制信令协议（服务端不支持时自动回退到 JSON）
+    public void setBinarySignalingEnabled(boolean enabled) {
+        if (signalingClient != null) {
+            signalingClient.setBinaryProtocolEnabled(enabled);
+        }
+    }
+
+    // 设置通话音频配置（如 AudioProfile.LOW_BANDWIDTH_CELLULAR），对之后创建的 Offer/Answer 生效
+    public void setAudioProfile(AudioProfile profile) {
+        post(() -> {
+            audioProfile = profile;
+            if (profile != null && profile.audioDeviceConfig != null
+                    && profile.audioDeviceConfig != audioDeviceConfig) {
+                audioDeviceConfig = profile.audioDeviceConfig;
+                factoryRebuildPending = true;
+                applyPendingFactoryConfig();
+            }
+        });
+    }
+
+    // 音频设备模块和视频编解码器属于工厂，切换配置需要释放当前工厂并按新配置重新获取；通话进行中时推迟到 stopCall
+    private void applyPendingFactoryConfig() {
+        if (!factoryRebuildPending || !factoryAcquired) {
+            return;
+        }
+        if (callActive) {
+            log("通话进行中，工厂配置将在通话结束后生效");
+            return;
+        }
+        factoryRebuildPending = false;
+        log("切换工厂配置，重新创建 PeerConnectionFactory");
+        // 预热的会话和本地音视频轨道都来自旧工厂，先释放；新工厂就绪后会重新预热
+        for (PeerSession session : peerSessions.values()) {
+            session.close();
+        }
+        peerSessions.clear();
+        disposeLocalAudioTrack();
+        disposeLocalVideo();
+        peerConnectionFactory = null;
+        PeerConnectionFactoryHolder.release();
+        initPeerConnectionFactory();
+    }
+
+    // 开启（config 非 null）或关闭视频通话；通话进行中设置时下一次通话生效。
+    // 编解码器属于工厂，当前工厂不带视频编解码器时重新创建工厂
+    public void setVideoConfig(VideoConfig config) {
+        post(() -> {
+            if (config == videoConfig) {
+                return;
+            }
+            videoConfig = config;
+            log("视频配置: {}", config != null ? config : "关闭");
+            if (config != null && peerConnectionFactory != null && !factoryVideoRequested) {
+                // 工厂还在初始化时由 onFactoryReady 处理；通话进行中时推迟到通话结束
+                factoryRebuildPending = true;
+                applyPendingFactoryConfig();
+                return;
+            }
+            if (callActive) {
+                log("通话进行中，视频配置将在下一次通话生效");
+                return;
+            }
+            boolean closed = closeWarmSessions();
+            disposeLocalVideo();
+            if (closed) {
+                prepareWarmStandby();
+            }
+        });
+    }
+
+    // 本地视频预览，设置后对之后创建的视频轨道生效
+    public void setLocalVideoSink(VideoSink sink) {
+        this.localVideoSink = sink;
+    }
+
+    public void setRemoteVideoListener(RemoteVideoListener listener) {
+        this.remoteVideoListener = listener;
+    }
+
+    // 与编解码器共享的 EGL 上下文；渲染器用它初始化后，解码输出的纹理帧可以直接绘制
+    public EglBase.Context getEglBaseContext() {
+        return PeerConnectionFactoryHolder.getEglBase().getEglBaseContext();
+    }
+
+    // 开启预热模式，下一次信令连接成功后生效
+    public void setWarmStandbyEnabled(boolean enabled) {
+        post(() -> warmStandbyEnabled = enabled);
+    }
+
+    public void setTransferListener(DataChannelTransfer.TransferListener listener) {
+        this.transferListener = listener;
+        post(() -> {
+            for (PeerSession session : peerSessions.values()) {
+                DataChannelTransfer transfer = session.getTransfer();
+                if (transfer != null) {
+                    transfer.setTransferListener(listener);
+                }
+            }
+        });
+    }
+
+    // 设置后对新建立的连接生效；传 null 停止所有会话的采样
+    public void setStatsListener(CallStatsSampler.StatsListener listener, long intervalMs) {
+        post(() -> {
+            statsListener = listener;
+            statsIntervalMs = intervalMs;
+            if (listener == null && !adaptiveBitrateEnabled) {
+                stopStatsSamplers();
+            }
+        });
+    }
+
+    // 连接中断（DISCONNECTED 超过宽限期或 FAILED）和 Wi-Fi/移动网络切换时自动 ICE restart，
+    // 沿用现有的 PeerConnection 和音频轨道，不重新建立通话
+    public void setIceRecoveryEnabled(boolean enabled) {
+        post(() -> {
+            iceRecoveryEnabled = enabled;
+            if (enabled) {
+                iceRecovery.start(context);
+            } else {
+                iceRecovery.stop();
+            }
+        });
+    }
+
+    // DISCONNECTED 持续多久后发起 ICE restart
+    public void setIceRecoveryGracePeriodMs(long gracePeriodMs) {
+        post(() -> iceRecovery.setGracePeriodMs(gracePeriodMs));
+    }
+
+    public void setRecoveryListener(IceRecoveryEngine.RecoveryListener listener) {
+        post(() -> iceRecovery.setRecoveryListener(listener));
+    }
+
+    // 最近一次连接恢复用时（从中断到恢复，毫秒），没有发生过时为 -1
+    public long getLastRecoveryMs() {
+        return iceRecovery.getLastRecoveryMs();
+    }
+
+    // 设置 ICE 配置（如 IceConfig.LAN）；已预热但未开始通话的 PeerConnection 按新配置重新创建
+    public void setIceConfig(IceConfig config) {
+        post(() -> {
+            IceConfig newConfig = config != null ? config : IceConfig.DEFAULT;
+            if (newConfig == iceConfig) {
+                return;
+            }
+            iceConfig = newConfig;
+            log("ICE 配置: {}", newConfig);
+            if (callActive) {
+                return;
+            }
+            if (closeWarmSessions()) {
+                prepareWarmStandby();
+            }
+        });
+    }
+
+    // 关闭按旧配置创建的预热会话，返回是否关闭了会话
+    private boolean closeWarmSessions() {
+        List<String> warmIds = new ArrayList<>();
+        for (PeerSession session : peerSessions.values()) {
+            if (session.isWarm()) {
+                warmIds.add(session.getRemoteId());
+            }
+        }
+        for (String remoteId : warmIds) {
+            closeSession(remoteId);
+        }
+        return !warmIds.isEmpty();
+    }
+
+    // 最近一次 ICE 收集完成（持续收集模式下为连接建立时最后一个 Candidate）的耗时，没有时为 -1
+    public long getLastIceGatheringMs() {
+        return lastIceGatheringMs;
+    }
+
+    // 开启后对新建立的连接生效：根据远端报告的丢包和 RTT 调整音频发送码率上限，决策通过 listener 通知
+    public void setAdaptiveBitrateEnabled(boolean enabled, AudioBitrateController.DecisionListener listener) {
+        post(() -> {
+            adaptiveBitrateEnabled = enabled;
+            bitrateDecisionListener = listener;
+            for (PeerSession session : peerSessions.values()) {
+                AudioBitrateController controller = session.getBitrateController();
+                if (controller != null) {
+                    controller.setDecisionListener(listener);
+                }
+            }
+            if (!enabled && statsListener == null) {
+                stopStatsSamplers();
+            }
+        });
+    }
+
+    private void stopStatsSamplers() {
+        for (PeerSession session : peerSessions.values()) {
+            CallStatsSampler sampler = session.getStatsSampler();
+            if (sampler != null) {
+                sampler.stop();
+                session.setStatsSampler(null);
+            }
+            session.setBitrateController(null);
+        }
+    }
+
+    // 向指定客户端发送文件，返回传输 ID；会话不存在或数据通道不可用时抛出 IOException
+    public int sendFile(String remoteId, File file) throws IOException {
+        PeerSession session = peerSessions.get(remoteId);
+        DataChannelTransfer transfer = session != null ? session.getTransfer() : null;
+        if (transfer == null) {
+            throw new IOException("与 " + remoteId + " 的数据通道不可用");
+        }
+        return transfer.sendFile(file);
+    }
+
+    public int getPeerSessionCount() {
+        return peerSessions.size();
+    }
+
+    // 记录每次通话建立各阶段的耗时（时间线和直方图），关闭时几乎没有开销
+    public void setCallSetupTracingEnabled(boolean enabled) {
+        setupTracer.setEnabled(enabled);
+    }
+
+    // 最近的通话建立时间线和各阶段直方图，JSON 格式见 CallSetupTracer.writeJson
+    public String exportCallSetupTrace() {
+        return setupTracer.toJson();
+    }
+
+    // 把本端麦克风采集的音频录制为 WAV 文件，通话结束或 stopRecording 时保存
+    public void startRecording(File file) {
+        post(() -> {
+            stopRecordingOnLoop();
+            CallRecorder next = new CallRecorder(file);
+            try {
+                next.start();
+                recorder = next;
+                updateStatus("录音中");
+            } catch (IOException | IllegalStateException e) {
+                log("开始录音失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    public void stopRecording() {
+        post(this::stopRecordingOnLoop);
+    }
+
+    private void stopRecordingOnLoop() {
+        if (recorder == null) {
+            return;
+        }
+        // 不在 eventLoop 上等待写入线程，写入线程保存文件后再回到 eventLoop 汇报
+        recorder.stop(stopped -> post(() -> onRecordingStopped(stopped)));
+        recorder = null;
+    }
+
+    private void onRecordingStopped(CallRecorder stopped) {
+        if (stopped.getOverrunCount() > 0) {
+            log("录音缓冲区溢出 {} 次，共丢弃 {} 字节", stopped.getOverrunCount(), stopped.getDroppedBytes());
+        }
+    }
+
+    // 最近一次通话从 startCall 到听到对方（统计中首次出现远端音频样本）的耗时（毫秒），-1 表示尚无数据
+    public long getLastCallSetupMs(boolean warm) {
+        return warm ? lastWarmSetupMs : lastColdSetupMs;
+    }
+
+    // 最近一次复用会话从 startCall 到重新协商完成的耗时（毫秒），-1 表示尚无数据
+    public long getLastReusedCallSetupMs() {
+        return lastReusedSetupMs;
+    }
+
+    // 开启后 stopCall 不再断开信令、关闭 PeerConnection 和释放本地音视频轨道：已连接的会话摘下发送轨道（replaceTrack(null)），
+    // 收发器改为 inactive 并重新协商；下一次与同一客户端通话时换回轨道、恢复 sendrecv，
+    // 省去创建 PeerConnection、ICE 收集和 DTLS 握手。保留超过 PARKED_SESSION_TTL_MS 的会话会被关闭
+    public void setSessionReuseEnabled(boolean enabled) {
+        post(() -> {
+            sessionReuseEnabled = enabled;
+            if (!enabled) {
+                closeParkedSessions(0);
+            }
+        });
+    }
+
     public void connectToSignalingServer() {
         if (signalingClient != null) {
             signalingClient.connect();
@@ -127,81 +670,590 @@ public class WebRTCManager {
     }
 
     public void startCall() {
+        post(this::startCallOnLoop);
+    }
+
+    private void startCallOnLoop() {
         log("开始建立通话...");
-        
-        // 检查信令连接状态
-        if (signalingClient == null || !signalingClient.isConnected()) {
-            log("信令服务器未连接，尝试重新连接...");
-            if (signalingClient != null) {
-                signalingClient.connect();
-            }
-            // 延迟启动通话，等待连接建立
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                if (signalingClient != null && signalingClient.isConnected()) {
-                    startCallInternal();
-                } else {
-                    log("信令服务器连接失败，无法启动通话");
-                }
-            }, 2000);
+
+        if (peerConnectionFactory == null) {
+            if (!factoryAcquired) {
+                // 上一次初始化失败，按当前配置重试
+                factoryRebuildPending = false;
+                initPeerConnectionFactory();
+            }
+            // 工厂仍在后台初始化，就绪后自动继续
+            log("等待 PeerConnectionFactory 初始化...");
+            callPendingFactory = true;
             return;
         }
         
+        // 信令未连接时先发起连接；Offer 和 ICE Candidate 会排队，连接建立后立即按顺序发出
+        if (signalingClient != null && !signalingClient.isConnected()) {
+            log("信令服务器未连接，正在连接，消息将在连接建立后发送");
+            signalingClient.connect();
+        }
+        
         startCallInternal();
     }
     
     private void startCallInternal() {
         try {
-            // 创建 PeerConnection
-            createPeerConnection();
-            
-            // 创建音频源
-            audioSource = peerConnectionFactory.createAudioSource(new MediaConstraints());
-            audioTrack = peerConnectionFactory.createAudioTrack("audio_track", audioSource);
-            
-            log("音频轨道创建完成");
-            
-            // 添加音频轨道到 PeerConnection（指定streamId）
-            java.util.List<String> streamIds = java.util.Collections.singletonList("audio_stream");
-            peerConnection.addTrack(audioTrack, streamIds);
-            log("音频轨道已添加到 PeerConnection");
-            
-            // 创建 Offer
-            peerConnection.createOffer(new SimpleSdpObserver() {
-                @Override
-                public void onCreateSuccess(SessionDescription sdp) {
-                    log("创建 Offer 成功");
-                    peerConnection.setLocalDescription(new SimpleSdpObserver() {
-                        @Override
-                        public void onSetSuccess() {
-                            log("设置本地描述成功");
-                            // 发送 Offer 到信令服务器
-                            if (signalingClient != null) {
-                                signalingClient.sendOffer(sdp.description);
-                            }
-                        }
-                    }, sdp);
+            List<String> targets = callTargets();
+            boolean warm = false;
+            callActive = true;
+            for (String target : targets) {
+                PeerSession session = peerSessions.get(target);
+                warm |= session != null && session.isWarm();
+            }
+            callStartNanos = System.nanoTime();
+            callStartedWarm = warm;
+            setupTracer.beginCall(true);
+            startVideoCapture();
+            if (targets.isEmpty()) {
+                log("暂无其他在线客户端，等待对方加入后自动发起通话");
+                return;
+            }
+            log(warm ? "使用预热的 PeerConnection，目标: {}" : "冷启动创建 PeerConnection，目标: {}", targets);
+            for (String target : targets) {
+                offerToPeer(target);
+            }
+        } catch (Exception e) {
+            AppLog.e(TAG, "启动通话失败", e);
+        }
+    }
+
+    // 通话对象：服务端支持按客户端转发时为所有在线客户端，否则使用广播会话
+    private List<String> callTargets() {
+        if (peerAddressing) {
+            return new ArrayList<>(remotePeers);
+        }
+        return Collections.singletonList(PeerSession.BROADCAST_PEER_ID);
+    }
+
+    private void offerToPeer(String remoteId) {
+        PeerSession session = peerSessions.get(remoteId);
+        if (session != null && session.isParked()) {
+            // 方向变化触发 onRenegotiationNeeded，由 negotiate 发出 Offer
+            resumeParkedSession(session, true);
+            return;
+        }
+        if (session != null && !session.isWarm()) {
+            log("与 {} 的会话已在进行中", remoteId);
+            return;
+        }
+        if (session == null) {
+            session = createSession(remoteId);
+            if (session == null) {
+                return;
+            }
+        }
+        session.setWarm(false);
+        session.setInitiator(true);
+        negotiate(session);
+    }
+
+    // 在现有 PeerConnection 上发起 ICE restart：生成新的 ufrag/pwd 并重新协商，媒体轨道不变
+    private boolean restartIce(PeerSession session) {
+        PeerConnection pc = session.getPeerConnection();
+        if (pc == null || signalingClient == null) {
+            return false;
+        }
+        if (pc.signalingState() != PeerConnection.SignalingState.STABLE) {
+            log("与 {} 的协商尚未完成，稍后再 ICE restart", session.getRemoteId());
+            return false;
+        }
+        // restartIce 触发 onRenegotiationNeeded，由 negotiate 发出新的 Offer
+        pc.restartIce();
+        return true;
+    }
+
+    // 创建与指定客户端的会话：PeerConnection + 共享音频轨道
+    private PeerSession createSession(String remoteId) {
+        if (peerSessions.size() >= MAX_PEER_SESSIONS) {
+            log("会话数已达上限 {}，忽略客户端 {}", MAX_PEER_SESSIONS, remoteId);
+            return null;
+        }
+        ensureLocalAudioTrack();
+
+        // PeerConnection 的内存和线程都在 native 层，Java 堆和 Thread.activeCount 看不到
+        long nativeHeapBefore = Debug.getNativeHeapAllocatedSize();
+        int threadsBefore = processThreadCount();
+
+        PeerSession session = new PeerSession(remoteId);
+        session.setPeerConnection(createPeerConnection(session));
+        addAudioTrackToPeerConnection(session);
+        addVideoTrackToPeerConnection(session);
+        createTransferChannel(session);
+        peerSessions.put(remoteId, session);
+
+        long nativeHeapDeltaKb = (Debug.getNativeHeapAllocatedSize() - nativeHeapBefore) / 1024;
+        int threadsAfter = processThreadCount();
+        log("已创建与 {} 的会话，当前会话数: {}，native 堆 {} KB，进程线程 {}（+{}）",
+                remoteId, peerSessions.size(), signed(nativeHeapDeltaKb), threadsAfter,
+                threadsBefore >= 0 && threadsAfter >= 0 ? threadsAfter - threadsBefore : "?");
+        return session;
+    }
+
+    private static String signed(long value) {
+        return value >= 0 ? "+" + value : String.valueOf(value);
+    }
+
+    // 进程的线程总数（包括 WebRTC 的 native 线程），读取失败时返回 -1
+    private static int processThreadCount() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Threads:")) {
+                    return Integer.parseInt(line.substring("Threads:".length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // 忽略，不影响会话创建
+        }
+        return -1;
+    }
+
+    // 数据通道在 Offer/Answer 之前创建，随首次协商一起建立，无需重新协商
+    private void createTransferChannel(PeerSession session) {
+        PeerConnection pc = session.getPeerConnection();
+        if (pc == null) {
+            return;
+        }
+        DataChannel.Init init = new DataChannel.Init();
+        init.ordered = true;
+        init.negotiated = true;
+        init.id = DataChannelTransfer.CHANNEL_ID;
+        DataChannel channel = pc.createDataChannel(DataChannelTransfer.CHANNEL_LABEL, init);
+        if (channel == null) {
+            log("创建数据通道失败（{}）", session.getRemoteId());
+            return;
+        }
+        DataChannelTransfer transfer = new DataChannelTransfer(session.getRemoteId(), channel, transferExecutor);
+        transfer.setTransferListener(transferListener);
+        session.setTransfer(transfer);
+    }
+
+    // 按发送方查找会话；广播会话收到带 from 的回应时绑定到该客户端
+    private PeerSession findSession(String from) {
+        String remoteId = from != null ? from : PeerSession.BROADCAST_PEER_ID;
+        PeerSession session = peerSessions.get(remoteId);
+        if (session == null && from != null) {
+            PeerSession broadcast = peerSessions.remove(PeerSession.BROADCAST_PEER_ID);
+            if (broadcast != null) {
+                broadcast.setRemoteId(from);
+                peerSessions.put(from, broadcast);
+                session = broadcast;
+            }
+        }
+        return session;
+    }
+
+    private void closeSession(String remoteId) {
+        PeerSession session = peerSessions.remove(remoteId);
+        if (session != null) {
+            iceRecovery.onSessionClosed(session);
+            session.close();
+            log("已关闭与 {} 的会话，剩余会话数: {}", remoteId, peerSessions.size());
+        }
+    }
+
+    // 所有会话共享同一个本地音频源和轨道
+    private void ensureLocalAudioTrack() {
+        if (audioTrack != null) {
+            return;
+        }
+        // 创建音频源
+        audioSource = peerConnectionFactory.createAudioSource(new MediaConstraints());
+        audioTrack = peerConnectionFactory.createAudioTrack("audio_track", audioSource);
+        
+        log("音频轨道创建完成");
+    }
+
+    // 视频开启时创建共享的采集器和视频轨道（不开始采集）；工厂不带视频编解码器或创建失败时返回 null
+    private LocalVideoCapture ensureLocalVideo() {
+        if (localVideo != null || videoConfig == null) {
+            return localVideo;
+        }
+        if (!PeerConnectionFactoryHolder.isVideoEnabled()) {
+            log("当前 PeerConnectionFactory 不带视频编解码器，只建立音频");
+            return null;
+        }
+        try {
+            localVideo = LocalVideoCapture.create(context, peerConnectionFactory,
+                    PeerConnectionFactoryHolder.getEglBase().getEglBaseContext(), videoConfig);
+            VideoSink sink = localVideoSink;
+            if (sink != null) {
+                localVideo.getTrack().addSink(sink);
+            }
+            log("视频轨道创建完成: {}", videoConfig);
+            if (callActive) {
+                // 通话开始后才创建会话（冷启动或对方稍后加入）
+                localVideo.start();
+            }
+        } catch (IOException | RuntimeException e) {
+            log("创建视频采集失败: {}", e.getMessage());
+        }
+        return localVideo;
+    }
+
+    // 通话开始（主动呼叫或接听）时打开摄像头，预热期间不采集
+    private void startVideoCapture() {
+        if (localVideo != null) {
+            localVideo.start();
+        }
+    }
+
+    // 调用前需先关闭使用该轨道的会话
+    private void disposeLocalVideo() {
+        if (localVideo != null) {
+            localVideo.dispose();
+            localVideo = null;
+        }
+    }
+
+    private void prepareWarmStandby() {
+        if (!warmStandbyEnabled || callActive || peerConnectionFactory == null) {
+            return;
+        }
+        try {
+            if (peerAddressing) {
+                // 已知具体客户端时不再需要广播会话
+                closeSession(PeerSession.BROADCAST_PEER_ID);
+            }
+            for (String target : callTargets()) {
+                if (peerSessions.containsKey(target)) {
+                    continue;
+                }
+                log("预热：提前为 {} 创建 PeerConnection 并收集 ICE", target);
+                PeerSession session = createSession(target);
+                if (session != null) {
+                    session.setWarm(true);
                 }
-            }, new MediaConstraints());
-            
+            }
         } catch (Exception e) {
-            log("启动通话失败: " + e.getMessage());
-            e.printStackTrace();
+            log("预热失败: {}", e.getMessage());
+        }
+    }
+
+    private void startStatsSampler(PeerSession session) {
+        CallStatsSampler.StatsListener listener = statsListener;
+        PeerConnection pc = session.getPeerConnection();
+        boolean video = session.getVideoSender() != null;
+        if ((listener == null && !adaptiveBitrateEnabled && !video) || pc == null
+                || session.getStatsSampler() != null) {
+            return;
+        }
+        AudioBitrateController controller = null;
+        if (adaptiveBitrateEnabled && session.getAudioSender() != null) {
+            AudioProfile profile = audioProfile;
+            int maxBitrate = profile != null ? profile.maxAverageBitrate : 0;
+            controller = new AudioBitrateController(session.getRemoteId(), session.getAudioSender(), maxBitrate);
+            controller.setDecisionListener(bitrateDecisionListener);
+            controller.start();
+            session.setBitrateController(controller);
+        }
+        CallStatsSampler sampler = new CallStatsSampler(session.getRemoteId(), pc, statsIntervalMs,
+                CallStatsSampler.DEFAULT_CAPACITY, CallStatsSampler.DEFAULT_SNAPSHOT_EVERY);
+        AudioBitrateController bitrateController = controller;
+        // 统计回调线程上先更新码率，再转给外部监听（读取最新设置的 statsListener）
+        sampler.setStatsListener((peerId, snapshot) -> {
+            if (bitrateController != null) {
+                bitrateController.onStatsSnapshot(snapshot);
+            }
+            if (video) {
+                logVideoStats(peerId, snapshot);
+            }
+            CallStatsSampler.StatsListener current = statsListener;
+            if (current != null) {
+                current.onStatsSnapshot(peerId, snapshot);
+            }
+        });
+        session.setStatsSampler(sampler);
+        sampler.start();
+    }
+
+    // 复用的会话没有 ICE 连接过程，以对方 Answer 设置完成为建立时刻
+    private void reportReusedCallSetupTime(PeerSession session) {
+        if (!session.isResumePending()) {
+            return;
+        }
+        session.setResumePending(false);
+        if (callStartNanos == 0) {
+            return;
+        }
+        long elapsedMs = (System.nanoTime() - callStartNanos) / 1_000_000;
+        callStartNanos = 0;
+        lastReusedSetupMs = elapsedMs;
+        // 复用的会话不再经过 ICE 连接阶段，时间线到此归档
+        setupTracer.endCall();
+        updateStatus("已连接");
+        log("通话建立耗时（复用会话）: {} ms，上次冷启动: {} ms，上次预热: {} ms",
+                elapsedMs, lastColdSetupMs, lastWarmSetupMs);
+    }
+
+    // 每个汇总窗口输出一次编解码帧率、每帧耗时、发送分辨率和进程 CPU 占用
+    private void logVideoStats(String peerId, CallStatsSampler.StatsSnapshot snapshot) {
+        log("视频统计（{}）: 编码 {} fps，{} ms/帧；解码 {} fps，{} ms/帧；发送 {}x{}，受限原因 {}；进程 CPU {}%",
+                peerId, oneDecimal(snapshot.encodeFps), oneDecimal(snapshot.avgEncodeMs),
+                oneDecimal(snapshot.decodeFps), oneDecimal(snapshot.avgDecodeMs),
+                snapshot.sendFrameWidth, snapshot.sendFrameHeight, snapshot.qualityLimitationReason,
+                oneDecimal(snapshot.processCpuPercent));
+    }
+
+    private static double oneDecimal(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    // complete 为 false 表示持续收集模式下收集不会结束，以连接建立时最后一个 Candidate 的时间计
+    private void reportIceGathering(PeerSession session, IceConfig config, boolean complete) {
+        if (!session.markGatheringReported()) {
+            return;
+        }
+        long elapsedMs = complete ? session.getGatheringElapsedMs() : session.getLastCandidateMs();
+        if (elapsedMs < 0) {
+            return;
+        }
+        lastIceGatheringMs = elapsedMs;
+        log("ICE 收集耗时（{}）: {} ms{}，首个 Candidate {} ms，共 {} 个", config, elapsedMs,
+                complete ? "" : "（持续收集，截至连接建立）",
+                session.getFirstCandidateMs(), session.getGatheredCandidates());
+        // 开启通话建立追踪时按模式累计，与 default 的平均耗时比较
+        setupTracer.recordIceGathering(config.name, elapsedMs);
+        double baselineMs = setupTracer.meanIceGatheringMs(CallSetupTracer.BASELINE_ICE_CONFIG);
+        if (baselineMs >= 0 && !CallSetupTracer.BASELINE_ICE_CONFIG.equals(config.name)) {
+            log("ICE 收集耗时（{}）平均 {} ms，比 {} 平均少 {} ms", config,
+                    oneDecimal(setupTracer.meanIceGatheringMs(config.name)), CallSetupTracer.BASELINE_ICE_CONFIG,
+                    oneDecimal(baselineMs - setupTracer.meanIceGatheringMs(config.name)));
+        }
+    }
+
+    // 连接建立后每 FIRST_AUDIO_POLL_MS 查询一次统计，直到出现对方的音频样本；误差约为一个查询间隔
+    private void probeFirstAudio(PeerSession session) {
+        if (session.beginFirstAudioProbe()) {
+            pollFirstAudio(session, System.nanoTime() + FIRST_AUDIO_TIMEOUT_MS * 1_000_000);
         }
     }
 
+    private void pollFirstAudio(PeerSession session, long deadlineNanos) {
+        PeerConnection pc = session.getPeerConnection();
+        if (pc == null || peerSessions.get(session.getRemoteId()) != session) {
+            return;
+        }
+        pc.getStats(report -> {
+            // 在统计回调线程上取时间，不计入 eventLoop 的排队时间
+            long nowNanos = System.nanoTime();
+            boolean received = CallStatsSampler.hasReceivedAudio(report);
+            post(() -> {
+                if (received) {
+                    setupTracer.mark(CallSetupTracer.Phase.FIRST_AUDIO);
+                    reportCallSetupTime(nowNanos);
+                } else if (nowNanos < deadlineNanos) {
+                    mainHandler.postDelayed(() -> post(() -> pollFirstAudio(session, deadlineNanos)),
+                            FIRST_AUDIO_POLL_MS);
+                } else {
+                    log("连接建立后 {} ms 内没有收到 {} 的音频", FIRST_AUDIO_TIMEOUT_MS, session.getRemoteId());
+                }
+            });
+        });
+    }
+
+    private void reportCallSetupTime(long firstAudioNanos) {
+        if (callStartNanos == 0) {
+            return;
+        }
+        long elapsedMs = (firstAudioNanos - callStartNanos) / 1_000_000;
+        callStartNanos = 0;
+        if (callStartedWarm) {
+            lastWarmSetupMs = elapsedMs;
+        } else {
+            lastColdSetupMs = elapsedMs;
+        }
+        log("通话建立耗时（{}，至首个远端音频）: {} ms，上次冷启动: {} ms，上次预热: {} ms",
+                callStartedWarm ? "预热" : "冷启动", elapsedMs, lastColdSetupMs, lastWarmSetupMs);
+    }
+
     public void stopCall() {
+        post(this::stopCallOnLoop);
+    }
+
+    private void stopCallOnLoop() {
+        endCallOnLoop(sessionReuseEnabled);
+    }
+
+    // keepSessions 为 true 时保留已连接的会话和信令连接以便复用，没有可保留的会话时与普通挂断相同
+    private void endCallOnLoop(boolean keepSessions) {
         log("停止通话");
+        callPendingFactory = false;
+        callActive = false;
+        callStartNanos = 0;
+        setupTracer.endCall();
+        stopRecordingOnLoop();
+        if (keepSessions && parkSessions()) {
+            updateStatus("通话已结束，连接保留");
+            if (localVideo != null) {
+                localVideo.stop();
+            }
+            applyPendingFactoryConfig();
+            return;
+        }
+        mainHandler.removeCallbacks(parkedSessionExpiryTask);
         updateStatus("已断开");
         
         if (signalingClient != null) {
             signalingClient.disconnect();
         }
+        remotePeers.clear();
+        orphanCandidates.clear();
         
-        if (peerConnection != null) {
-            peerConnection.close();
-            peerConnection = null;
+        iceRecovery.clear();
+        for (PeerSession session : peerSessions.values()) {
+            session.close();
         }
+        peerSessions.clear();
         
+        disposeLocalAudioTrack();
+        disposeLocalVideo();
+        applyPendingFactoryConfig();
+    }
+
+    // 已连接的会话转入保留状态，未连接的关闭，预热会话不变；返回是否保留了会话
+    private boolean parkSessions() {
+        List<String> closing = new ArrayList<>();
+        boolean parkedAny = false;
+        for (PeerSession session : peerSessions.values()) {
+            if (session.isWarm()) {
+                continue;
+            }
+            if (session.isParked()) {
+                parkedAny = true;
+            } else if (canPark(session)) {
+                parkSession(session);
+                parkedAny = true;
+            } else {
+                closing.add(session.getRemoteId());
+            }
+        }
+        for (String remoteId : closing) {
+            closeSession(remoteId);
+        }
+        return parkedAny;
+    }
+
+    private boolean canPark(PeerSession session) {
+        PeerConnection pc = session.getPeerConnection();
+        return pc != null && session.isRemoteDescriptionSet() && !session.isMakingOffer()
+                && pc.connectionState() == PeerConnection.PeerConnectionState.CONNECTED;
+    }
+
+    // 摘下发送轨道并把收发器设为 inactive；方向变化触发 onRenegotiationNeeded，由 negotiate 通知对方
+    private void parkSession(PeerSession session) {
+        PeerConnection pc = session.getPeerConnection();
+        for (RtpTransceiver transceiver : pc.getTransceivers()) {
+            if (transceiver.isStopped()) {
+                continue;
+            }
+            // replaceTrack(null) 立即停止发送，不必等协商完成
+            transceiver.getSender().setTrack(null, false);
+            transceiver.setDirection(RtpTransceiver.RtpTransceiverDirection.INACTIVE);
+        }
+        CallStatsSampler sampler = session.getStatsSampler();
+        if (sampler != null) {
+            sampler.stop();
+            session.setStatsSampler(null);
+        }
+        session.setBitrateController(null);
+        session.setResumePending(false);
+        session.setParked(true);
+        mainHandler.removeCallbacks(parkedSessionExpiryTask);
+        mainHandler.postDelayed(parkedSessionExpiryTask, PARKED_SESSION_TTL_MS);
+        log("保留与 {} 的会话，等待复用", session.getRemoteId());
+    }
+
+    // 换回本地轨道并恢复 sendrecv；initiator 为 true 时由本端发起重新协商
+    private void resumeParkedSession(PeerSession session, boolean initiator) {
+        PeerConnection pc = session.getPeerConnection();
+        ensureLocalAudioTrack();
+        LocalVideoCapture video = ensureLocalVideo();
+        boolean hasVideoTransceiver = false;
+        for (RtpTransceiver transceiver : pc.getTransceivers()) {
+            if (transceiver.isStopped()) {
+                continue;
+            }
+            MediaStreamTrack track;
+            if (transceiver.getMediaType() == MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO) {
+                hasVideoTransceiver = true;
+                track = video != null ? video.getTrack() : null;
+            } else {
+                track = audioTrack;
+            }
+            transceiver.getSender().setTrack(track, false);
+            // 本次没有开启视频时只接收对方的视频
+            transceiver.setDirection(track != null
+                    ? RtpTransceiver.RtpTransceiverDirection.SEND_RECV
+                    : RtpTransceiver.RtpTransceiverDirection.RECV_ONLY);
+        }
+        if (video != null && !hasVideoTransceiver) {
+            // 保留期间开启了视频
+            addVideoTrackToPeerConnection(session);
+        }
+        session.setParked(false);
+        if (initiator) {
+            session.setInitiator(true);
+            session.setResumePending(true);
+        }
+        log("复用与 {} 的会话（第 {} 次）", session.getRemoteId(), session.incrementReuseCount());
+        startStatsSampler(session);
+    }
+
+    // 复用的会话收到对方的 Offer：对方恢复通话时换回本地轨道，对方结束通话时本端也转入保留状态
+    private void syncParkedState(PeerSession session, boolean activeOffer) {
+        if (session.isParked() && activeOffer) {
+            // 对方恢复通话：ICE/DTLS 连接一直保持，不会再有连接状态变化，这里直接进入通话状态
+            callActive = true;
+            resumeParkedSession(session, false);
+            startVideoCapture();
+            updateStatus("已连接");
+        } else if (!session.isParked() && !activeOffer && sessionReuseEnabled && canPark(session)) {
+            parkSession(session);
+            updateStatus("对方已结束通话，连接保留");
+        }
+    }
+
+    private void closeExpiredParkedSessions() {
+        closeParkedSessions(PARKED_SESSION_TTL_MS);
+    }
+
+    // 关闭保留至少 maxAgeMs 的会话，还有保留的会话时按最早到期的重新计时；没有会话且不在通话中时释放本地音视频轨道
+    private void closeParkedSessions(long maxAgeMs) {
+        List<String> expired = new ArrayList<>();
+        long nextExpiryMs = Long.MAX_VALUE;
+        for (PeerSession session : peerSessions.values()) {
+            if (!session.isParked()) {
+                continue;
+            }
+            long parkedMs = session.getParkedMs();
+            if (parkedMs >= maxAgeMs) {
+                expired.add(session.getRemoteId());
+            } else {
+                nextExpiryMs = Math.min(nextExpiryMs, maxAgeMs - parkedMs);
+            }
+        }
+        for (String remoteId : expired) {
+            log("与 {} 的会话保留超时，关闭", remoteId);
+            closeSession(remoteId);
+        }
+        mainHandler.removeCallbacks(parkedSessionExpiryTask);
+        if (nextExpiryMs != Long.MAX_VALUE) {
+            mainHandler.postDelayed(parkedSessionExpiryTask, nextExpiryMs);
+        }
+        if (peerSessions.isEmpty() && !callActive) {
+            disposeLocalAudioTrack();
+            disposeLocalVideo();
+        }
+    }
+
+    private void disposeLocalAudioTrack() {
         if (audioTrack != null) {
             audioTrack.dispose();
             audioTrack = null;
@@ -213,49 +1265,86 @@ public class WebRTCManager {
         }
     }
 
-    private void createPeerConnection() {
-        List<PeerConnection.IceServer> iceServers = new ArrayList<>();
-        iceServers.add(PeerConnection.IceServer.builder("stun:stun.l.google.com:19302").createIceServer());
-        
-        PeerConnection.RTCConfiguration rtcConfig = new PeerConnection.RTCConfiguration(iceServers);
-        rtcConfig.continualGatheringPolicy = PeerConnection.ContinualGatheringPolicy.GATHER_CONTINUALLY;
+    private PeerConnection createPeerConnection(PeerSession session) {
+        IceConfig config = iceConfig;
+        PeerConnection.RTCConfiguration rtcConfig = new PeerConnection.RTCConfiguration(config.createIceServers());
+        // 预热时候选池在 setLocalDescription 之前就开始收集 ICE
+        config.applyTo(rtcConfig, warmStandbyEnabled ? WARM_STANDBY_CANDIDATE_POOL_SIZE : 0);
         
-        peerConnection = peerConnectionFactory.createPeerConnection(rtcConfig, new PeerConnection.Observer() {
+        return peerConnectionFactory.createPeerConnection(rtcConfig, new PeerConnection.Observer() {
             @Override
             public void onIceCandidate(IceCandidate candidate) {
-                log("本地 ICE Candidate: " + candidate.sdp);
-                signalingClient.sendIceCandidate(candidate.sdp);
+                post(() -> {
+                    log("本地 ICE Candidate（发往 {}）: {}", session.getRemoteId(), candidate.sdp);
+                    session.recordGatheredCandidate();
+                    setupTracer.mark(CallSetupTracer.Phase.FIRST_LOCAL_CANDIDATE);
+                    signalingClient.sendIceCandidate(session.getSignalingTarget(),
+                            candidate.sdpMid, candidate.sdpMLineIndex, candidate.sdp);
+                });
             }
 
             @Override
             public void onConnectionChange(PeerConnection.PeerConnectionState newState) {
-                log("连接状态变化: " + newState);
-                switch (newState) {
-                    case CONNECTED:
-                        updateStatus("已连接");
-                        break;
-                    case DISCONNECTED:
-                        updateStatus("连接断开");
-                        break;
-                    case FAILED:
-                        updateStatus("连接失败");
-                        break;
-                }
+                post(() -> {
+                    log("与 {} 的连接状态变化: {}", session.getRemoteId(), newState);
+                    switch (newState) {
+                        case CONNECTED:
+                            updateStatus("已连接");
+                            probeFirstAudio(session);
+                            reportIceGathering(session, config, false);
+                            startStatsSampler(session);
+                            break;
+                        case DISCONNECTED:
+                            updateStatus(iceRecoveryEnabled ? "连接断开，正在恢复" : "连接断开");
+                            break;
+                        case FAILED:
+                            updateStatus(iceRecoveryEnabled ? "连接失败，正在恢复" : "连接失败");
+                            break;
+                    }
+                    if (iceRecoveryEnabled) {
+                        iceRecovery.onConnectionStateChanged(session, newState);
+                    }
+                });
             }
 
             @Override
             public void onSignalingChange(PeerConnection.SignalingState newState) {
-                log("信令状态变化: " + newState);
+                log("信令状态变化: {}", newState);
+                if (newState == PeerConnection.SignalingState.STABLE) {
+                    post(() -> runQueuedNegotiation(session));
+                }
             }
 
             @Override
             public void onIceConnectionChange(PeerConnection.IceConnectionState newState) {
-                log("ICE 连接状态变化: " + newState);
+                post(() -> {
+                    log("ICE 连接状态变化: {}", newState);
+                    if (newState == PeerConnection.IceConnectionState.CONNECTED
+                            || newState == PeerConnection.IceConnectionState.COMPLETED) {
+                        setupTracer.mark(CallSetupTracer.Phase.ICE_CONNECTED);
+                        // GATHER_CONTINUALLY（默认配置）下收集状态不会变为 COMPLETE，连通后不再等待批量窗口
+                        flushIceCandidatesEarly();
+                    }
+                    if (iceRecoveryEnabled) {
+                        iceRecovery.onIceConnectionStateChanged(session, newState);
+                    }
+                });
             }
 
             @Override
             public void onIceGatheringChange(PeerConnection.IceGatheringState newState) {
-                log("ICE 收集状态变化: " + newState);
+                log("ICE 收集状态变化: {}", newState);
+                post(() -> {
+                    if (newState == PeerConnection.IceGatheringState.GATHERING) {
+                        session.startGatheringTimer();
+                    } else if (newState == PeerConnection.IceGatheringState.COMPLETE) {
+                        reportIceGathering(session, config, true);
+                    }
+                });
+                if (newState == PeerConnection.IceGatheringState.COMPLETE) {
+                    // 收集完成后不再等待批量窗口，立即发送剩余的 Candidate（排在已投递的 Candidate 之后）
+                    post(WebRTCManager.this::flushIceCandidatesEarly);
+                }
             }
 
             @Override
@@ -275,12 +1364,30 @@ public class WebRTCManager {
 
             @Override
             public void onRenegotiationNeeded() {
-                log("需要重新协商");
+                post(() -> {
+                    PeerConnection pc = session.getPeerConnection();
+                    if (session.isWarm() || pc == null || pc.getRemoteDescription() == null) {
+                        // 首次协商由 offerToPeer 或对方的 Offer 发起，创建会话时添加轨道触发的这次不用处理
+                        return;
+                    }
+                    log("与 {} 需要重新协商", session.getRemoteId());
+                    negotiate(session);
+                });
             }
 
             @Override
             public void onAddTrack(org.webrtc.RtpReceiver receiver, MediaStream[] mediaStreams) {
+                MediaStreamTrack track = receiver.track();
+                if (track instanceof VideoTrack) {
+                    log("收到远程视频轨道（{}）", session.getRemoteId());
+                    RemoteVideoListener listener = remoteVideoListener;
+                    if (listener != null) {
+                        listener.onRemoteVideoTrack(session.getRemoteId(), (VideoTrack) track);
+                    }
+                    return;
+                }
                 log("收到远程音频轨道");
+                setupTracer.mark(CallSetupTracer.Phase.FIRST_REMOTE_TRACK);
             }
 
             @Override
@@ -290,127 +1397,409 @@ public class WebRTCManager {
 
             @Override
             public void onIceConnectionReceivingChange(boolean receiving) {
-                log("ICE 连接接收状态变化: " + receiving);
+                log("ICE 连接接收状态变化: {}", receiving);
             }
         });
     }
 
-    private void createAudioTrack() {
-        JavaAudioDeviceModule audioDeviceModule = JavaAudioDeviceModule.builder(context).createAudioDeviceModule();
-        
-        audioSource = peerConnectionFactory.createAudioSource(new MediaConstraints());
-        audioTrack = peerConnectionFactory.createAudioTrack("audio_track", audioSource);
-        
-        // 启用音频采集
-        // 注意：adaptOutputFormat 方法在新版本的 WebRTC 中可能已被移除
-        // 音频格式配置现在通过其他方式处理
-        
-        log("音频轨道创建完成");
+    // 提前发送批量窗口中的 Candidate：收集完成、收到对方的 Answer 或 ICE 连通时
+    private void flushIceCandidatesEarly() {
+        if (signalingClient != null) {
+            signalingClient.flushIceCandidates();
+        }
     }
 
-    private void addAudioTrackToPeerConnection() {
+    private void addAudioTrackToPeerConnection(PeerSession session) {
+        PeerConnection peerConnection = session.getPeerConnection();
         if (peerConnection != null && audioTrack != null) {
             java.util.List<String> streamIds = java.util.Collections.singletonList("audio_stream");
-            peerConnection.addTrack(audioTrack, streamIds);
+            session.setAudioSender(peerConnection.addTrack(audioTrack, streamIds));
             log("音频轨道已添加到 PeerConnection");
         }
     }
 
-    private void createOffer() {
+    // 与音频放在同一个 stream 中，接收端据此做音视频同步
+    private void addVideoTrackToPeerConnection(PeerSession session) {
+        PeerConnection peerConnection = session.getPeerConnection();
+        LocalVideoCapture video = ensureLocalVideo();
+        if (peerConnection == null || video == null) {
+            return;
+        }
+        RtpSender sender = peerConnection.addTrack(video.getTrack(), Collections.singletonList("audio_stream"));
+        if (sender == null) {
+            log("视频轨道添加失败（{}）", session.getRemoteId());
+            return;
+        }
+        session.setVideoSender(sender);
+        applyVideoSenderParameters(sender, video.getConfig());
+        log("视频轨道已添加到 PeerConnection");
+    }
+
+    // 码率和帧率上限，以及 CPU 过载或带宽不足时先降分辨率还是先降帧率；具体调整由 WebRTC 完成
+    private void applyVideoSenderParameters(RtpSender sender, VideoConfig config) {
+        RtpParameters parameters = sender.getParameters();
+        parameters.degradationPreference = config.degradationPreference;
+        for (RtpParameters.Encoding encoding : parameters.encodings) {
+            if (config.maxBitrateBps > 0) {
+                encoding.maxBitrateBps = config.maxBitrateBps;
+            }
+            encoding.maxFramerate = config.fps;
+        }
+        if (!sender.setParameters(parameters)) {
+            log("设置视频发送参数失败");
+        }
+    }
+
+    // 发起协商（首次通话、ICE restart 和通话中的轨道/数据通道变化）；上一轮还未完成时排队，回到 STABLE 后再发起
+    private void negotiate(PeerSession session) {
+        PeerConnection peerConnection = session.getPeerConnection();
+        if (peerConnection == null) {
+            return;
+        }
+        if (session.isMakingOffer() || peerConnection.signalingState() != PeerConnection.SignalingState.STABLE) {
+            log("与 {} 的协商进行中，重新协商排队", session.getRemoteId());
+            session.setNegotiationQueued(true);
+            return;
+        }
+        session.setNegotiationQueued(false);
+        session.setMakingOffer(true);
+        int epoch = session.getNegotiationEpoch();
         peerConnection.createOffer(new SimpleSdpObserver() {
             @Override
             public void onCreateSuccess(SessionDescription sdp) {
-                log("创建 Offer 成功");
-                peerConnection.setLocalDescription(new SimpleSdpObserver() {
-                    @Override
-                    public void onSetSuccess() {
-                        log("设置本地描述成功");
-                        signalingClient.sendOffer(sdp.description);
+                post(() -> {
+                    if (epoch != session.getNegotiationEpoch() || session.getPeerConnection() != peerConnection) {
+                        // 创建期间已接受对方的 Offer（或会话已关闭），这份 Offer 作废；
+                        // 仍需协商时 WebRTC 会在回到 STABLE 后再次触发 onRenegotiationNeeded
+                        log("与 {} 的本地 Offer 已过期，丢弃", session.getRemoteId());
+                        session.setMakingOffer(false);
+                        return;
                     }
-                }, sdp);
+                    log("创建 Offer 成功");
+                    setupTracer.mark(CallSetupTracer.Phase.OFFER_CREATED);
+                    SessionDescription local = applyAudioProfile(sdp);
+                    session.setSettingLocalOffer(true);
+                    peerConnection.setLocalDescription(new SimpleSdpObserver() {
+                        @Override
+                        public void onSetSuccess() {
+                            post(() -> {
+                                session.setSettingLocalOffer(false);
+                                session.setMakingOffer(false);
+                                if (epoch != session.getNegotiationEpoch()) {
+                                    // 设置期间收到冲突的 Offer 并已回滚
+                                    return;
+                                }
+                                log("设置本地描述成功");
+                                setupTracer.mark(CallSetupTracer.Phase.LOCAL_DESCRIPTION_SET);
+                                // 发送 Offer 到信令服务器
+                                if (signalingClient != null) {
+                                    signalingClient.sendOffer(session.getSignalingTarget(), local.description);
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onSetFailure(String s) {
+                            super.onSetFailure(s);
+                            post(() -> {
+                                session.setSettingLocalOffer(false);
+                                session.setMakingOffer(false);
+                            });
+                        }
+                    }, local);
+                });
+            }
+
+            @Override
+            public void onCreateFailure(String s) {
+                super.onCreateFailure(s);
+                post(() -> session.setMakingOffer(false));
             }
         }, new MediaConstraints());
     }
 
-    private void createAnswer() {
+    private void runQueuedNegotiation(PeerSession session) {
+        if (session.isNegotiationQueued() && !session.isMakingOffer()) {
+            negotiate(session);
+        }
+    }
+
+    // 完美协商的角色：双方客户端 ID 都已知时 ID 较大的一方为 polite（冲突时让步）；
+    // 旧版服务端不提供 ID 时比较双方 SDP o= 行的会话 ID；本端还没有本地描述时对端不会认为冲突，按 polite 处理
+    private boolean isPolite(PeerSession session, PeerConnection peerConnection, String remoteSdp) {
+        String localId = signalingClient != null ? signalingClient.getLocalClientId() : null;
+        String remoteId = session.getSignalingTarget();
+        if (localId != null && remoteId != null) {
+            return localId.compareTo(remoteId) > 0;
+        }
+        SessionDescription local = peerConnection.getLocalDescription();
+        String localSessionId = local != null ? SdpMunger.originSessionId(local.description) : null;
+        String remoteSessionId = SdpMunger.originSessionId(remoteSdp);
+        if (localSessionId == null || remoteSessionId == null) {
+            return true;
+        }
+        // 会话 ID 为十进制整数，先比较长度
+        if (localSessionId.length() != remoteSessionId.length()) {
+            return localSessionId.length() > remoteSessionId.length();
+        }
+        return localSessionId.compareTo(remoteSessionId) > 0;
+    }
+
+    private void createAnswer(PeerSession session) {
+        PeerConnection peerConnection = session.getPeerConnection();
         peerConnection.createAnswer(new SimpleSdpObserver() {
             @Override
             public void onCreateSuccess(SessionDescription sdp) {
-                log("创建 Answer 成功");
-                peerConnection.setLocalDescription(new SimpleSdpObserver() {
-                    @Override
-                    public void onSetSuccess() {
-                        log("设置本地描述成功");
-                        signalingClient.sendAnswer(sdp.description);
-                    }
-                }, sdp);
+                post(() -> {
+                    log("创建 Answer 成功");
+                    SessionDescription local = applyAudioProfile(sdp);
+                    peerConnection.setLocalDescription(new SimpleSdpObserver() {
+                        @Override
+                        public void onSetSuccess() {
+                            post(() -> {
+                                log("设置本地描述成功");
+                                setupTracer.mark(CallSetupTracer.Phase.LOCAL_DESCRIPTION_SET);
+                                signalingClient.sendAnswer(session.getSignalingTarget(), local.description);
+                            });
+                        }
+                    }, local);
+                });
             }
         }, new MediaConstraints());
     }
 
-    private void handleRemoteDescription(String sdp, String type) {
-        if (peerConnection == null) {
-            log("PeerConnection 未初始化");
+    // 在 setLocalDescription 之前按当前 AudioProfile 改写 SDP
+    private SessionDescription applyAudioProfile(SessionDescription sdp) {
+        AudioProfile profile = audioProfile;
+        if (profile == null) {
+            return sdp;
+        }
+        log("应用音频配置: {}", profile);
+        return new SessionDescription(sdp.type, SdpMunger.apply(sdp.description, profile));
+    }
+
+    private void handleRemoteDescription(String from, String sdp, String type) {
+        PeerSession session = findSession(from);
+        // 复用的会话靠 Offer 中的媒体方向区分恢复通话和结束通话
+        boolean activeOffer = type.equals("offer") && SdpMunger.hasActiveMedia(sdp);
+        // 新通话的 Offer；ICE restart 等重新协商的 Offer 发生在已有的非预热会话上，恢复保留的会话由 syncParkedState 处理
+        boolean newCall = type.equals("offer") && (session == null || session.isWarm());
+        if (session == null && type.equals("offer") && peerConnectionFactory != null) {
+            // 对方主动呼叫，为其创建会话
+            session = createSession(from != null ? from : PeerSession.BROADCAST_PEER_ID);
+        }
+        if (newCall && session != null) {
+            setupTracer.beginCall(false);
+            setupTracer.mark(CallSetupTracer.Phase.OFFER_RECEIVED);
+            startVideoCapture();
+        }
+        if (session != null) {
+            session.setWarm(false);
+        }
+        if (session == null || session.getPeerConnection() == null) {
+            log("PeerConnection 未初始化（来自 {}）", from);
             return;
         }
+        adoptOrphanCandidates(session);
+        PeerConnection peerConnection = session.getPeerConnection();
+        PeerSession targetSession = session;
+        PeerConnection.SignalingState signalingState = peerConnection.signalingState();
+        boolean rollback = false;
+        if (type.equals("offer")) {
+            // 双方同时发起 Offer（glare）：impolite 一方忽略对方的 Offer，polite 一方回滚本地 Offer 后接受
+            boolean collision = session.isMakingOffer() || signalingState != PeerConnection.SignalingState.STABLE;
+            if (collision && !isPolite(session, peerConnection, sdp)) {
+                log("与 {} 的 Offer 冲突，本端优先，忽略对方的 Offer", session.getRemoteId());
+                return;
+            }
+            // 此前开始创建的本地 Offer 作废
+            session.advanceNegotiationEpoch();
+            if (collision) {
+                session.setInitiator(false);
+                rollback = signalingState == PeerConnection.SignalingState.HAVE_LOCAL_OFFER
+                        || session.isSettingLocalOffer();
+                log("与 {} 的 Offer 冲突，本端让步{}", session.getRemoteId(), rollback ? "，回滚本地 Offer" : "");
+            }
+        } else if (signalingState != PeerConnection.SignalingState.HAVE_LOCAL_OFFER && !session.isSettingLocalOffer()) {
+            // 对应的本地 Offer 已在冲突中回滚
+            log("当前没有待应答的本地 Offer，忽略 {} 的 Answer", session.getRemoteId());
+            return;
+        }
+        // 重新协商（例如 ICE restart）期间新一轮的 Candidate 也要等远端描述设置好再添加
+        session.setRemoteDescriptionSet(false);
 
         SessionDescription sessionDescription = new SessionDescription(
                 SessionDescription.Type.fromCanonicalForm(type), sdp);
 
+        if (rollback) {
+            // 回滚和随后的 setRemoteDescription 在 WebRTC 内部按调用顺序执行，不必等回滚完成
+            peerConnection.setLocalDescription(new SimpleSdpObserver(),
+                    new SessionDescription(SessionDescription.Type.ROLLBACK, ""));
+        }
+
         peerConnection.setRemoteDescription(new SimpleSdpObserver() {
             @Override
             public void onSetSuccess() {
-                log("设置远程描述成功");
-                if (type.equals("offer")) {
-                    // 收到 Offer，创建 Answer
-                    createAnswer();
-                }
+                post(() -> {
+                    log("设置远程描述成功");
+                    targetSession.setRemoteDescriptionSet(true);
+                    drainRemoteCandidates(targetSession);
+                    if (type.equals("offer")) {
+                        // 收到 Offer，创建 Answer；收发器方向要在创建 Answer 之前调整好
+                        syncParkedState(targetSession, activeOffer);
+                        createAnswer(targetSession);
+                    } else {
+                        // 对方已应答，正在等待本端的 Candidate 做连通性检查
+                        flushIceCandidatesEarly();
+                        reportReusedCallSetupTime(targetSession);
+                    }
+                });
             }
         }, sessionDescription);
     }
 
-    private void handleRemoteIceCandidate(String candidate) {
-        if (peerConnection == null) {
-            log("PeerConnection 未初始化");
+    private void handleRemoteIceCandidate(String from, String sdpMid, int sdpMLineIndex, String candidate) {
+        // 在 eventLoop 上打点，保证应答方的时间线已由之前的 Offer 开始
+        setupTracer.mark(CallSetupTracer.Phase.FIRST_REMOTE_CANDIDATE);
+        if (sdpMid == null && sdpMLineIndex < 0) {
+            // 旧版客户端只发送 candidate 字符串；那时 SDP 只有一个音频 m 行（a=mid:0）
+            sdpMid = "0";
+            sdpMLineIndex = 0;
+        }
+        IceCandidate iceCandidate = new IceCandidate(sdpMid, Math.max(sdpMLineIndex, 0), candidate);
+        PeerSession session = findSession(from);
+        if (session == null || session.getPeerConnection() == null) {
+            queueOrphanCandidate(from != null ? from : PeerSession.BROADCAST_PEER_ID, iceCandidate);
             return;
         }
 
-        try {
-            // 我们的信令仅发送了candidate字符串，SDP里a=mid:0，因此直接使用mid="0"，mLineIndex=0
-            String sdpMid = "0";
-            int sdpMLineIndex = 0;
+        if (!session.isRemoteDescriptionSet()) {
+            // 远端描述还没设置好，addIceCandidate 会失败；先缓存，setRemoteDescription 成功后再添加
+            if (!session.queueRemoteCandidate(iceCandidate)) {
+                log("缓存的 ICE Candidate 已达上限，丢弃（来自 {}）", from);
+            }
+            return;
+        }
+        addRemoteCandidate(session.getPeerConnection(), iceCandidate);
+    }
 
-            IceCandidate iceCandidate = new IceCandidate(sdpMid, sdpMLineIndex, candidate);
-            peerConnection.addIceCandidate(iceCandidate);
-            log("添加远程 ICE Candidate 成功");
+    private void queueOrphanCandidate(String remoteId, IceCandidate candidate) {
+        List<IceCandidate> pending = orphanCandidates.get(remoteId);
+        if (pending == null) {
+            if (orphanCandidates.size() >= MAX_ORPHAN_CANDIDATE_PEERS) {
+                String eldest = orphanCandidates.keySet().iterator().next();
+                orphanCandidates.remove(eldest);
+                log("缓存 Candidate 的远端过多，丢弃来自 {} 的 Candidate", eldest);
+            }
+            pending = new ArrayList<>();
+            orphanCandidates.put(remoteId, pending);
+        }
+        if (pending.size() >= PeerSession.MAX_PENDING_REMOTE_CANDIDATES) {
+            log("缓存的 ICE Candidate 已达上限，丢弃（来自 {}）", remoteId);
+            return;
+        }
+        pending.add(candidate);
+        log("还没有与 {} 的会话，缓存 ICE Candidate（{} 个）", remoteId, pending.size());
+    }
+
+    // 会话创建（或广播会话绑定到具体客户端）后，把之前缓存的 Candidate 移入会话，远端描述设置成功后添加
+    private void adoptOrphanCandidates(PeerSession session) {
+        List<IceCandidate> pending = orphanCandidates.remove(session.getRemoteId());
+        if (pending == null) {
+            return;
+        }
+        int dropped = 0;
+        for (IceCandidate candidate : pending) {
+            if (!session.queueRemoteCandidate(candidate)) {
+                dropped++;
+            }
+        }
+        log("与 {} 的会话已创建，移入 {} 个提前到达的 ICE Candidate{}", session.getRemoteId(),
+                pending.size() - dropped, dropped > 0 ? "（队列已满，丢弃 " + dropped + " 个）" : "");
+    }
+
+    private void drainRemoteCandidates(PeerSession session) {
+        PeerConnection peerConnection = session.getPeerConnection();
+        List<IceCandidate> pending = session.drainRemoteCandidates();
+        if (peerConnection == null || pending.isEmpty()) {
+            return;
+        }
+        log("添加 {} 个提前到达的 ICE Candidate（来自 {}）", pending.size(), session.getRemoteId());
+        for (IceCandidate candidate : pending) {
+            addRemoteCandidate(peerConnection, candidate);
+        }
+    }
+
+    private void addRemoteCandidate(PeerConnection peerConnection, IceCandidate candidate) {
+        try {
+            if (peerConnection.addIceCandidate(candidate)) {
+                log("添加远程 ICE Candidate 成功");
+            } else {
+                log("添加远程 ICE Candidate 失败: {}", candidate.sdp);
+            }
         } catch (Exception e) {
-            log("解析/添加 ICE Candidate 失败: " + e.getMessage());
+            log("解析/添加 ICE Candidate 失败: {}", e.getMessage());
         }
     }
 
+    // 可在任意线程调用；合并后在主线程回调 StatusCallback
     private void updateStatus(String status) {
-        if (statusCallback != null) {
-            statusCallback.onStatusChanged(status);
+        synchronized (statusLock) {
+            pendingStatus = status;
+            if (statusFlushScheduled) {
+                return;
+            }
+            statusFlushScheduled = true;
         }
+        mainHandler.postDelayed(statusFlushTask, STATUS_FLUSH_INTERVAL_MS);
     }
 
-    private void log(String message) {
-        Log.d(TAG, message);
-        if (statusCallback != null) {
-            statusCallback.onLog(message);
+    private void flushStatus() {
+        String status;
+        synchronized (statusLock) {
+            status = pendingStatus;
+            pendingStatus = null;
+            statusFlushScheduled = false;
         }
+        StatusCallback callback = statusCallback;
+        if (callback != null && status != null) {
+            callback.onStatusChanged(status);
+        }
+    }
+
+    // 通话日志走 AppLog：INFO 级别，界面通过 AppLog.setLogListener 批量接收
+    private void log(String message) {
+        AppLog.i(TAG, message);
+    }
+
+    private void log(String template, Object arg0) {
+        AppLog.i(TAG, template, arg0);
+    }
+
+    private void log(String template, Object arg0, Object arg1) {
+        AppLog.i(TAG, template, arg0, arg1);
+    }
+
+    private void log(String template, Object... args) {
+        AppLog.i(TAG, template, args);
     }
 
     public void cleanup() {
-        stopCall();
-        if (peerConnectionFactory != null) {
-            peerConnectionFactory.dispose();
-            peerConnectionFactory = null;
-        }
-        if (eglBase != null) {
-            eglBase.release();
-            eglBase = null;
-        }
+        post(() -> endCallOnLoop(false));
+        post(() -> {
+            iceRecovery.stop();
+            transferExecutor.shutdown();
+            // 共享工厂只减少引用，不直接释放，下一次通话或 Activity 重建可以继续使用
+            if (factoryAcquired) {
+                factoryAcquired = false;
+                peerConnectionFactory = null;
+                PeerConnectionFactoryHolder.release();
+            }
+        });
+        // 已投递的事件（包括上面的释放）执行完后线程退出，之后的回调被丢弃
+        eventLoop.shutdown();
+        mainHandler.removeCallbacks(statusFlushTask);
+        mainHandler.removeCallbacks(parkedSessionExpiryTask);
     }
 
     // 简化的 SDP Observer
@@ -423,12 +1812,12 @@ public class WebRTCManager {
 
         @Override
         public void onCreateFailure(String s) {
-            Log.e(TAG, "SDP 创建失败: " + s);
+            AppLog.e(TAG, "SDP 创建失败: {}", s);
         }
 
         @Override
         public void onSetFailure(String s) {
-            Log.e(TAG, "SDP 设置失败: " + s);
+            AppLog.e(TAG, "SDP 设置失败: {}", s);
         }
     }
 } 
\ No newline at end of file
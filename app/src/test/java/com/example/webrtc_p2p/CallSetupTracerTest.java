@@ -0,0 +1,52 @@
+package com.example.webrtc_p2p;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CallSetupTracerTest {
+    @Test
+    public void iceGatheringIsGroupedByConfigWithSavingsAgainstDefault() {
+        CallSetupTracer tracer = new CallSetupTracer();
+        tracer.setEnabled(true);
+        tracer.recordIceGathering("default", 400);
+        tracer.recordIceGathering("default", 600);
+        tracer.recordIceGathering("lan", 20);
+        tracer.recordIceGathering("lan", 40);
+
+        assertEquals(500, tracer.meanIceGatheringMs("default"), 0.001);
+        assertEquals(30, tracer.meanIceGatheringMs("lan"), 0.001);
+        assertEquals(-1, tracer.meanIceGatheringMs("custom"), 0.001);
+
+        JsonObject json = JsonParser.parseString(tracer.toJson()).getAsJsonObject();
+        JsonObject gathering = json.getAsJsonObject("iceGathering");
+        assertEquals(2, gathering.getAsJsonObject("default").get("count").getAsLong());
+        assertEquals(30, gathering.getAsJsonObject("lan").get("meanMs").getAsDouble(), 0.001);
+
+        // p50 取桶上界：default 落在 500 ms 桶，lan 落在 25 ms 桶
+        JsonObject lanSavings = json.getAsJsonObject("iceGatheringSavingsMs").getAsJsonObject("lan");
+        assertEquals(470, lanSavings.get("mean").getAsDouble(), 0.001);
+        assertEquals(475, lanSavings.get("p50").getAsDouble(), 0.001);
+        assertFalse(json.getAsJsonObject("iceGatheringSavingsMs").has("default"));
+    }
+
+    @Test
+    public void noSavingsWithoutDefaultSamples() {
+        CallSetupTracer tracer = new CallSetupTracer();
+        tracer.setEnabled(true);
+        tracer.recordIceGathering("lan", 20);
+        JsonObject json = JsonParser.parseString(tracer.toJson()).getAsJsonObject();
+        assertEquals(0, json.getAsJsonObject("iceGatheringSavingsMs").size());
+    }
+
+    @Test
+    public void disabledTracerRecordsNothing() {
+        CallSetupTracer tracer = new CallSetupTracer();
+        tracer.recordIceGathering("default", 400);
+        assertEquals(-1, tracer.meanIceGatheringMs("default"), 0.001);
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.webrtc_p2p;
+
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// 两端用内存中的 DataChannel 相连，所有回调和帧投递都在同一个任务队列上按顺序执行
+public class DataChannelTransferTest {
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private final Executor executor = tasks::addLast;
+
+    @Test
+    public void rejectInOneDirectionDoesNotCancelTheOther() throws IOException {
+        FakeChannel channelA = new FakeChannel();
+        FakeChannel channelB = new FakeChannel();
+        channelA.peer = channelB;
+        channelB.peer = channelA;
+        DataChannelTransfer a = new DataChannelTransfer("b", channelA, executor);
+        DataChannelTransfer b = new DataChannelTransfer("a", channelB, executor);
+        RecordingListener listenerA = new RecordingListener(true);
+        RecordingListener listenerB = new RecordingListener(false);
+        a.setTransferListener(listenerA);
+        b.setTransferListener(listenerB);
+
+        // 两端的第一个传输 ID 都是 1；A 发的超过高水位，B 拒收时 A 还有数据没发
+        byte[] fromA = pattern(3 * 1024 * 1024, 7);
+        byte[] fromB = pattern(200 * 1024, 13);
+        int idA = a.sendStream(source(fromA), "a.bin", fromA.length);
+        int idB = b.sendStream(source(fromB), "b.bin", fromB.length);
+        assertEquals(idA, idB);
+        runAll();
+
+        // B 拒收 A 的传输，A 停止发送；A 接收 B 的传输不受影响
+        assertEquals(Arrays.asList("failed out " + idA + " 对方已拒收"), listenerA.outgoingEvents);
+        assertEquals(Arrays.asList("completed in " + idB), listenerA.incomingEvents);
+        assertArrayEquals(fromB, listenerA.received.toByteArray());
+        assertEquals(Arrays.asList("completed out " + idB), listenerB.outgoingEvents);
+        assertEquals(Arrays.asList("rejected " + idA), listenerB.incomingEvents);
+        assertTrue(channelA.sentBytes < fromA.length);
+        assertEquals(0, channelA.countFrames(DataChannelTransfer.FRAME_CANCEL));
+    }
+
+    @Test
+    public void cancelStopsTransferBeingPumped() throws IOException {
+        FakeChannel channelA = new FakeChannel();
+        FakeChannel channelB = new FakeChannel();
+        channelA.peer = channelB;
+        channelB.peer = channelA;
+        DataChannelTransfer a = new DataChannelTransfer("b", channelA, executor);
+        DataChannelTransfer b = new DataChannelTransfer("a", channelB, executor);
+        RecordingListener listenerA = new RecordingListener(true);
+        RecordingListener listenerB = new RecordingListener(true);
+        a.setTransferListener(listenerA);
+        b.setTransferListener(listenerB);
+
+        byte[] data = pattern(4 * DataChannelTransfer.CHUNK_SIZE, 3);
+        int[] id = new int[1];
+        ReadableByteChannel inner = source(data);
+        // 第一次读取数据块时取消：此时传输已被 pump 取出，不在发送队列中
+        ReadableByteChannel cancelling = new ReadableByteChannel() {
+            private boolean cancelled;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (!cancelled) {
+                    cancelled = true;
+                    a.cancel(id[0]);
+                }
+                return inner.read(dst);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return inner.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                inner.close();
+            }
+        };
+        id[0] = a.sendStream(cancelling, "c.bin", data.length);
+        runAll();
+
+        assertEquals(Arrays.asList("failed out " + id[0] + " 已取消"), listenerA.outgoingEvents);
+        assertEquals(Arrays.asList("failed in " + id[0] + " 对方已取消"), listenerB.incomingEvents);
+        assertEquals(1, channelA.countFrames(DataChannelTransfer.FRAME_DATA));
+        assertEquals(0, channelA.countFrames(DataChannelTransfer.FRAME_END));
+        assertEquals(1, channelA.countFrames(DataChannelTransfer.FRAME_CANCEL));
+        assertTrue(!cancelling.isOpen());
+    }
+
+    private void runAll() {
+        Runnable task;
+        while ((task = tasks.pollFirst()) != null) {
+            task.run();
+        }
+    }
+
+    private static ReadableByteChannel source(byte[] data) {
+        return Channels.newChannel(new java.io.ByteArrayInputStream(data));
+    }
+
+    private static byte[] pattern(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * seed);
+        }
+        return data;
+    }
+
+    // 发出的帧排入任务队列后投递给对端，bufferedAmount 为尚未投递的字节数
+    private final class FakeChannel extends DataChannel {
+        FakeChannel peer;
+        Observer observer;
+        long buffered;
+        long sentBytes;
+        final List<Byte> frameTypes = new ArrayList<>();
+
+        FakeChannel() {
+            super(0);
+        }
+
+        @Override
+        public void registerObserver(Observer observer) {
+            this.observer = observer;
+        }
+
+        @Override
+        public void unregisterObserver() {
+            observer = null;
+        }
+
+        @Override
+        public State state() {
+            return State.OPEN;
+        }
+
+        @Override
+        public long bufferedAmount() {
+            return buffered;
+        }
+
+        @Override
+        public boolean send(Buffer buffer) {
+            ByteBuffer copy = ByteBuffer.allocate(buffer.data.remaining());
+            copy.put(buffer.data).flip();
+            int size = copy.remaining();
+            byte type = copy.get(0);
+            frameTypes.add(type);
+            if (type == DataChannelTransfer.FRAME_DATA) {
+                sentBytes += size - 5;
+            }
+            buffered += size;
+            tasks.addLast(() -> {
+                long previous = buffered;
+                buffered -= size;
+                if (peer.observer != null) {
+                    peer.observer.onMessage(new Buffer(copy, true));
+                }
+                if (observer != null) {
+                    observer.onBufferedAmountChange(previous);
+                }
+            });
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        int countFrames(byte type) {
+            int count = 0;
+            for (byte t : frameTypes) {
+                if (t == type) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private static final class RecordingListener implements DataChannelTransfer.TransferListener {
+        final boolean accept;
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final List<String> outgoingEvents = new ArrayList<>();
+        final List<String> incomingEvents = new ArrayList<>();
+
+        RecordingListener(boolean accept) {
+            this.accept = accept;
+        }
+
+        @Override
+        public WritableByteChannel onIncomingTransfer(String peerId, int transferId, String name, long size) {
+            if (!accept) {
+                incomingEvents.add("rejected " + transferId);
+                return null;
+            }
+            return Channels.newChannel(received);
+        }
+
+        @Override
+        public void onProgress(String peerId, int transferId, boolean outgoing, long transferred, long total) {
+        }
+
+        @Override
+        public void onCompleted(String peerId, int transferId, boolean outgoing) {
+            events(outgoing).add("completed " + (outgoing ? "out " : "in ") + transferId);
+        }
+
+        @Override
+        public void onFailed(String peerId, int transferId, boolean outgoing, String reason) {
+            events(outgoing).add("failed " + (outgoing ? "out " : "in ") + transferId + " " + reason);
+        }
+
+        private List<String> events(boolean outgoing) {
+            return outgoing ? outgoingEvents : incomingEvents;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.webrtc_p2p;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// 用 Chrome 的 Offer 和 Android libwebrtc 的 Answer（音频 + 视频 + DataChannel）验证两个预设的改写结果：
+// 只改音频 m 行，会话级属性、视频和 DataChannel 部分逐字节不变
+public class SdpMungerTest {
+    private static final String CHROME_OFFER = "sdp/chrome-offer.sdp";
+    private static final String LIBWEBRTC_ANSWER = "sdp/libwebrtc-answer.sdp";
+
+    private static final String CHROME_OPUS_FMTP_CELLULAR = "a=fmtp:111 minptime=10;useinbandfec=1;"
+            + "maxaveragebitrate=16000;usedtx=1;stereo=0;sprop-stereo=0;maxplaybackrate=16000";
+    private static final String CHROME_OPUS_FMTP_LAN = "a=fmtp:111 minptime=10;useinbandfec=0;"
+            + "maxaveragebitrate=64000;usedtx=0;stereo=0;sprop-stereo=0;maxplaybackrate=48000";
+
+    @Test
+    public void cellularRewritesChromeOfferAudio() throws IOException {
+        String offer = load(CHROME_OFFER);
+        String munged = SdpMunger.apply(offer, AudioProfile.LOW_BANDWIDTH_CELLULAR);
+
+        assertEquals(Arrays.asList(
+                "m=audio 9 UDP/TLS/RTP/SAVPF 111 110 126",
+                "c=IN IP4 0.0.0.0",
+                "a=rtcp:9 IN IP4 0.0.0.0",
+                "a=ice-ufrag:Jd3K",
+                "a=ice-pwd:8mQpXvW2a7kLr0sT4uYbNc1e",
+                "a=ice-options:trickle",
+                "a=fingerprint:sha-256 4A:9C:3E:71:0B:D2:58:F6:1A:8E:C4:27:93:5D:B0:6F:"
+                        + "E2:14:7A:C9:38:D5:06:BB:61:F0:2C:8D:45:A7:1E:93",
+                "a=setup:actpass",
+                "a=mid:0",
+                "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level",
+                "a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01",
+                "a=sendrecv",
+                "a=msid:5f1c2d7e-3a4b-4c8d-9e0f-a1b2c3d4e5f6 0b7e4f2a-91c3-4d6e-8a5b-c7d9e1f30a24",
+                "a=rtcp-mux",
+                "a=rtcp-rsize",
+                "a=rtpmap:111 opus/48000/2",
+                "a=rtcp-fb:111 transport-cc",
+                CHROME_OPUS_FMTP_CELLULAR,
+                "a=rtpmap:110 telephone-event/48000",
+                "a=rtpmap:126 telephone-event/8000",
+                "a=ssrc:1736462181 cname:Yq8uK0wJ2pLh5vXn",
+                "a=ssrc:1736462181 msid:5f1c2d7e-3a4b-4c8d-9e0f-a1b2c3d4e5f6 0b7e4f2a-91c3-4d6e-8a5b-c7d9e1f30a24",
+                "a=ptime:60"), section(munged, "m=audio"));
+        assertUntouchedOutsideAudio(offer, munged);
+    }
+
+    @Test
+    public void cellularRewritesLibwebrtcAnswerAudio() throws IOException {
+        String answer = load(LIBWEBRTC_ANSWER);
+        String munged = SdpMunger.apply(answer, AudioProfile.LOW_BANDWIDTH_CELLULAR);
+
+        assertEquals(Arrays.asList(
+                "m=audio 9 UDP/TLS/RTP/SAVPF 111 110 126",
+                "c=IN IP4 0.0.0.0",
+                "a=rtcp:9 IN IP4 0.0.0.0",
+                "a=ice-ufrag:r7Qe",
+                "a=ice-pwd:Lx2bW9nF4kP0sTq6vYc8aD1h",
+                "a=ice-options:trickle renomination",
+                "a=fingerprint:sha-256 D1:6B:88:2F:0C:E5:73:A9:4E:17:B2:C0:59:3D:8A:F4:"
+                        + "26:91:E7:0D:BC:43:7F:A2:58:C6:1E:09:D4:73:2B:E8",
+                "a=setup:active",
+                "a=mid:0",
+                "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level",
+                "a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01",
+                "a=sendrecv",
+                "a=msid:audio_stream audio_track",
+                "a=rtcp-mux",
+                "a=rtpmap:111 opus/48000/2",
+                "a=rtcp-fb:111 transport-cc",
+                CHROME_OPUS_FMTP_CELLULAR,
+                "a=rtpmap:110 telephone-event/48000",
+                "a=rtpmap:126 telephone-event/8000",
+                "a=ssrc:3962844710 cname:tW5nJ8yR1cE4mZ0q",
+                "a=ptime:60"), section(munged, "m=audio"));
+        assertUntouchedOutsideAudio(answer, munged);
+    }
+
+    @Test
+    public void cellularRemovesUnusedCodecLines() throws IOException {
+        for (String fixture : Arrays.asList(CHROME_OFFER, LIBWEBRTC_ANSWER)) {
+            List<String> audio = section(SdpMunger.apply(load(fixture), AudioProfile.LOW_BANDWIDTH_CELLULAR),
+                    "m=audio");
+            // RED(63)、G722(9)、PCMU(0)、PCMA(8)、CN(13) 的 rtpmap/fmtp/rtcp-fb 都被删除
+            for (String pt : Arrays.asList("63", "9", "0", "8", "13")) {
+                for (String prefix : Arrays.asList("a=rtpmap:", "a=fmtp:", "a=rtcp-fb:")) {
+                    assertNoLineStartingWith(fixture, audio, prefix + pt + " ");
+                }
+            }
+            assertNoLineStartingWith(fixture, audio, "a=extmap:2 ");
+            assertNoLineStartingWith(fixture, audio, "a=extmap:4 ");
+        }
+    }
+
+    @Test
+    public void lanOnlyRewritesFmtpAndPtime() throws IOException {
+        for (String fixture : Arrays.asList(CHROME_OFFER, LIBWEBRTC_ANSWER)) {
+            String original = load(fixture);
+            String munged = SdpMunger.apply(original, AudioProfile.LOW_LATENCY_LAN);
+
+            // 不删编解码器和头扩展：除 Opus fmtp 被替换、末尾追加 a=ptime 外与原文相同
+            List<String> expected = new ArrayList<>();
+            for (String line : section(original, "m=audio")) {
+                expected.add(line.startsWith("a=fmtp:111 ") ? CHROME_OPUS_FMTP_LAN : line);
+            }
+            expected.add("a=ptime:10");
+            assertEquals(fixture, expected, section(munged, "m=audio"));
+            assertUntouchedOutsideAudio(original, munged);
+        }
+    }
+
+    @Test
+    public void existingPtimeIsReplaced() throws IOException {
+        String cellular = SdpMunger.apply(load(CHROME_OFFER), AudioProfile.LOW_BANDWIDTH_CELLULAR);
+        // 再次改写已带 a=ptime:60 的 SDP：原有的 ptime 被替换，不会出现两行
+        List<String> audio = section(SdpMunger.apply(cellular, AudioProfile.LOW_LATENCY_LAN), "m=audio");
+        assertEquals(1, countStartingWith(audio, "a=ptime:"));
+        assertEquals("a=ptime:10", audio.get(audio.size() - 1));
+        assertTrue(audio.contains("a=fmtp:111 minptime=10;useinbandfec=0;maxaveragebitrate=64000;usedtx=0;"
+                + "stereo=0;sprop-stereo=0;maxplaybackrate=48000"));
+        // 同一预设重复改写结果不变
+        assertEquals(cellular, SdpMunger.apply(cellular, AudioProfile.LOW_BANDWIDTH_CELLULAR));
+    }
+
+    @Test
+    public void missingOpusFmtpIsAdded() throws IOException {
+        String offer = load(CHROME_OFFER).replace("a=fmtp:111 minptime=10;useinbandfec=1\r\n", "");
+        List<String> audio = section(SdpMunger.apply(offer, AudioProfile.LOW_BANDWIDTH_CELLULAR), "m=audio");
+        int rtpmap = audio.indexOf("a=rtpmap:111 opus/48000/2");
+        assertEquals("a=fmtp:111 maxaveragebitrate=16000;useinbandfec=1;usedtx=1;stereo=0;sprop-stereo=0;"
+                + "maxplaybackrate=16000", audio.get(rtpmap + 1));
+        assertEquals(1, countStartingWith(audio, "a=fmtp:111 "));
+    }
+
+    @Test
+    public void nullProfileKeepsSdp() throws IOException {
+        String offer = load(CHROME_OFFER);
+        assertEquals(offer, SdpMunger.apply(offer, null));
+    }
+
+    @Test
+    public void originSessionIdReadsOriginLine() throws IOException {
+        assertEquals("4611731400430051336", SdpMunger.originSessionId(load(CHROME_OFFER)));
+        assertEquals("7329061473950201784", SdpMunger.originSessionId(load(LIBWEBRTC_ANSWER)));
+        // 只有 \n 换行、o= 不在第一行
+        assertEquals("42", SdpMunger.originSessionId("v=0\no=- 42 3 IN IP4 0.0.0.0\ns=-\n"));
+        assertEquals("42", SdpMunger.originSessionId("o=- 42 3 IN IP4 0.0.0.0"));
+        assertNull(SdpMunger.originSessionId("v=0\r\ns=-\r\n"));
+    }
+
+    @Test
+    public void hasActiveMediaFollowsAudioAndVideoLines() throws IOException {
+        String offer = load(CHROME_OFFER);
+        assertTrue(SdpMunger.hasActiveMedia(offer));
+        assertTrue(SdpMunger.hasActiveMedia(load(LIBWEBRTC_ANSWER)));
+
+        // 复用会话挂断时的重新协商：音视频都改为 inactive，只剩 DataChannel
+        String parked = offer.replace("a=sendrecv\r\n", "a=inactive\r\n");
+        assertFalse(SdpMunger.hasActiveMedia(parked));
+        // 只要有一个 m 行仍在收发就算活跃
+        assertTrue(SdpMunger.hasActiveMedia(parked.replaceFirst("a=inactive\r\n", "a=recvonly\r\n")));
+        // 端口为 0 的 m 行已被拒绝
+        assertFalse(SdpMunger.hasActiveMedia(offer
+                .replace("m=audio 9 ", "m=audio 0 ")
+                .replace("m=video 9 ", "m=video 0 ")));
+        assertFalse(SdpMunger.hasActiveMedia("v=0\r\nm=application 9 UDP/DTLS/SCTP webrtc-datachannel\r\n"
+                + "a=sctp-port:5000\r\n"));
+    }
+
+    // 会话级属性、视频和 DataChannel 部分与原文逐字节相同
+    private static void assertUntouchedOutsideAudio(String original, String munged) {
+        assertEquals(sessionLevel(original), sessionLevel(munged));
+        assertEquals(sectionText(original, "m=video"), sectionText(munged, "m=video"));
+        assertEquals(sectionText(original, "m=application"), sectionText(munged, "m=application"));
+        assertTrue(munged.endsWith("\r\n"));
+    }
+
+    private static void assertNoLineStartingWith(String fixture, List<String> lines, String prefix) {
+        assertEquals(fixture + " " + prefix, 0, countStartingWith(lines, prefix));
+    }
+
+    private static int countStartingWith(List<String> lines, String prefix) {
+        int count = 0;
+        for (String line : lines) {
+            if (line.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String sessionLevel(String sdp) {
+        return sdp.substring(0, sdp.indexOf("\r\nm=") + 2);
+    }
+
+    // 以 mLinePrefix 开头的 m 行到下一个 m 行（或结尾）之间的原文
+    private static String sectionText(String sdp, String mLinePrefix) {
+        int start = sdp.indexOf("\r\n" + mLinePrefix) + 2;
+        assertTrue(mLinePrefix, start >= 2);
+        int end = sdp.indexOf("\r\nm=", start);
+        return sdp.substring(start, end < 0 ? sdp.length() : end + 2);
+    }
+
+    private static List<String> section(String sdp, String mLinePrefix) {
+        return Arrays.asList(sectionText(sdp, mLinePrefix).split("\r\n"));
+    }
+
+    // 统一为 CRLF，不受检出时换行转换的影响
+    private static String load(String resource) throws IOException {
+        InputStream in = SdpMungerTest.class.getClassLoader().getResourceAsStream(resource);
+        assertNotNull(resource, in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8)
+                .replace("\r\n", "\n")
+                .replace("\n", "\r\n");
+    }
+}
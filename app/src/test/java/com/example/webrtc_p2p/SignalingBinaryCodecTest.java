@@ -0,0 +1,106 @@
+package com.example.webrtc_p2p;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SignalingBinaryCodecTest {
+    private final SignalingBinaryCodec codec = new SignalingBinaryCodec();
+
+    @Test
+    public void offerRoundTrips() throws IOException {
+        String sdp = "v=0\r\no=- 1 2 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\na=group:BUNDLE 0\r\n"
+                + "m=audio 9 UDP/TLS/RTP/SAVPF 111\r\nc=IN IP4 0.0.0.0\r\na=mid:0\r\na=rtpmap:111 opus/48000/2\r\n";
+        assertEquals(Arrays.asList("offer " + sdp), decode(codec.encodeOffer("3", sdp)));
+    }
+
+    @Test
+    public void sdpAtLimitIsAccepted() throws IOException {
+        String sdp = repeat('a', SignalingBinaryCodec.MAX_SDP_BYTES);
+        assertEquals(Arrays.asList("answer " + sdp), decode(codec.encodeAnswer(null, sdp)));
+    }
+
+    @Test
+    public void oversizedCompressedSdpIsRejected() {
+        // 1 MB 的重复内容压缩后只有约 1 KB
+        byte[] frame = codec.encodeOffer(null, repeat('a', 1024 * 1024));
+        assertTrue(frame.length < 4096);
+        assertRejected(frame);
+    }
+
+    @Test
+    public void oversizedRawSdpIsRejected() {
+        byte[] sdp = repeat('a', SignalingBinaryCodec.MAX_SDP_BYTES + 1).getBytes();
+        ByteBuffer frame = ByteBuffer.allocate(3 + sdp.length);
+        frame.put((byte) SignalingBinaryCodec.VERSION).put(SignalingBinaryCodec.TYPE_OFFER).put((byte) 0).put(sdp);
+        assertRejected(frame.array());
+    }
+
+    private void assertRejected(byte[] frame) {
+        try {
+            decode(frame);
+            fail("应当拒绝超长的 SDP");
+        } catch (IOException expected) {
+            // 预期
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private List<String> decode(byte[] frame) throws IOException {
+        List<String> calls = new ArrayList<>();
+        codec.decode(ByteBuffer.wrap(frame), new SignalingCodec.MessageHandler() {
+            @Override
+            public void onOffer(String from, String sdp) {
+                calls.add("offer " + sdp);
+            }
+
+            @Override
+            public void onAnswer(String from, String sdp) {
+                calls.add("answer " + sdp);
+            }
+
+            @Override
+            public void onIceCandidate(String from, SignalingCodec.Candidate candidate) {
+                calls.add("candidate " + candidate);
+            }
+
+            @Override
+            public void onProtocolAck(int binaryVersion) {
+            }
+
+            @Override
+            public void onConnection(String clientId, List<String> peers, String sessionToken) {
+            }
+
+            @Override
+            public void onSessionResumed(String clientId, long received, long seq) {
+            }
+
+            @Override
+            public void onPeerJoined(String clientId) {
+            }
+
+            @Override
+            public void onPeerLeft(String clientId) {
+            }
+
+            @Override
+            public void onUnknown(String type) {
+            }
+        });
+        return calls;
+    }
+}
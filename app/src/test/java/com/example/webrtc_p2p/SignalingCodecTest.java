@@ -0,0 +1,320 @@
+package com.example.webrtc_p2p;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// 与原先 JsonObject + gson.toJson 的线上格式比对：编码结果逐字段相同，原先格式的消息解码后回调参数正确
+public class SignalingCodecTest {
+    private static final String SDP = "v=0\r\n"
+            + "o=- 4611731400430051336 2 IN IP4 127.0.0.1\r\n"
+            + "s=-\r\n"
+            + "t=0 0\r\n"
+            + "a=group:BUNDLE 0\r\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111 63\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=mid:0\r\n"
+            + "a=rtpmap:111 opus/48000/2\r\n"
+            + "a=fmtp:111 minptime=10;useinbandfec=1\r\n"
+            + "a=ssrc:1001 cname:\"quoted\" <tag> & 'x'\r\n";
+    private static final String CANDIDATE =
+            "candidate:842163049 1 udp 1677729535 203.0.113.7 51234 typ srflx raddr 0.0.0.0 rport 0 generation 0";
+
+    // 原先的编码路径
+    private final Gson gson = new Gson();
+    private final SignalingCodec codec = new SignalingCodec();
+
+    @Test
+    public void encodeOfferMatchesJsonObject() throws IOException {
+        JsonObject expected = baseline("offer");
+        expected.addProperty("sdp", SDP);
+        assertSameFields(expected, codec.encodeOffer(null, SDP));
+    }
+
+    @Test
+    public void encodeAnswerMatchesJsonObject() throws IOException {
+        JsonObject expected = baseline("answer");
+        expected.addProperty("sdp", SDP);
+        assertSameFields(expected, codec.encodeAnswer(null, SDP));
+    }
+
+    @Test
+    public void encodeAddsTargetOnlyWhenAddressed() throws IOException {
+        JsonObject expected = baseline("offer");
+        expected.addProperty("to", "3");
+        expected.addProperty("sdp", SDP);
+        assertSameFields(expected, codec.encodeOffer("3", SDP));
+        assertFalse(parse(codec.encodeAnswer(null, SDP)).has("to"));
+    }
+
+    @Test
+    public void encodeIceCandidateMatchesJsonObject() throws IOException {
+        JsonObject expected = baseline("ice-candidate");
+        expected.addProperty("candidate", CANDIDATE);
+        expected.addProperty("sdpMid", "0");
+        expected.addProperty("sdpMLineIndex", 0);
+        assertSameFields(expected, codec.encodeIceCandidate(null, new SignalingCodec.Candidate("0", 0, CANDIDATE)));
+    }
+
+    @Test
+    public void encodeLegacyIceCandidateHasOnlyCandidateField() throws IOException {
+        // 与原先的 sendIceCandidate 相同：只有 type 和 candidate
+        JsonObject expected = baseline("ice-candidate");
+        expected.addProperty("candidate", CANDIDATE);
+        assertSameFields(expected, codec.encodeIceCandidate(null, new SignalingCodec.Candidate(null, -1, CANDIDATE)));
+    }
+
+    @Test
+    public void encodeIceCandidatesMatchesJsonObject() throws IOException {
+        JsonObject expected = baseline("ice-candidates");
+        expected.addProperty("to", "7");
+        JsonArray array = new JsonArray();
+        array.add(candidateObject(CANDIDATE, "0", 0));
+        array.add(candidateObject(CANDIDATE.replace("51234", "51235"), "1", 1));
+        expected.add("candidates", array);
+        List<SignalingCodec.Candidate> batch = Arrays.asList(
+                new SignalingCodec.Candidate("0", 0, CANDIDATE),
+                new SignalingCodec.Candidate("1", 1, CANDIDATE.replace("51234", "51235")));
+        assertSameFields(expected, codec.encodeIceCandidates("7", batch));
+    }
+
+    @Test
+    public void encodeProtocolHelloMatchesJsonObject() throws IOException {
+        JsonObject expected = baseline("protocol-hello");
+        expected.addProperty("binaryVersion", SignalingBinaryCodec.VERSION);
+        assertSameFields(expected, codec.encodeProtocolHello(SignalingBinaryCodec.VERSION));
+    }
+
+    @Test
+    public void encodeReusesBufferBetweenMessages() throws IOException {
+        codec.encodeOffer(null, SDP);
+        JsonObject expected = baseline("ice-candidate");
+        expected.addProperty("candidate", CANDIDATE);
+        assertSameFields(expected, codec.encodeIceCandidate(null, new SignalingCodec.Candidate(null, -1, CANDIDATE)));
+    }
+
+    @Test
+    public void decodeBaselineOffer() throws IOException {
+        JsonObject message = baseline("offer");
+        message.addProperty("sdp", SDP);
+        // gson.toJson 默认把 '=' 等字符转义为 Unicode 转义序列，解码结果必须与原文相同
+        String json = gson.toJson(message);
+        assertTrue(json.contains("\\u003d"));
+        assertEquals(Arrays.asList("offer null " + SDP), decode(json));
+    }
+
+    @Test
+    public void decodeBaselineAnswerWithNumericFrom() throws IOException {
+        JsonObject message = baseline("answer");
+        message.addProperty("sdp", SDP);
+        message.addProperty("from", 12);
+        assertEquals(Arrays.asList("answer 12 " + SDP), decode(gson.toJson(message)));
+    }
+
+    @Test
+    public void decodeBaselineIceCandidate() throws IOException {
+        JsonObject message = baseline("ice-candidate");
+        message.addProperty("candidate", CANDIDATE);
+        assertEquals(Arrays.asList("candidate null null/-1 " + CANDIDATE), decode(gson.toJson(message)));
+    }
+
+    @Test
+    public void decodeIceCandidateWithMid() throws IOException {
+        JsonObject message = baseline("ice-candidate");
+        message.addProperty("from", "2");
+        message.addProperty("candidate", CANDIDATE);
+        message.addProperty("sdpMid", "0");
+        message.addProperty("sdpMLineIndex", 0);
+        assertEquals(Arrays.asList("candidate 2 0/0 " + CANDIDATE), decode(gson.toJson(message)));
+    }
+
+    @Test
+    public void decodeIceCandidatesInOrder() throws IOException {
+        JsonObject message = baseline("ice-candidates");
+        message.addProperty("from", "2");
+        JsonArray array = new JsonArray();
+        array.add(candidateObject(CANDIDATE, "0", 0));
+        // 旧版客户端的数组元素是 candidate 字符串
+        array.add("candidate:2 1 udp 2122260223 192.168.0.9 50000 typ host");
+        message.add("candidates", array);
+        assertEquals(Arrays.asList(
+                "candidate 2 0/0 " + CANDIDATE,
+                "candidate 2 null/-1 candidate:2 1 udp 2122260223 192.168.0.9 50000 typ host"),
+                decode(gson.toJson(message)));
+    }
+
+    @Test
+    public void decodeBaselineConnection() throws IOException {
+        // 原先的服务端只下发数字 clientId
+        JsonObject message = baseline("connection");
+        message.addProperty("clientId", 5);
+        assertEquals(Arrays.asList("connection 5 null null"), decode(gson.toJson(message)));
+    }
+
+    @Test
+    public void decodeConnectionWithPeersAndToken() throws IOException {
+        JsonObject message = baseline("connection");
+        message.addProperty("clientId", "5");
+        JsonArray peers = new JsonArray();
+        peers.add("1");
+        peers.add("3");
+        message.add("peers", peers);
+        message.addProperty("sessionToken", "abc");
+        assertEquals(Arrays.asList("connection 5 [1, 3] abc"), decode(gson.toJson(message)));
+    }
+
+    @Test
+    public void decodePeerJoinedAndLeft() throws IOException {
+        JsonObject joined = baseline("peer-joined");
+        joined.addProperty("clientId", 4);
+        JsonObject left = baseline("peer-left");
+        left.addProperty("clientId", "4");
+        assertEquals(Arrays.asList("joined 4"), decode(gson.toJson(joined)));
+        assertEquals(Arrays.asList("left 4"), decode(gson.toJson(left)));
+    }
+
+    @Test
+    public void decodeProtocolAck() throws IOException {
+        JsonObject message = baseline("protocol-ack");
+        message.addProperty("binaryVersion", 1);
+        assertEquals(Arrays.asList("ack 1"), decode(gson.toJson(message)));
+    }
+
+    @Test
+    public void decodeSessionResumed() throws IOException {
+        JsonObject message = baseline("session-resumed");
+        message.addProperty("clientId", "5");
+        message.addProperty("received", 17);
+        message.addProperty("seq", 9);
+        assertEquals(Arrays.asList("resumed 5 17 9"), decode(gson.toJson(message)));
+    }
+
+    @Test
+    public void decodeSkipsUnknownFieldsAndTypes() throws IOException {
+        JsonObject message = baseline("offer");
+        JsonObject extra = new JsonObject();
+        extra.addProperty("nested", true);
+        message.add("extra", extra);
+        message.addProperty("sdp", SDP);
+        assertEquals(Arrays.asList("offer null " + SDP), decode(gson.toJson(message)));
+        assertEquals(Arrays.asList("unknown bye"), decode(gson.toJson(baseline("bye"))));
+    }
+
+    @Test
+    public void decodeRoundTripsEncodedMessages() throws IOException {
+        assertEquals(Arrays.asList("offer null " + SDP), decode(codec.encodeOffer("1", SDP)));
+        assertEquals(Arrays.asList("candidate null 0/0 " + CANDIDATE),
+                decode(codec.encodeIceCandidate("1", new SignalingCodec.Candidate("0", 0, CANDIDATE))));
+    }
+
+    @Test
+    public void decodeRejectsMissingFields() {
+        assertDecodeFails("{\"sdp\":\"x\"}");
+        assertDecodeFails("{\"type\":\"offer\"}");
+        assertDecodeFails("{\"type\":\"ice-candidate\",\"sdpMid\":\"0\"}");
+        assertDecodeFails("{\"type\":\"connection\"}");
+    }
+
+    private static JsonObject baseline(String type) {
+        JsonObject message = new JsonObject();
+        message.addProperty("type", type);
+        return message;
+    }
+
+    private static JsonObject candidateObject(String candidate, String sdpMid, int sdpMLineIndex) {
+        JsonObject object = new JsonObject();
+        object.addProperty("candidate", candidate);
+        object.addProperty("sdpMid", sdpMid);
+        object.addProperty("sdpMLineIndex", sdpMLineIndex);
+        return object;
+    }
+
+    private static JsonObject parse(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    // 字段集合、字段值和字段顺序都与 JsonObject 相同；字符串转义可以不同
+    private void assertSameFields(JsonObject expected, String actualJson) {
+        JsonObject actual = parse(actualJson);
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        for (String key : expected.keySet()) {
+            JsonElement value = expected.get(key);
+            assertEquals(key, value, actual.get(key));
+        }
+        assertEquals(expected, parse(gson.toJson(expected)));
+    }
+
+    private void assertDecodeFails(String json) {
+        try {
+            decode(json);
+            fail("应当拒绝: " + json);
+        } catch (IOException expected) {
+            // 预期
+        }
+    }
+
+    private List<String> decode(String json) throws IOException {
+        List<String> calls = new ArrayList<>();
+        codec.decode(json, new SignalingCodec.MessageHandler() {
+            @Override
+            public void onOffer(String from, String sdp) {
+                calls.add("offer " + from + " " + sdp);
+            }
+
+            @Override
+            public void onAnswer(String from, String sdp) {
+                calls.add("answer " + from + " " + sdp);
+            }
+
+            @Override
+            public void onIceCandidate(String from, SignalingCodec.Candidate candidate) {
+                calls.add("candidate " + from + " " + candidate);
+            }
+
+            @Override
+            public void onProtocolAck(int binaryVersion) {
+                calls.add("ack " + binaryVersion);
+            }
+
+            @Override
+            public void onConnection(String clientId, List<String> peers, String sessionToken) {
+                calls.add("connection " + clientId + " " + peers + " " + sessionToken);
+            }
+
+            @Override
+            public void onSessionResumed(String clientId, long received, long seq) {
+                calls.add("resumed " + clientId + " " + received + " " + seq);
+            }
+
+            @Override
+            public void onPeerJoined(String clientId) {
+                calls.add("joined " + clientId);
+            }
+
+            @Override
+            public void onPeerLeft(String clientId) {
+                calls.add("left " + clientId);
+            }
+
+            @Override
+            public void onUnknown(String type) {
+                calls.add("unknown " + type);
+            }
+        });
+        return calls;
+    }
+}
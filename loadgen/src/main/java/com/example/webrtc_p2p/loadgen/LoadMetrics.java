@@ -0,0 +1,98 @@
+package com.example.webrtc_p2p.loadgen;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// 压测指标：计数器用 LongAdder，Offer→Answer 往返耗时存入预分配的 long 数组，结束后排序取分位数
+final class LoadMetrics {
+    // 只计 Offer/Answer/Candidate 消息
+    final LongAdder messagesSent = new LongAdder();
+    final LongAdder messagesReceived = new LongAdder();
+    // 协议协商、客户端 ID 分配、上线/下线广播等控制消息
+    final LongAdder controlMessagesSent = new LongAdder();
+    final LongAdder controlMessagesReceived = new LongAdder();
+    final LongAdder sessionsCompleted = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder answerTimeouts = new LongAdder();
+    // 已收到 Answer，但双方的 Candidate 没有在超时内全部送达
+    final LongAdder candidateTimeouts = new LongAdder();
+    final LongAdder sendFailures = new LongAdder();
+    final LongAdder decodeFailures = new LongAdder();
+    final LongAdder otherFailures = new LongAdder();
+
+    private final long[] roundTripNanos;
+    private final AtomicInteger roundTripCount = new AtomicInteger();
+
+    LoadMetrics(int maxSamples) {
+        roundTripNanos = new long[maxSamples];
+    }
+
+    void recordRoundTrip(long nanos) {
+        int i = roundTripCount.getAndIncrement();
+        if (i < roundTripNanos.length) {
+            roundTripNanos[i] = nanos;
+        }
+    }
+
+    // 一行 JSON，便于逐次追加到文件做回归对比
+    void writeReport(Writer out, LoadOptions options, long elapsedNanos, boolean binaryActive) throws IOException {
+        int count = Math.min(roundTripCount.get(), roundTripNanos.length);
+        long[] sorted = Arrays.copyOf(roundTripNanos, count);
+        Arrays.sort(sorted);
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("timestamp").value(System.currentTimeMillis());
+        writer.name("url").value(options.url.toString());
+        writer.name("sessions").value(options.sessions);
+        writer.name("concurrency").value(options.concurrency);
+        writer.name("candidatesPerSide").value(options.candidates);
+        writer.name("binaryProtocol").value(binaryActive);
+        writer.name("durationMs").value(elapsedNanos / 1_000_000);
+        writer.name("sessionsCompleted").value(sessionsCompleted.sum());
+
+        writer.name("offerAnswerMs").beginObject();
+        writer.name("count").value(count);
+        writer.name("p50").value(percentileMs(sorted, 0.50));
+        writer.name("p95").value(percentileMs(sorted, 0.95));
+        writer.name("p99").value(percentileMs(sorted, 0.99));
+        writer.name("max").value(count > 0 ? sorted[count - 1] / 1e6 : 0);
+        writer.endObject();
+
+        writer.name("messages").beginObject();
+        writer.name("sent").value(messagesSent.sum());
+        writer.name("received").value(messagesReceived.sum());
+        writer.name("sentPerSecond").value(elapsedSeconds > 0 ? messagesSent.sum() / elapsedSeconds : 0);
+        writer.name("receivedPerSecond").value(elapsedSeconds > 0 ? messagesReceived.sum() / elapsedSeconds : 0);
+        writer.name("controlSent").value(controlMessagesSent.sum());
+        writer.name("controlReceived").value(controlMessagesReceived.sum());
+        writer.endObject();
+
+        writer.name("failures").beginObject();
+        writer.name("connect").value(connectFailures.sum());
+        writer.name("answerTimeout").value(answerTimeouts.sum());
+        writer.name("candidateTimeout").value(candidateTimeouts.sum());
+        writer.name("send").value(sendFailures.sum());
+        writer.name("decode").value(decodeFailures.sum());
+        writer.name("other").value(otherFailures.sum());
+        writer.endObject();
+
+        writer.endObject();
+        writer.flush();
+    }
+
+    // 最近秩法：取排序后第 ceil(p * n) 个样本
+    private static double percentileMs(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
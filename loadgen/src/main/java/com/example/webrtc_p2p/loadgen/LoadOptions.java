@@ -0,0 +1,79 @@
+package com.example.webrtc_p2p.loadgen;
+
+import java.io.File;
+import java.net.URI;
+
+// 命令行参数
+final class LoadOptions {
+    URI url = URI.create("ws://127.0.0.1:8081");
+    int sessions = 1000;
+    int concurrency = 200;
+    int candidates = 4;
+    long timeoutMs = 10_000;
+    boolean binary = false;
+    // 指定 signaling-server 目录时先在本地启动服务端，压测结束后关闭
+    File serverDir;
+    File output;
+
+    static final String USAGE = String.join("\n",
+            "用法: loadgen [选项]",
+            "  --url <ws://host:port>     信令服务器地址（默认 ws://127.0.0.1:8081）",
+            "  --sessions <n>             模拟的 Offer/Answer 会话总数（默认 1000）",
+            "  --concurrency <n>          同时进行的会话数（默认 200）",
+            "  --candidates <n>           每端发送的 ICE Candidate 数（默认 4）",
+            "  --timeout-ms <ms>          连接和等待 Answer 的超时（默认 10000）",
+            "  --binary                   协商并使用二进制信令协议",
+            "  --start-server <dir>       在本地启动 signaling-server（使用 --url 中的端口）",
+            "  --output <file>            结果追加写入文件（每次一行 JSON），默认输出到标准输出");
+
+    static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--url":
+                    options.url = URI.create(value(args, ++i, arg));
+                    break;
+                case "--sessions":
+                    options.sessions = positiveInt(args, ++i, arg);
+                    break;
+                case "--concurrency":
+                    options.concurrency = positiveInt(args, ++i, arg);
+                    break;
+                case "--candidates":
+                    options.candidates = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--timeout-ms":
+                    options.timeoutMs = positiveInt(args, ++i, arg);
+                    break;
+                case "--binary":
+                    options.binary = true;
+                    break;
+                case "--start-server":
+                    options.serverDir = new File(value(args, ++i, arg));
+                    break;
+                case "--output":
+                    options.output = new File(value(args, ++i, arg));
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知参数: " + arg);
+            }
+        }
+        return options;
+    }
+
+    private static String value(String[] args, int i, String name) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(name + " 缺少参数值");
+        }
+        return args[i];
+    }
+
+    private static int positiveInt(String[] args, int i, String name) {
+        int value = Integer.parseInt(value(args, i, name));
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " 必须大于 0");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.webrtc_p2p.loadgen;
+
+import com.example.webrtc_p2p.SignalingCodec;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 信令服务器压测工具：每个会话模拟一对客户端完成 Offer → Answer → ICE Candidate 交换，
+// 统计 Offer→Answer 往返耗时的 p50/p95/p99、消息吞吐和各类失败次数，结果输出为一行 JSON
+public final class SignalingLoadGenerator {
+    private final LoadOptions options;
+    private final LoadMetrics metrics;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final AtomicBoolean binaryActive = new AtomicBoolean(false);
+
+    SignalingLoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.metrics = new LoadMetrics(options.sessions);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        Process server = null;
+        if (options.serverDir != null) {
+            server = startServer(options);
+        }
+        try {
+            new SignalingLoadGenerator(options).run();
+        } finally {
+            if (server != null) {
+                server.destroy();
+                server.waitFor(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    void run() throws Exception {
+        Semaphore permits = new Semaphore(options.concurrency);
+        long start = System.nanoTime();
+        ExecutorService executor = newSessionExecutor();
+        for (int i = 0; i < options.sessions; i++) {
+            permits.acquire();
+            final int sessionIndex = i;
+            executor.execute(() -> {
+                try {
+                    runSession(sessionIndex);
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        if (options.output != null) {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(options.output, true), StandardCharsets.UTF_8)) {
+                metrics.writeReport(out, options, elapsed, binaryActive.get());
+                out.write('\n');
+            }
+        } else {
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            metrics.writeReport(out, options, elapsed, binaryActive.get());
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    // JDK 21 及以上使用虚拟线程（每个会话一个）；更早的 JDK 退回到与并发数相同的平台线程池
+    private ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("当前 JDK 不支持虚拟线程，使用 " + options.concurrency + " 个平台线程");
+            return Executors.newFixedThreadPool(options.concurrency);
+        }
+    }
+
+    private void runSession(int index) {
+        SessionPeers peers = new SessionPeers(index);
+        SimulatedClient offerer = new SimulatedClient(metrics, peers, options.binary);
+        SimulatedClient answerer = new SimulatedClient(metrics, peers, options.binary);
+        try {
+            String answererId;
+            try {
+                offerer.connect(httpClient, options.url, options.timeoutMs);
+                answererId = answerer.connect(httpClient, options.url, options.timeoutMs);
+            } catch (Exception e) {
+                metrics.connectFailures.increment();
+                return;
+            }
+            if (offerer.isBinaryActive()) {
+                binaryActive.set(true);
+            }
+
+            long sentAt = System.nanoTime();
+            offerer.sendOffer(answererId, SyntheticSdp.offer(index));
+            offerer.sendIceCandidates(answererId, SyntheticSdp.candidates(index, options.candidates));
+            try {
+                long answeredAt = peers.answerReceivedNanos.get(options.timeoutMs, TimeUnit.MILLISECONDS);
+                metrics.recordRoundTrip(answeredAt - sentAt);
+            } catch (TimeoutException e) {
+                metrics.answerTimeouts.increment();
+                return;
+            }
+            // 等双方 Candidate 都送达，确保会话的消息全部经过服务端
+            try {
+                peers.candidatesDone.get(options.timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Answer 已到达，超时的是 Candidate 投递，单独计数
+                metrics.candidateTimeouts.increment();
+                return;
+            }
+            metrics.sessionsCompleted.increment();
+        } catch (Exception e) {
+            metrics.otherFailures.increment();
+        } finally {
+            offerer.close();
+            answerer.close();
+        }
+    }
+
+    // 一个会话中两端的消息处理：应答端收到 Offer 后回复 Answer 和 Candidate，发起端记录 Answer 到达时间
+    private final class SessionPeers implements SimulatedClient.Callback {
+        final int index;
+        final CompletableFuture<Long> answerReceivedNanos = new CompletableFuture<>();
+        final CompletableFuture<Void> candidatesDone = new CompletableFuture<>();
+        private final int expectedCandidates = options.candidates * 2;
+        private int receivedCandidates = 0;
+
+        SessionPeers(int index) {
+            this.index = index;
+            if (expectedCandidates == 0) {
+                candidatesDone.complete(null);
+            }
+        }
+
+        @Override
+        public void onOffer(SimulatedClient client, String from, String sdp) {
+            try {
+                client.sendAnswer(from, SyntheticSdp.answer(index));
+                client.sendIceCandidates(from, SyntheticSdp.candidates(index, options.candidates));
+            } catch (IOException e) {
+                metrics.sendFailures.increment();
+            }
+        }
+
+        @Override
+        public void onAnswer(SimulatedClient client, String from, String sdp) {
+            answerReceivedNanos.complete(System.nanoTime());
+        }
+
+        @Override
+        public synchronized void onIceCandidate(SimulatedClient client, String from, String candidate) {
+            if (++receivedCandidates >= expectedCandidates) {
+                candidatesDone.complete(null);
+            }
+        }
+    }
+
+    private static Process startServer(LoadOptions options) throws IOException, InterruptedException {
+        int port = options.url.getPort() > 0 ? options.url.getPort() : 80;
+        ProcessBuilder builder = new ProcessBuilder("node", "server.js")
+                .directory(options.serverDir)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        builder.environment().put("PORT", String.valueOf(port));
+        Process process = builder.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("信令服务器启动失败，退出码: " + process.exitValue());
+            }
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(options.url.getHost(), port), 200);
+                return process;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        process.destroy();
+        throw new IOException("等待信令服务器监听端口 " + port + " 超时");
+    }
+
+    // 模拟的 SDP 与 Candidate，长度和结构接近 Android 端实际产生的内容
+    static final class SyntheticSdp {
+        private SyntheticSdp() {
+        }
+
+        static String offer(int index) {
+            return sdp(index, "actpass");
+        }
+
+        static String answer(int index) {
+            return sdp(index, "active");
+        }
+
+        private static String sdp(int index, String setup) {
+            return "v=0\r\n"
+                    + "o=- " + (4611686018427387904L + index) + " 2 IN IP4 127.0.0.1\r\n"
+                    + "s=-\r\n"
+                    + "t=0 0\r\n"
+                    + "a=group:BUNDLE 0\r\n"
+                    + "a=extmap-allow-mixed\r\n"
+                    + "a=msid-semantic: WMS\r\n"
+                    + "m=audio 9 UDP/TLS/RTP/SAVPF 111 63 9 0 8 13 110 126\r\n"
+                    + "c=IN IP4 0.0.0.0\r\n"
+                    + "a=rtcp:9 IN IP4 0.0.0.0\r\n"
+                    + "a=ice-ufrag:lg" + Integer.toHexString(index) + "\r\n"
+                    + "a=ice-pwd:loadgenpassword" + String.format("%08x", index) + "\r\n"
+                    + "a=ice-options:trickle renomination\r\n"
+                    + "a=fingerprint:sha-256 5A:1F:0C:9E:3B:7D:62:41:8A:F0:13:C4:2B:9D:E7:55:"
+                    + "06:AF:38:91:7C:D2:4E:B0:63:1A:F5:8C:27:D9:40:6E\r\n"
+                    + "a=setup:" + setup + "\r\n"
+                    + "a=mid:0\r\n"
+                    + "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n"
+                    + "a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n"
+                    + "a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01\r\n"
+                    + "a=sendrecv\r\n"
+                    + "a=msid:- audio_track\r\n"
+                    + "a=rtcp-mux\r\n"
+                    + "a=rtpmap:111 opus/48000/2\r\n"
+                    + "a=rtcp-fb:111 transport-cc\r\n"
+                    + "a=fmtp:111 minptime=10;useinbandfec=1\r\n"
+                    + "a=rtpmap:63 red/48000/2\r\n"
+                    + "a=fmtp:63 111/111\r\n"
+                    + "a=rtpmap:9 G722/8000\r\n"
+                    + "a=rtpmap:0 PCMU/8000\r\n"
+                    + "a=rtpmap:8 PCMA/8000\r\n"
+                    + "a=rtpmap:13 CN/8000\r\n"
+                    + "a=rtpmap:110 telephone-event/48000\r\n"
+                    + "a=rtpmap:126 telephone-event/8000\r\n"
+                    + "a=ssrc:" + (100000 + index) + " cname:loadgen" + index + "\r\n";
+        }
+
+        static List<SignalingCodec.Candidate> candidates(int index, int count) {
+            List<SignalingCodec.Candidate> candidates = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                candidates.add(new SignalingCodec.Candidate("0", 0, "candidate:" + (842163049L + i) + " 1 udp " + (2122260223L - i * 256L)
+                        + " 192.168." + (index % 250) + "." + (i + 2) + " " + (40000 + i)
+                        + " typ host generation 0 ufrag lg" + Integer.toHexString(index)
+                        + " network-id " + (i + 1) + " network-cost 10"));
+            }
+            return candidates;
+        }
+    }
+}
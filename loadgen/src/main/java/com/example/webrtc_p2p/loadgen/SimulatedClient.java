@@ -0,0 +1,238 @@
+package com.example.webrtc_p2p.loadgen;
+
+import com.example.webrtc_p2p.SignalingBinaryCodec;
+import com.example.webrtc_p2p.SignalingCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+// 模拟一个信令客户端：使用 JDK 自带的异步 WebSocket，不为每个连接创建读写线程
+// 编解码直接复用 app 中的 SignalingCodec / SignalingBinaryCodec，线上格式与 Android 端一致
+final class SimulatedClient implements WebSocket.Listener, SignalingCodec.MessageHandler {
+
+    // 收到对端消息时的回调，运行在 HttpClient 的线程上，不能阻塞
+    interface Callback {
+        void onOffer(SimulatedClient client, String from, String sdp);
+        void onAnswer(SimulatedClient client, String from, String sdp);
+        void onIceCandidate(SimulatedClient client, String from, String candidate);
+    }
+
+    private final LoadMetrics metrics;
+    private final Callback callback;
+    private final boolean binaryRequested;
+    private final SignalingCodec codec = new SignalingCodec();
+    private final SignalingBinaryCodec binaryCodec = new SignalingBinaryCodec();
+
+    private final CompletableFuture<String> clientId = new CompletableFuture<>();
+    // 请求二进制协议时，等服务端回复 ack 后才算就绪
+    private final CompletableFuture<Boolean> protocolReady = new CompletableFuture<>();
+    private final StringBuilder textBuffer = new StringBuilder();
+    private final ByteArrayOutputStream binaryBuffer = new ByteArrayOutputStream();
+    // 当前解码的消息是否为 Offer/Answer/Candidate；只在 WebSocket 回调线程上访问（同一连接的回调不会并发）
+    private boolean signalingMessage;
+    private volatile boolean binaryActive = false;
+    private WebSocket webSocket;
+    private CompletableFuture<WebSocket> lastSend = CompletableFuture.completedFuture(null);
+
+    SimulatedClient(LoadMetrics metrics, Callback callback, boolean binaryRequested) {
+        this.metrics = metrics;
+        this.callback = callback;
+        this.binaryRequested = binaryRequested;
+        if (!binaryRequested) {
+            protocolReady.complete(false);
+        }
+    }
+
+    // 建立连接并等待服务端分配客户端 ID，返回该 ID
+    String connect(HttpClient httpClient, URI uri, long timeoutMs) throws Exception {
+        webSocket = httpClient.newWebSocketBuilder()
+                .connectTimeout(java.time.Duration.ofMillis(timeoutMs))
+                .buildAsync(uri, this)
+                .get(timeoutMs, TimeUnit.MILLISECONDS);
+        if (binaryRequested) {
+            sendText(codec.encodeProtocolHello(SignalingBinaryCodec.VERSION), false);
+        }
+        String id = clientId.get(timeoutMs, TimeUnit.MILLISECONDS);
+        protocolReady.get(timeoutMs, TimeUnit.MILLISECONDS);
+        return id;
+    }
+
+    boolean isBinaryActive() {
+        return binaryActive;
+    }
+
+    void sendOffer(String to, String sdp) throws IOException {
+        if (binaryActive) {
+            sendBinary(binaryCodec.encodeOffer(to, sdp));
+        } else {
+            sendText(codec.encodeOffer(to, sdp), true);
+        }
+    }
+
+    void sendAnswer(String to, String sdp) throws IOException {
+        if (binaryActive) {
+            sendBinary(binaryCodec.encodeAnswer(to, sdp));
+        } else {
+            sendText(codec.encodeAnswer(to, sdp), true);
+        }
+    }
+
+    void sendIceCandidates(String to, List<SignalingCodec.Candidate> candidates) throws IOException {
+        if (binaryActive) {
+            sendBinary(binaryCodec.encodeIceCandidates(to, candidates));
+        } else {
+            sendText(codec.encodeIceCandidates(to, candidates), true);
+        }
+    }
+
+    // java.net.http.WebSocket 不允许上一次发送完成前再次发送，这里串成一条链
+    // signaling 为 false 的控制消息（协议协商）不计入信令消息数
+    private synchronized void sendText(String message, boolean signaling) {
+        lastSend = lastSend.thenCompose(ws -> webSocket.sendText(message, true));
+        lastSend.whenComplete((ws, error) -> countSend(error, signaling));
+    }
+
+    // 二进制帧只用于 Offer/Answer/Candidate
+    private synchronized void sendBinary(byte[] frame) {
+        lastSend = lastSend.thenCompose(ws -> webSocket.sendBinary(ByteBuffer.wrap(frame), true));
+        lastSend.whenComplete((ws, error) -> countSend(error, true));
+    }
+
+    private void countSend(Throwable error, boolean signaling) {
+        if (error != null) {
+            metrics.sendFailures.increment();
+        } else if (signaling) {
+            metrics.messagesSent.increment();
+        } else {
+            metrics.controlMessagesSent.increment();
+        }
+    }
+
+    // 服务端的上线/下线广播随客户端数平方增长，单独计数，不计入信令吞吐
+    private void countReceived() {
+        if (signalingMessage) {
+            metrics.messagesReceived.increment();
+        } else {
+            metrics.controlMessagesReceived.increment();
+        }
+    }
+
+    void close() {
+        WebSocket ws = webSocket;
+        if (ws == null) {
+            return;
+        }
+        synchronized (this) {
+            lastSend.thenCompose(ignored -> ws.sendClose(WebSocket.NORMAL_CLOSURE, ""))
+                    .exceptionally(error -> {
+                        ws.abort();
+                        return null;
+                    });
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+        textBuffer.append(data);
+        if (last) {
+            String message = textBuffer.toString();
+            textBuffer.setLength(0);
+            signalingMessage = false;
+            try {
+                codec.decode(message, this);
+                countReceived();
+            } catch (IOException | RuntimeException e) {
+                metrics.decodeFailures.increment();
+            }
+        }
+        ws.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket ws, ByteBuffer data, boolean last) {
+        byte[] chunk = new byte[data.remaining()];
+        data.get(chunk);
+        binaryBuffer.write(chunk, 0, chunk.length);
+        if (last) {
+            ByteBuffer frame = ByteBuffer.wrap(binaryBuffer.toByteArray());
+            binaryBuffer.reset();
+            signalingMessage = false;
+            try {
+                binaryCodec.decode(frame, this);
+                countReceived();
+            } catch (IOException | RuntimeException e) {
+                metrics.decodeFailures.increment();
+            }
+        }
+        ws.request(1);
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket ws, Throwable error) {
+        clientId.completeExceptionally(error);
+        protocolReady.completeExceptionally(error);
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+        IOException closed = new IOException("连接已关闭: " + statusCode + " " + reason);
+        clientId.completeExceptionally(closed);
+        protocolReady.completeExceptionally(closed);
+        return null;
+    }
+
+    @Override
+    public void onOffer(String from, String sdp) {
+        signalingMessage = true;
+        callback.onOffer(this, from, sdp);
+    }
+
+    @Override
+    public void onAnswer(String from, String sdp) {
+        signalingMessage = true;
+        callback.onAnswer(this, from, sdp);
+    }
+
+    @Override
+    public void onIceCandidate(String from, SignalingCodec.Candidate candidate) {
+        signalingMessage = true;
+        callback.onIceCandidate(this, from, candidate.sdp);
+    }
+
+    @Override
+    public void onProtocolAck(int binaryVersion) {
+        binaryActive = binaryVersion == SignalingBinaryCodec.VERSION;
+        protocolReady.complete(binaryActive);
+    }
+
+    @Override
+    public void onConnection(String id, List<String> peers, String sessionToken) {
+        clientId.complete(id);
+    }
+
+    @Override
+    public void onSessionResumed(String id, long received, long seq) {
+    }
+
+    @Override
+    public void onPeerJoined(String id) {
+    }
+
+    @Override
+    public void onPeerLeft(String id) {
+    }
+
+    @Override
+    public void onUnknown(String type) {
+    }
+}
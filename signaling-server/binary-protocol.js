@@ -0,0 +1,186 @@
+// 二进制信令协议，与 Android 端 SignalingBinaryCodec.java 保持一致
+// 帧格式: [版本 1B][消息类型 1B][标志 1B][地址（可选）][消息体]
+// 带 FLAG_ADDRESSED 时头部后跟 [长度 1B][客户端 ID]：客户端发出时为 to，服务端转发时改写为 from
+// candidate 记录: [sdpMLineIndex 1B，0xFF 表示未知][sdpMid 长度 1B][sdpMid][candidate]
+const zlib = require('zlib');
+
+// 版本 2：candidate 记录带上 sdpMid / sdpMLineIndex
+const VERSION = 2;
+
+const TYPE_OFFER = 1;
+const TYPE_ANSWER = 2;
+const TYPE_ICE_CANDIDATE = 3;
+const TYPE_ICE_CANDIDATES = 4;
+
+const FLAG_DEFLATE = 0x01;
+const FLAG_ADDRESSED = 0x02;
+const HEADER_SIZE = 3;
+const UNKNOWN_MLINE_INDEX = 0xFF;
+// 解压后的 SDP 上限，与 SignalingBinaryCodec.MAX_SDP_BYTES 相同
+const MAX_SDP_BYTES = 64 * 1024;
+
+// SDP 预置字典，必须与 SignalingBinaryCodec.SDP_DICTIONARY 逐字节相同
+const SDP_DICTIONARY = Buffer.from([
+    'a=extmap-allow-mixed\r\n',
+    'a=msid-semantic: WMS\r\n',
+    'a=group:BUNDLE 0\r\n',
+    'm=audio 9 UDP/TLS/RTP/SAVPF 111 63 9 0 8 13 110 126\r\n',
+    'c=IN IP4 0.0.0.0\r\n',
+    'a=rtcp:9 IN IP4 0.0.0.0\r\n',
+    'a=ice-options:trickle renomination\r\n',
+    'a=fingerprint:sha-256 \r\n',
+    'a=setup:actpass\r\n',
+    'a=setup:active\r\n',
+    'a=mid:0\r\n',
+    'a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n',
+    'a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n',
+    'a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01\r\n',
+    'a=extmap:4 urn:ietf:params:rtp-hdrext:sdes:mid\r\n',
+    'a=sendrecv\r\n',
+    'a=sendonly\r\n',
+    'a=recvonly\r\n',
+    'a=rtcp-mux\r\n',
+    'a=rtcp-rsize\r\n',
+    'a=rtpmap:111 opus/48000/2\r\n',
+    'a=rtcp-fb:111 transport-cc\r\n',
+    'a=fmtp:111 minptime=10;useinbandfec=1\r\n',
+    'a=rtpmap:63 red/48000/2\r\n',
+    'a=fmtp:63 111/111\r\n',
+    'a=rtpmap:9 G722/8000\r\n',
+    'a=rtpmap:0 PCMU/8000\r\n',
+    'a=rtpmap:8 PCMA/8000\r\n',
+    'a=rtpmap:13 CN/8000\r\n',
+    'a=rtpmap:110 telephone-event/48000\r\n',
+    'a=rtpmap:126 telephone-event/8000\r\n',
+    'a=ssrc-group:FID \r\n',
+    'a=ssrc:\r\n',
+    ' cname:\r\n',
+    ' msid:audio_stream audio_track\r\n',
+    'a=msid:audio_stream audio_track\r\n',
+    'a=ice-ufrag:\r\n',
+    'a=ice-pwd:\r\n',
+    'candidate:\r\n',
+    ' 1 udp 2122260223 \r\n',
+    ' 1 udp 1686052607 \r\n',
+    ' 1 tcp 1518280447 \r\n',
+    ' typ host\r\n',
+    ' typ srflx raddr \r\n',
+    ' rport \r\n',
+    ' tcptype passive\r\n',
+    ' generation 0 ufrag \r\n',
+    ' network-id \r\n',
+    ' network-cost 10\r\n',
+    'v=0\r\n',
+    'o=- \r\n',
+    ' 2 IN IP4 127.0.0.1\r\n',
+    's=-\r\n',
+    't=0 0\r\n',
+].join(''), 'ascii');
+
+// 协商版本：取双方都支持的版本，不支持时返回 0
+function negotiateVersion(clientVersion) {
+    return clientVersion === VERSION ? VERSION : 0;
+}
+
+// 拆分帧头：返回地址（没有时为 null）和消息体
+function parseFrame(buffer) {
+    if (buffer.length < HEADER_SIZE) {
+        throw new Error(`二进制帧长度不足: ${buffer.length}`);
+    }
+    const version = buffer[0];
+    if (version !== VERSION) {
+        throw new Error(`不支持的二进制协议版本: ${version}`);
+    }
+    const type = buffer[1];
+    const flags = buffer[2];
+    let address = null;
+    let offset = HEADER_SIZE;
+    if (flags & FLAG_ADDRESSED) {
+        const length = buffer[offset];
+        if (length === undefined || offset + 1 + length > buffer.length) {
+            throw new Error('二进制帧地址已截断');
+        }
+        address = buffer.toString('utf8', offset + 1, offset + 1 + length);
+        offset += 1 + length;
+    }
+    return { type, flags, address, body: buffer.subarray(offset) };
+}
+
+// 用新的地址（转发时为发送方 ID）重写帧头，消息体保持不变
+function readdressFrame(buffer, address) {
+    const frame = parseFrame(buffer);
+    const addressBytes = Buffer.from(String(address), 'utf8');
+    const header = Buffer.from([VERSION, frame.type, frame.flags | FLAG_ADDRESSED, addressBytes.length]);
+    return Buffer.concat([header, addressBytes, frame.body]);
+}
+
+// 把二进制帧还原为 JSON 消息对象，用于转发给只支持文本帧的客户端（如网页端）
+function decodeFrame(buffer) {
+    const { type, flags, address, body } = parseFrame(buffer);
+    const message = decodeBody(type, flags, body);
+    if (address !== null) {
+        message.from = address;
+    }
+    return message;
+}
+
+function decodeBody(type, flags, body) {
+    switch (type) {
+        case TYPE_OFFER:
+            return { type: 'offer', sdp: readSdp(body, flags) };
+        case TYPE_ANSWER:
+            return { type: 'answer', sdp: readSdp(body, flags) };
+        case TYPE_ICE_CANDIDATE:
+            return { type: 'ice-candidate', ...readCandidate(body, 0, body.length) };
+        case TYPE_ICE_CANDIDATES: {
+            const candidates = [];
+            let offset = 0;
+            while (offset < body.length) {
+                const length = body.readUInt16BE(offset);
+                offset += 2;
+                if (offset + length > body.length) {
+                    throw new Error('ice-candidates 帧已截断');
+                }
+                candidates.push(readCandidate(body, offset, offset + length));
+                offset += length;
+            }
+            return { type: 'ice-candidates', candidates };
+        }
+        default:
+            throw new Error(`未知的二进制消息类型: ${type}`);
+    }
+}
+
+// 还原为 RTCIceCandidateInit 形式，未知的 sdpMid / sdpMLineIndex 不输出
+function readCandidate(body, start, end) {
+    if (end - start < 2) {
+        throw new Error('candidate 记录已截断');
+    }
+    const index = body[start];
+    const midLength = body[start + 1];
+    const midEnd = start + 2 + midLength;
+    if (midEnd > end) {
+        throw new Error('candidate 记录已截断');
+    }
+    const candidate = { candidate: body.toString('utf8', midEnd, end) };
+    if (midLength > 0) {
+        candidate.sdpMid = body.toString('utf8', start + 2, midEnd);
+    }
+    if (index !== UNKNOWN_MLINE_INDEX) {
+        candidate.sdpMLineIndex = index;
+    }
+    return candidate;
+}
+
+function readSdp(body, flags) {
+    if (flags & FLAG_DEFLATE) {
+        // 超过上限时 inflateSync 抛出 RangeError，由调用方按解析失败处理
+        return zlib.inflateSync(body, { dictionary: SDP_DICTIONARY, maxOutputLength: MAX_SDP_BYTES }).toString('utf8');
+    }
+    if (body.length > MAX_SDP_BYTES) {
+        throw new Error(`SDP 过长: ${body.length} 字节`);
+    }
+    return body.toString('utf8');
+}
+
+module.exports = { VERSION, negotiateVersion, parseFrame, readdressFrame, decodeFrame };
@@ -1,59 +1,238 @@
 const WebSocket = require('ws');
 const http = require('http');
+const crypto = require('crypto');
+const binaryProtocol = require('./binary-protocol');
 
 const server = http.createServer();
 const wss = new WebSocket.Server({ server });
 
 console.log('WebRTC 信令服务器启动中...');
 
-// 存储连接的客户端
+// 会话恢复：每个客户端分配一个 sessionToken。连接异常断开（非 1000/1001 关闭）后保留会话 RESUME_WINDOW_MS，
+// 期间发给它的消息照常编号并缓存；客户端带 ?resume=<token>&received=<已收到的消息数> 重连时沿用原 clientId，
+// 先补发缓存中对方没收到的消息，再回复 session-resumed（带本端已收到的客户端消息数，客户端据此重发丢失的消息）
+// 超时未重连或缓存已不足以补齐时按离开处理，其他客户端收到 peer-left
+const RESUME_WINDOW_MS = Number(process.env.RESUME_WINDOW_MS || 30000);
+const REPLAY_BUFFER_SIZE = 256;
+
+// clientId -> session；session 的 ws 在断开等待恢复期间为 null
 const clients = new Map();
+const sessionsByToken = new Map();
 let clientIdCounter = 0;
 
 wss.on('connection', (ws, req) => {
-    const clientId = ++clientIdCounter;
-    clients.set(clientId, ws);
+    // 协商出的二进制协议版本，0 表示只收发 JSON 文本帧
+    ws.binaryVersion = 0;
     
-    console.log(`客户端 ${clientId} 已连接 (${req.socket.remoteAddress})`);
+    const resume = parseResumeRequest(req.url);
+    let session = resume ? resumeSession(resume.token, resume.received, ws) : null;
+    if (session) {
+        console.log(`客户端 ${session.id} 已恢复会话 (${req.socket.remoteAddress})`);
+    } else {
+        session = createSession(ws);
+        console.log(`客户端 ${session.id} 已连接 (${req.socket.remoteAddress})`);
+    }
+    const clientId = session.id;
     console.log(`当前连接数: ${clients.size}`);
     
-    // 发送连接确认
-    ws.send(JSON.stringify({
-        type: 'connection',
-        clientId: clientId,
-        message: '连接成功'
-    }));
-    
-    ws.on('message', (message) => {
+    ws.on('message', (message, isBinary) => {
         try {
+            if (isBinary) {
+                console.log(`客户端 ${clientId} 发送二进制帧: ${message.length} 字节`);
+                session.received++;
+                const { address } = binaryProtocol.parseFrame(message);
+                relayBinary(clientId, address, binaryProtocol.readdressFrame(message, clientId));
+                return;
+            }
+            
             const data = JSON.parse(message);
             console.log(`客户端 ${clientId} 发送: ${data.type}`);
             
-            // 广播消息给其他客户端
-            broadcastToOthers(clientId, data);
+            if (data.type === 'protocol-hello') {
+                ws.binaryVersion = binaryProtocol.negotiateVersion(data.binaryVersion);
+                deliver(session, {
+                    type: 'protocol-ack',
+                    binaryVersion: ws.binaryVersion
+                }, false);
+                return;
+            }
+            
+            // 带 to 时只转发给目标客户端，否则广播给其他客户端；转发时标注发送方
+            session.received++;
+            const target = data.to;
+            delete data.to;
+            data.from = clientId;
+            if (target !== undefined && target !== null) {
+                sendTo(Number(target), data);
+            } else {
+                broadcastToOthers(clientId, data);
+            }
             
         } catch (error) {
             console.error('解析消息失败:', error);
         }
     });
     
-    ws.on('close', () => {
-        clients.delete(clientId);
-        console.log(`客户端 ${clientId} 已断开连接`);
+    ws.on('close', (code) => {
+        if (session.ws !== ws) {
+            // 已被恢复的新连接取代
+            return;
+        }
+        session.ws = null;
+        if (code === 1000 || code === 1001) {
+            removeClient(clientId);
+            console.log(`客户端 ${clientId} 已断开连接`);
+        } else {
+            console.log(`客户端 ${clientId} 连接中断 (code: ${code})，保留会话 ${RESUME_WINDOW_MS} ms 等待恢复`);
+            session.expiryTimer = setTimeout(() => {
+                console.log(`客户端 ${clientId} 未在时限内恢复会话`);
+                removeClient(clientId);
+            }, RESUME_WINDOW_MS);
+        }
         console.log(`当前连接数: ${clients.size}`);
     });
     
     ws.on('error', (error) => {
+        // 出错后 ws 会继续触发 close，由 close 决定移除还是等待恢复
         console.error(`客户端 ${clientId} 错误:`, error);
-        clients.delete(clientId);
     });
 });
 
+function parseResumeRequest(url) {
+    const query = new URL(url || '/', 'ws://localhost').searchParams;
+    const token = query.get('resume');
+    if (!token) {
+        return null;
+    }
+    return { token, received: Number(query.get('received') || 0) };
+}
+
+function createSession(ws) {
+    const session = {
+        id: ++clientIdCounter,
+        token: crypto.randomBytes(16).toString('hex'),
+        ws,
+        // 发给该客户端的消息数（包括控制消息）和收到的需要转发的消息数
+        sent: 0,
+        received: 0,
+        // 最近发出的可补发消息 { seq, message }，以及因缓存已满被丢弃的最大序号
+        replay: [],
+        prunedSeq: 0,
+        expiryTimer: null
+    };
+    const peers = Array.from(clients.keys());
+    clients.set(session.id, session);
+    sessionsByToken.set(session.token, session);
+    
+    // 发送连接确认，附带当前在线的其他客户端和用于恢复会话的 token
+    deliver(session, {
+        type: 'connection',
+        clientId: session.id,
+        peers: peers,
+        sessionToken: session.token,
+        resumeWindowMs: RESUME_WINDOW_MS,
+        message: '连接成功'
+    }, false);
+    broadcastToOthers(session.id, { type: 'peer-joined', clientId: session.id });
+    return session;
+}
+
+// 恢复失败（token 无效、已过期或需要补发的消息已不在缓存中）时返回 null
+function resumeSession(token, received, ws) {
+    const session = sessionsByToken.get(token);
+    if (!session) {
+        return null;
+    }
+    if (!(received >= session.prunedSeq && received <= session.sent)) {
+        console.warn(`客户端 ${session.id} 需要补发的消息已不在缓存中，按新客户端处理`);
+        if (session.ws) {
+            const old = session.ws;
+            session.ws = null;
+            old.terminate();
+        }
+        removeClient(session.id);
+        return null;
+    }
+    clearTimeout(session.expiryTimer);
+    session.expiryTimer = null;
+    if (session.ws) {
+        // 服务端还没发现旧连接断开（半开的 TCP 连接），直接关闭
+        const old = session.ws;
+        session.ws = null;
+        old.terminate();
+    }
+    session.ws = ws;
+    
+    const missed = session.replay.filter((entry) => entry.seq > received);
+    missed.forEach((entry) => sendMessage(ws, entry.message));
+    // seq：连同这条在内客户端应已收到的消息数，客户端据此校准计数（丢失的控制消息不补发）
+    deliver(session, {
+        type: 'session-resumed',
+        clientId: session.id,
+        received: session.received,
+        seq: session.sent + 1
+    }, false);
+    console.log(`客户端 ${session.id} 补发 ${missed.length} 条消息`);
+    return session;
+}
+
+function removeClient(clientId) {
+    const session = clients.get(clientId);
+    if (!session) {
+        return;
+    }
+    clearTimeout(session.expiryTimer);
+    clients.delete(clientId);
+    sessionsByToken.delete(session.token);
+    broadcastToOthers(clientId, { type: 'peer-left', clientId: clientId });
+}
+
+// 发给客户端的每条消息都编号；replayable 为 false 的控制消息（connection、protocol-ack 等）不缓存、不补发
+// message 为 JSON 对象，或 relayBinary 构造的 { frame, json } 二进制消息
+function deliver(session, message, replayable = true) {
+    const seq = ++session.sent;
+    if (replayable) {
+        session.replay.push({ seq, message });
+        if (session.replay.length > REPLAY_BUFFER_SIZE) {
+            session.prunedSeq = session.replay.shift().seq;
+        }
+    }
+    if (session.ws && session.ws.readyState === WebSocket.OPEN) {
+        sendMessage(session.ws, message);
+    }
+}
+
+function sendMessage(ws, message) {
+    if (message.frame === undefined) {
+        ws.send(JSON.stringify(message));
+    } else if (ws.binaryVersion > 0) {
+        ws.send(message.frame, { binary: true });
+    } else {
+        if (message.json === null) {
+            message.json = binaryProtocol.decodeFrame(message.frame);
+        }
+        ws.send(JSON.stringify(message.json));
+    }
+}
+
+function sendTo(targetId, message) {
+    const session = clients.get(targetId);
+    if (!session) {
+        console.warn(`目标客户端 ${targetId} 不在线，丢弃 ${message.type}`);
+        return;
+    }
+    try {
+        deliver(session, message);
+    } catch (error) {
+        console.error(`发送消息到客户端 ${targetId} 失败:`, error);
+    }
+}
+
 function broadcastToOthers(senderId, message) {
-    clients.forEach((client, id) => {
-        if (id !== senderId && client.readyState === WebSocket.OPEN) {
+    clients.forEach((session, id) => {
+        if (id !== senderId) {
             try {
-                client.send(JSON.stringify(message));
+                deliver(session, message);
             } catch (error) {
                 console.error(`发送消息到客户端 ${id} 失败:`, error);
             }
@@ -61,6 +240,26 @@ function broadcastToOthers(senderId, message) {
     });
 }
 
+// 二进制帧转发给支持二进制协议的客户端，其余客户端转换为 JSON 文本帧
+// address 为目标客户端 ID，为 null 时广播
+function relayBinary(senderId, address, frame) {
+    const message = { frame, json: null };
+    const target = address !== null ? Number(address) : null;
+    clients.forEach((session, id) => {
+        if (id === senderId) {
+            return;
+        }
+        if (target !== null && id !== target) {
+            return;
+        }
+        try {
+            deliver(session, message);
+        } catch (error) {
+            console.error(`发送消息到客户端 ${id} 失败:`, error);
+        }
+    });
+}
+
 const PORT = process.env.PORT || 8081;
 server.listen(PORT, '0.0.0.0', () => {
     console.log(`信令服务器运行在端口 ${PORT}`);
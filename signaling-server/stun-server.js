@@ -0,0 +1,100 @@
+// 局域网测试用的最小 STUN 服务器：只响应 Binding 请求，返回 XOR-MAPPED-ADDRESS（RFC 5389）
+// 用于在没有外网的环境下比较 IceConfig 各模式的 ICE 收集耗时：
+//   STUN_PORT      监听端口（默认 3478）
+//   STUN_DELAY_MS  每个响应延迟发送的毫秒数，模拟较远的 STUN 服务器
+//   STUN_DROP=1    丢弃所有请求，模拟不可达的 STUN 服务器（收集会一直等到超时）
+const dgram = require('dgram');
+
+const MAGIC_COOKIE = 0x2112A442;
+const BINDING_REQUEST = 0x0001;
+const BINDING_SUCCESS = 0x0101;
+const ATTR_XOR_MAPPED_ADDRESS = 0x0020;
+const HEADER_SIZE = 20;
+
+const PORT = Number(process.env.STUN_PORT || 3478);
+const DELAY_MS = Number(process.env.STUN_DELAY_MS || 0);
+const DROP = process.env.STUN_DROP === '1';
+
+// 解析请求头，不是 STUN Binding 请求时返回 null
+function parseBindingRequest(msg) {
+    if (msg.length < HEADER_SIZE) {
+        return null;
+    }
+    const type = msg.readUInt16BE(0);
+    const length = msg.readUInt16BE(2);
+    if (type !== BINDING_REQUEST || msg.readUInt32BE(4) !== MAGIC_COOKIE || HEADER_SIZE + length > msg.length) {
+        return null;
+    }
+    return { transactionId: msg.subarray(8, 20) };
+}
+
+function buildBindingResponse(transactionId, address, port, family) {
+    const ipv6 = family === 'IPv6' || family === 6;
+    const addressBytes = ipv6 ? ipv6Bytes(address) : Buffer.from(address.split('.').map(Number));
+    const value = Buffer.alloc(4 + addressBytes.length);
+    value.writeUInt8(0, 0);
+    value.writeUInt8(ipv6 ? 0x02 : 0x01, 1);
+    value.writeUInt16BE(port ^ (MAGIC_COOKIE >>> 16), 2);
+    // 地址与 magic cookie（IPv6 时再加 transaction ID）逐字节异或
+    const mask = Buffer.concat([Buffer.alloc(4), transactionId]);
+    mask.writeUInt32BE(MAGIC_COOKIE, 0);
+    for (let i = 0; i < addressBytes.length; i++) {
+        value[4 + i] = addressBytes[i] ^ mask[i];
+    }
+
+    const attribute = Buffer.alloc(4 + value.length);
+    attribute.writeUInt16BE(ATTR_XOR_MAPPED_ADDRESS, 0);
+    attribute.writeUInt16BE(value.length, 2);
+    value.copy(attribute, 4);
+
+    const header = Buffer.alloc(HEADER_SIZE);
+    header.writeUInt16BE(BINDING_SUCCESS, 0);
+    header.writeUInt16BE(attribute.length, 2);
+    header.writeUInt32BE(MAGIC_COOKIE, 4);
+    transactionId.copy(header, 8);
+    return Buffer.concat([header, attribute]);
+}
+
+function ipv6Bytes(address) {
+    // 去掉 zone（fe80::1%eth0），展开 ::
+    const plain = address.split('%')[0];
+    const [head, tail] = plain.split('::');
+    const headParts = head ? head.split(':') : [];
+    const tailParts = tail !== undefined && tail !== '' ? tail.split(':') : [];
+    const missing = 8 - headParts.length - tailParts.length;
+    const groups = [...headParts, ...new Array(tail !== undefined ? missing : 0).fill('0'), ...tailParts];
+    const bytes = Buffer.alloc(16);
+    groups.forEach((group, i) => bytes.writeUInt16BE(parseInt(group, 16), i * 2));
+    return bytes;
+}
+
+function createServer(port = PORT, options = {}) {
+    const delayMs = options.delayMs !== undefined ? options.delayMs : DELAY_MS;
+    const drop = options.drop !== undefined ? options.drop : DROP;
+    const socket = dgram.createSocket('udp4');
+    socket.on('message', (msg, rinfo) => {
+        const request = parseBindingRequest(msg);
+        if (!request || drop) {
+            return;
+        }
+        const response = buildBindingResponse(request.transactionId, rinfo.address, rinfo.port, rinfo.family);
+        const send = () => socket.send(response, rinfo.port, rinfo.address);
+        if (delayMs > 0) {
+            setTimeout(send, delayMs);
+        } else {
+            send();
+        }
+    });
+    socket.on('error', (error) => console.error('STUN 服务器错误:', error));
+    socket.bind(port, '0.0.0.0', () => {
+        const mode = drop ? '丢弃所有请求' : (delayMs > 0 ? `响应延迟 ${delayMs} ms` : '立即响应');
+        console.log(`STUN 服务器运行在 UDP 端口 ${socket.address().port}（${mode}）`);
+    });
+    return socket;
+}
+
+if (require.main === module) {
+    createServer();
+}
+
+module.exports = { createServer, parseBindingRequest, buildBindingResponse };
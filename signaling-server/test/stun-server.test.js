@@ -0,0 +1,59 @@
+// 运行：npm test（Node 18 及以上自带 node:test）
+const test = require('node:test');
+const assert = require('node:assert');
+const { parseBindingRequest, buildBindingResponse } = require('../stun-server');
+
+// RFC 5769 第 2.2、2.3 节的测试向量
+const TRANSACTION_ID = Buffer.from('b7e7a701bc34d686fa87dfae', 'hex');
+
+function bindingRequest(transactionId) {
+    const header = Buffer.alloc(20);
+    header.writeUInt16BE(0x0001, 0);
+    header.writeUInt16BE(0, 2);
+    header.writeUInt32BE(0x2112A442, 4);
+    transactionId.copy(header, 8);
+    return header;
+}
+
+test('IPv4 的 XOR-MAPPED-ADDRESS 与 RFC 5769 一致', () => {
+    const response = buildBindingResponse(TRANSACTION_ID, '192.0.2.1', 32853, 'IPv4');
+    assert.deepStrictEqual(response, Buffer.concat([
+        Buffer.from('0101000c2112a442', 'hex'),
+        TRANSACTION_ID,
+        Buffer.from('00200008' + '0001a147e112a643', 'hex'),
+    ]));
+});
+
+test('IPv6 的地址还要与 transaction ID 异或', () => {
+    const response = buildBindingResponse(TRANSACTION_ID, '2001:db8:1234:5678:11:2233:4455:6677', 32853, 6);
+    assert.deepStrictEqual(response, Buffer.concat([
+        Buffer.from('010100182112a442', 'hex'),
+        TRANSACTION_ID,
+        Buffer.from('00200014' + '0002a147' + '0113a9faa5d3f179bc25f4b5bed2b9d9', 'hex'),
+    ]));
+});
+
+test('IPv6 地址中的 :: 和 zone 被正确展开', () => {
+    const expanded = buildBindingResponse(TRANSACTION_ID, 'fe80:0:0:0:0:0:0:1', 50000, 'IPv6');
+    assert.deepStrictEqual(buildBindingResponse(TRANSACTION_ID, 'fe80::1%eth0', 50000, 'IPv6'), expanded);
+    assert.deepStrictEqual(
+        buildBindingResponse(TRANSACTION_ID, '::', 50000, 'IPv6'),
+        buildBindingResponse(TRANSACTION_ID, '0:0:0:0:0:0:0:0', 50000, 'IPv6'));
+});
+
+test('只解析 Binding 请求', () => {
+    const request = bindingRequest(TRANSACTION_ID);
+    assert.deepStrictEqual(parseBindingRequest(request).transactionId, TRANSACTION_ID);
+
+    // 长度不足、magic cookie 错误、消息类型不是 Binding 请求、声明的长度超出实际长度
+    assert.strictEqual(parseBindingRequest(request.subarray(0, 19)), null);
+    const badCookie = Buffer.from(request);
+    badCookie.writeUInt32BE(0, 4);
+    assert.strictEqual(parseBindingRequest(badCookie), null);
+    const indication = Buffer.from(request);
+    indication.writeUInt16BE(0x0011, 0);
+    assert.strictEqual(parseBindingRequest(indication), null);
+    const truncated = Buffer.from(request);
+    truncated.writeUInt16BE(8, 2);
+    assert.strictEqual(parseBindingRequest(truncated), null);
+});
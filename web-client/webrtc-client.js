@@ -8,6 +8,9 @@ class WebRTCClient {
         this.isConnected = false;
         this.isMuted = false;
         this.mediaTimeout = null;
+        this.remotePeerId = null;
+        // 远端描述设置前到达的 ICE Candidate，setRemoteDescription 成功后再添加
+        this.pendingCandidates = [];
         
         this.initAudioElement();
         this.initVolumeControl();
@@ -93,6 +96,7 @@ class WebRTCClient {
             try { this.peerConnection.close(); } catch { /* noop */ }
             this.peerConnection = null;
         }
+        this.pendingCandidates = [];
 
         this.peerConnection = new RTCPeerConnection({
             iceServers: [
@@ -121,7 +125,10 @@ class WebRTCClient {
             if (event.candidate) {
                 this.sendSignalingMessage({
                     type: 'ice-candidate',
-                    candidate: event.candidate.candidate
+                    to: this.remotePeerId,
+                    candidate: event.candidate.candidate,
+                    sdpMid: event.candidate.sdpMid,
+                    sdpMLineIndex: event.candidate.sdpMLineIndex
                 });
             }
         };
@@ -147,17 +154,26 @@ class WebRTCClient {
             
             switch (data.type) {
                 case 'offer':
-                    this.handleOffer(data.sdp);
+                    this.handleOffer(data.sdp, data.from);
                     break;
                 case 'answer':
                     this.handleAnswer(data.sdp);
                     break;
                 case 'ice-candidate':
-                    this.handleIceCandidate(data.candidate);
+                    this.handleIceCandidate(data);
+                    break;
+                case 'ice-candidates':
+                    (data.candidates || []).forEach((candidate) => this.handleIceCandidate(candidate));
                     break;
                 case 'connection':
                     this.log(`服务器分配的客户端ID: ${data.clientId}`);
                     break;
+                case 'peer-joined':
+                    this.log(`客户端 ${data.clientId} 加入`);
+                    break;
+                case 'peer-left':
+                    this.log(`客户端 ${data.clientId} 离开`);
+                    break;
                 default:
                     this.log(`未知消息类型: ${data.type}`);
             }
@@ -167,17 +183,20 @@ class WebRTCClient {
     }
 
     // 处理Offer
-    async handleOffer(sdp) {
+    async handleOffer(sdp, from) {
         this.log("收到通话请求，准备应答...");
         
         try {
             if (!this.peerConnection) this.preparePeerConnection();
 
             await this.peerConnection.setRemoteDescription({ type: 'offer', sdp });
+            await this.drainPendingCandidates();
             const answer = await this.peerConnection.createAnswer();
             await this.peerConnection.setLocalDescription(answer);
 
-            this.sendSignalingMessage({ type: 'answer', sdp: answer.sdp });
+            // 记录呼叫方，Answer 和 ICE 只回给它（旧版服务端没有 from 时广播）
+            this.remotePeerId = from;
+            this.sendSignalingMessage({ type: 'answer', to: from, sdp: answer.sdp });
             this.log("已发送Answer");
         } catch (error) {
             this.log("处理Offer失败: " + error.message);
@@ -189,6 +208,7 @@ class WebRTCClient {
         try {
             if (this.peerConnection) {
                 await this.peerConnection.setRemoteDescription({ type: 'answer', sdp });
+                await this.drainPendingCandidates();
                 this.log("已设置远程应答");
             }
         } catch (error) {
@@ -196,14 +216,35 @@ class WebRTCClient {
         }
     }
 
-    // 处理远端ICE
-    async handleIceCandidate(candidate) {
-        if (!this.peerConnection) return;
+    // 处理远端ICE：消息带 sdpMid / sdpMLineIndex；旧版客户端只发送 candidate 字符串，此时按唯一的音频 m 行处理
+    async handleIceCandidate(data) {
+        if (!this.peerConnection || !this.peerConnection.remoteDescription) {
+            this.pendingCandidates.push(data);
+            return;
+        }
+        await this.addRemoteCandidate(data);
+    }
+
+    async drainPendingCandidates() {
+        const pending = this.pendingCandidates;
+        this.pendingCandidates = [];
+        if (pending.length > 0) {
+            this.log(`添加 ${pending.length} 个提前到达的远端ICE`);
+        }
+        for (const data of pending) {
+            await this.addRemoteCandidate(data);
+        }
+    }
+
+    async addRemoteCandidate(data) {
+        const init = typeof data === 'string' ? { candidate: data } : data;
+        const hasMid = init.sdpMid !== undefined && init.sdpMid !== null;
+        const hasIndex = init.sdpMLineIndex !== undefined && init.sdpMLineIndex !== null;
         try {
             await this.peerConnection.addIceCandidate(new RTCIceCandidate({
-                candidate: candidate,
-                sdpMid: '0',
-                sdpMLineIndex: 0
+                candidate: init.candidate,
+                sdpMid: hasMid ? init.sdpMid : (hasIndex ? null : '0'),
+                sdpMLineIndex: hasIndex ? init.sdpMLineIndex : (hasMid ? null : 0)
             }));
             this.log("已添加远端ICE");
         } catch (error) {